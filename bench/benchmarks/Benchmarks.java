@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Where the benchmarks keep their files.
+ *
+ * Files go under the directory named by -Dbenchmark.dir (pass it with -jvmArgsAppend, forks do not inherit it),
+ * or /dev/shm when it exists so renames and log reads are timed on tmpfs rather than on whatever disk the
+ * temporary directory is, or the temporary directory otherwise. The directory used is part of what a result
+ * means, so compare results made on the same kind of file system.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * @param prefix start of the directory's name
+     * @return a new, empty directory
+     * @throws IOException if it can not be created
+     */
+    static Path createWorkDirectory(String prefix) throws IOException {
+        String configured = System.getProperty("benchmark.dir");
+        Path parent = configured != null ? Paths.get(configured) : Paths.get("/dev/shm");
+        if (configured == null && !(Files.isDirectory(parent) && Files.isWritable(parent)))
+            parent = Paths.get(System.getProperty("java.io.tmpdir"));
+        return Files.createTempDirectory(parent, prefix).toRealPath();
+    }
+
+    /**
+     * Deletes a directory made by createWorkDirectory and everything in it.
+     *
+     * @param dir the directory
+     * @throws IOException if it can not be listed
+     */
+    static void deleteWorkDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package benchmarks;
+
+import backend.HistoryManager;
+import backend.ImageFile;
+import backend.ImageTagger;
+import backend.TagManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading rename history: an image's old names, from the end of its log, and the superlog, whole or one page as
+ * the log window shows it. Logs of 10, 1000 and 100000 entries are written in the real format before the trial;
+ * an image only ever has NAME_VARIANTS distinct names, so reading all of them still reads the whole log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    /** Number of distinct names in an image's log. */
+    private static final int NAME_VARIANTS = 64;
+
+    /** Number of names the image's info shows, and of superlog lines in a page. */
+    private static final int PAGE = 10;
+
+    /** Number of entries in each log. */
+    @Param({"10", "1000", "100000"})
+    public int entries;
+
+    /** Holds the logs. */
+    private Path dir;
+
+    /** Reads the image's log. */
+    private ImageTagger imageTagger;
+
+    /** The image whose log is read. */
+    private ImageFile image;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Benchmarks.createWorkDirectory("history");
+        HistoryManager.setSupPath(dir.resolve("superlog.log"));
+        imageTagger = new ImageTagger(new TagManager(new BufferedReader(new StringReader(""))));
+        image = new ImageFile(Files.createFile(dir.resolve("IMG_1000.jpg")), dir);
+
+        StringWriter imageLog = new StringWriter();
+        StringWriter supLog = new StringWriter();
+        for (int i = 0; i < entries; i++) { // closing a StringWriter has no effect, so both keep collecting.
+            String oldName = name(i);
+            String newName = name(i + 1);
+            HistoryManager.imgLogChange(imageLog, oldName, newName);
+            HistoryManager.supLogChange(supLog, dir.resolve(oldName).toString(), dir.resolve(newName).toString());
+        }
+        Files.write(dir.resolve("IMG_1000.log"), imageLog.toString().getBytes(Charset.defaultCharset()));
+        Files.write(dir.resolve("superlog.log"), supLog.toString().getBytes(Charset.defaultCharset()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        HistoryManager.flush();
+        Benchmarks.deleteWorkDirectory(dir);
+    }
+
+    /**
+     * @param i an entry number
+     * @return the name the image had before entry i
+     */
+    private static String name(int i) {
+        return "IMG_1000 @tag" + (i % NAME_VARIANTS) + ".jpg";
+    }
+
+    @Benchmark
+    public ArrayList<String> getOldNamesRecent() throws IOException {
+        return imageTagger.getOldNames(image, PAGE);
+    }
+
+    @Benchmark
+    public ArrayList<String> getOldNamesAll() throws IOException {
+        return imageTagger.getOldNames(image);
+    }
+
+    @Benchmark
+    public String readSupLog() throws IOException {
+        return HistoryManager.readSupLog();
+    }
+
+    @Benchmark
+    public List<String> readSupLogPage() throws IOException {
+        return HistoryManager.readSupLog(Math.max(0, entries - PAGE), PAGE);
+    }
+}
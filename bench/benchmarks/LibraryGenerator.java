@@ -0,0 +1,242 @@
+package benchmarks;
+
+import backend.HistoryManager;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Builds a synthetic library: java benchmarks.LibraryGenerator [--seed S] DIR IMAGES
+ *
+ * The images are empty placeholder files named the way the app names them, "IMG_0000042 @beach @Jane.jpg", in a
+ * tree of directories 3 levels deep with at most 250 images in each, see setLayout. The number of tags per
+ * image is geometric, a quarter of the images having none, and which tags they have follows a Zipf distribution
+ * over a vocabulary of common words, so a few tags are on most tagged images and most tags are on few. Some images
+ * also get a .log history of earlier tag sets in the format HistoryManager writes. The same seed always gives the
+ * same library.
+ */
+public class LibraryGenerator {
+
+    /** Words tags are made from; past the end of the list, tags get a number as well. */
+    private static final List<String> WORDS = Arrays.asList("beach", "sunset", "family", "Jane", "John", "dog",
+            "cat", "birthday", "holiday", "snow", "mountain", "city", "night", "food", "friends", "party", "garden",
+            "car", "portrait", "landscape", "blurry", "favorite", "work", "school", "wedding", "baby", "trip",
+            "river", "forest", "concert", "museum", "sport", "flowers", "sky", "selfie", "old", "scan", "print",
+            "edit", "raw");
+
+    /** Extensions of the images, and how often each is used out of 20. */
+    private static final String[] EXTENSIONS = {"jpg", "jpg", "jpg", "jpg", "jpg", "jpg", "jpg", "jpg", "jpg", "jpg",
+            "jpg", "jpg", "jpg", "jpg", "jpg", "jpg", "png", "png", "png", "gif"};
+
+    /** Directories in each directory above the images. */
+    private static final int FANOUT = 16;
+
+    /** Chance that a tagged image has one more tag. */
+    private static final double MORE_TAGS = 0.45;
+
+    /** Most tags an image gets. */
+    private static final int MAX_TAGS = 6;
+
+    /** The directory the library is built in. */
+    private final Path root;
+
+    /** Decides everything random. */
+    private final Random random;
+
+    /** Number of distinct tags used. */
+    private int tagCount = 300;
+
+    /** Most images in one directory. */
+    private int imagesPerDirectory = 250;
+
+    /** Levels of directories above the images. */
+    private int depth = 3;
+
+    /** Fraction of images given a history. */
+    private double historyFraction = 0.2;
+
+    /** Most entries in a history. */
+    private int maxHistory = 20;
+
+    /** Sum of the Zipf weights of the tags up to each rank, the last being 1. */
+    private double[] cumulativeWeights;
+
+    /**
+     * Class constructor
+     *
+     * @param root the directory to build the library in; it should be empty
+     * @param seed seeds the random choices
+     */
+    public LibraryGenerator(Path root, long seed) {
+        this.root = root;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = 1;
+        int i = 0;
+        if (args.length == 4 && args[0].equals("--seed")) {
+            seed = Long.parseLong(args[1]);
+            i = 2;
+        }
+        if (args.length - i != 2) {
+            System.err.println("Usage: java benchmarks.LibraryGenerator [--seed S] DIR IMAGES");
+            System.exit(2);
+        }
+        Path root = Paths.get(args[i]);
+        Files.createDirectories(root);
+        long start = System.nanoTime();
+        new LibraryGenerator(root, seed).generate(Integer.parseInt(args[i + 1]));
+        System.err.printf("Generated %s images in %s in %.1f s%n",
+                args[i + 1], root, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * @param tagCount number of distinct tags to use
+     */
+    public void setTagCount(int tagCount) {
+        this.tagCount = tagCount;
+    }
+
+    /**
+     * @param imagesPerDirectory most images in one directory
+     * @param depth              levels of directories above the images, at least 1
+     */
+    public void setLayout(int imagesPerDirectory, int depth) {
+        this.imagesPerDirectory = imagesPerDirectory;
+        this.depth = depth;
+    }
+
+    /**
+     * @param fraction   fraction of images given a history
+     * @param maxEntries most entries in one history
+     */
+    public void setHistory(double fraction, int maxEntries) {
+        this.historyFraction = fraction;
+        this.maxHistory = maxEntries;
+    }
+
+    /**
+     * @param rank a tag's rank, 0 being the most used
+     * @return the tag
+     */
+    public String getTag(int rank) {
+        return rank < WORDS.size() ? WORDS.get(rank) : WORDS.get(rank % WORDS.size()) + (rank / WORDS.size());
+    }
+
+    /**
+     * @param index an image's number
+     * @return the directory the image is in, relative to the root
+     */
+    public Path getDirectory(int index) {
+        int directory = index / imagesPerDirectory;
+        String[] names = new String[depth];
+        for (int level = depth - 1; level >= 0; level--) {
+            int digit = level == 0 ? directory : directory % FANOUT; // the top level takes whatever is left.
+            names[level] = "d" + level + "_" + digit;
+            directory /= FANOUT;
+        }
+        return Paths.get(names[0], Arrays.copyOfRange(names, 1, names.length));
+    }
+
+    /**
+     * Creates the images and their histories.
+     *
+     * @param images number of images
+     * @return number of images given a history
+     * @throws IOException if a file can not be created
+     */
+    public int generate(int images) throws IOException {
+        cumulativeWeights = new double[tagCount];
+        double sum = 0;
+        for (int rank = 0; rank < tagCount; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulativeWeights[rank] = sum;
+        }
+        for (int rank = 0; rank < tagCount; rank++)
+            cumulativeWeights[rank] /= sum;
+
+        int histories = 0;
+        Path directory = null;
+        for (int i = 0; i < images; i++) {
+            if (i % imagesPerDirectory == 0)
+                directory = Files.createDirectories(root.resolve(getDirectory(i)));
+            String baseName = String.format("IMG_%07d", i);
+            String extension = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            String name = name(baseName, randomTags(), extension);
+            Files.createFile(directory.resolve(name));
+            if (random.nextDouble() < historyFraction) {
+                writeHistory(directory.resolve(baseName + ".log"), baseName, extension, name);
+                histories++;
+            }
+        }
+        return histories;
+    }
+
+    /**
+     * @return the tags of a new image
+     */
+    private Set<String> randomTags() {
+        Set<String> tags = new LinkedHashSet<>();
+        if (random.nextInt(4) == 0)
+            return tags;
+        int count = 1;
+        while (count < MAX_TAGS && random.nextDouble() < MORE_TAGS)
+            count++;
+        while (tags.size() < Math.min(count, tagCount))
+            tags.add(getTag(randomRank()));
+        return tags;
+    }
+
+    /**
+     * @return a tag rank drawn from the Zipf distribution
+     */
+    private int randomRank() {
+        int rank = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+        return Math.min(rank < 0 ? -rank - 1 : rank, tagCount - 1);
+    }
+
+    /**
+     * @param baseName  the name without tags or extension
+     * @param tags      the tags
+     * @param extension the extension
+     * @return the file name
+     */
+    private static String name(String baseName, Set<String> tags, String extension) {
+        StringBuilder name = new StringBuilder(baseName);
+        for (String tag : tags)
+            name.append(" @").append(tag);
+        return name.append('.').append(extension).toString();
+    }
+
+    /**
+     * Writes a history of earlier names that ends in the image's current name.
+     *
+     * @param log         the image's log file
+     * @param baseName    the image's base name
+     * @param extension   its extension
+     * @param currentName its name
+     * @throws IOException if the log can not be written
+     */
+    private void writeHistory(Path log, String baseName, String extension, String currentName) throws IOException {
+        int entries = 1 + random.nextInt(maxHistory);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < entries; i++)
+            names.add(name(baseName, randomTags(), extension));
+        names.add(currentName);
+        StringWriter entriesWriter = new StringWriter();
+        for (int i = 0; i < entries; i++) // closing a StringWriter has no effect, so it keeps collecting.
+            HistoryManager.imgLogChange(entriesWriter, names.get(i), names.get(i + 1));
+        Files.write(log, entriesWriter.toString().getBytes(Charset.defaultCharset()));
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import backend.ImageFile;
+import backend.ImageTagger;
+import backend.ParsedName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing image names into their base name, tags and extension. ImageTagger.parseName is private and only calls
+ * ParsedName.parse(name).toList(), so that is what parseName measures.
+ *
+ * An ImageFile keeps its tags once they are parsed, so parseTags makes a new image on every call, as a scan does,
+ * and newImageFile times making the image alone; the difference is the cost of the parse.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    /** Number of tags in each name. */
+    @Param({"0", "2", "8"})
+    public int tags;
+
+    /** Names cycled through, so the JIT can not fold a constant name. */
+    private String[] names;
+
+    /** The directory the images are in. */
+    private Path dir;
+
+    /** The paths of the names. */
+    private Path[] paths;
+
+    /** Next name to parse. */
+    private int next;
+
+    @Setup
+    public void setUp() {
+        dir = Paths.get("library");
+        names = new String[256];
+        paths = new Path[names.length];
+        for (int i = 0; i < names.length; i++) {
+            StringBuilder name = new StringBuilder("IMG_").append(1000 + i);
+            for (int t = 0; t < tags; t++)
+                name.append(" @tag").append((i + t * 7) % 50);
+            names[i] = name.append(i % 4 == 0 ? ".png" : ".jpg").toString();
+            paths[i] = dir.resolve(names[i]);
+        }
+    }
+
+    @Benchmark
+    public List<String> parseName() {
+        next = (next + 1) & (names.length - 1);
+        return ParsedName.parse(names[next]).toList();
+    }
+
+    @Benchmark
+    public ArrayList<String> parseTags() {
+        next = (next + 1) & (paths.length - 1);
+        return ImageTagger.parseTags(new ImageFile(paths[next], dir));
+    }
+
+    @Benchmark
+    public ImageFile newImageFile() {
+        next = (next + 1) & (paths.length - 1);
+        return new ImageFile(paths[next], dir);
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import backend.HistoryManager;
+import backend.ImageFile;
+import backend.ImageTagger;
+import backend.TagManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renaming an image on disk, history included, in a directory of Benchmarks.createWorkDirectory (tmpfs when
+ * there is one). Each invocation leaves the image as it found it, so every iteration renames the same file:
+ * tagAndUntag tags it and takes the tag off again, renameImage switches between two names.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenameBenchmark {
+
+    /** Tag added and removed by tagAndUntag. */
+    private static final List<String> TAG = Collections.singletonList("beach");
+
+    /** Holds the image and its logs. */
+    private Path dir;
+
+    /** Renames the image. */
+    private ImageTagger imageTagger;
+
+    /** The image. */
+    private ImageFile image;
+
+    /** Whether renameImage gives the image its other name next. */
+    private boolean renamed;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Benchmarks.createWorkDirectory("rename");
+        HistoryManager.setSupPath(dir.resolve("superlog.log"));
+        imageTagger = new ImageTagger(new TagManager(new BufferedReader(new StringReader("beach\n"))));
+        image = new ImageFile(Files.createFile(dir.resolve("IMG_1000 @sunset.jpg")), dir);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        HistoryManager.flush();
+        Benchmarks.deleteWorkDirectory(dir);
+    }
+
+    @Benchmark
+    public void tagAndUntag() throws IOException {
+        imageTagger.tagImage(image, TAG);
+        imageTagger.unTagImage(image, TAG);
+    }
+
+    @Benchmark
+    public void renameImage() throws IOException {
+        renamed = !renamed;
+        imageTagger.renameImage(image, renamed ? "IMG_1000 @beach.jpg" : "IMG_1000 @sunset.jpg");
+    }
+}
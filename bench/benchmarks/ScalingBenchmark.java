@@ -0,0 +1,342 @@
+package benchmarks;
+
+import backend.HistoryManager;
+import backend.ImageFile;
+import backend.ImageTagger;
+import backend.LibraryScanner;
+import backend.RenameResult;
+import backend.SearchQuery;
+import backend.TagIndex;
+import backend.TagManager;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Times the app end to end on generated libraries, without a window:
+ * java benchmarks.ScalingBenchmark [--images N,N,...] [--dir DIR] [--seed S] [--keep]
+ *
+ * For each size a library is made with LibraryGenerator, then these are timed:
+ * <ul>
+ * <li>scan - opening the library the way the window does: LibraryScanner hands over batches, which are queued to
+ * a thread of their own, as the window queues them to the FX thread, to have their tags discovered and be given
+ * to ImageTagger.addImages. The total is the time until every batch is indexed; there is one sample per batch,
+ * of the time that thread spent on it</li>
+ * <li>rescan - the same again with a fresh tagger, now that the library's scan catalog exists</li>
+ * <li>search - TagIndex.search of a mix of tag, path, untagged and plain text searches</li>
+ * <li>tag - ImageTagger.tagImages on batches of up to BULK_BATCH random images, history included; one sample per
+ * batch</li>
+ * <li>revert - ImageTagger.getOldNames of random images for the revert dialog</li>
+ * </ul>
+ * Each phase reports its sample count, total time, latency percentiles and the peak heap while it ran, which is
+ * the sum of the heap pools' peaks after a GC, so an upper bound. The library is made under the directory given,
+ * /dev/shm by default as for the JMH benchmarks, and deleted afterwards unless --keep is given.
+ */
+public class ScalingBenchmark {
+
+    /** Images tagged by one call in the tag phase. */
+    private static final int BULK_BATCH = 100;
+
+    /** Batches in the tag phase. */
+    private static final int BULK_BATCHES = 20;
+
+    /** Searches run in the search phase. */
+    private static final int SEARCHES = 500;
+
+    /** Lookups in the revert phase. */
+    private static final int REVERT_LOOKUPS = 2000;
+
+    /** Previous names the revert dialog asks for, as in the Controller. */
+    private static final int REVERT_CHOICES = 100;
+
+    /** How often the scan hands over a batch, as in the Controller. */
+    private static final long SCAN_PUBLISH_INTERVAL_MILLIS = 100;
+
+    /** How to run the benchmark. */
+    private static final String USAGE =
+            "Usage: java benchmarks.ScalingBenchmark [--images N,N,...] [--dir DIR] [--seed S] [--keep]";
+
+    /** The heap's memory pools. */
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = new ArrayList<>();
+
+    static {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                HEAP_POOLS.add(pool);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {10000, 100000, 1000000};
+        String dir = null;
+        long seed = 1;
+        boolean keep = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--images") && i + 1 < args.length)
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                else if (args[i].equals("--dir") && i + 1 < args.length)
+                    dir = args[++i];
+                else if (args[i].equals("--seed") && i + 1 < args.length)
+                    seed = Long.parseLong(args[++i]);
+                else if (args[i].equals("--keep"))
+                    keep = true;
+                else
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (dir != null)
+            System.setProperty("benchmark.dir", dir);
+
+        System.out.printf("%-9s %-7s %8s %10s %9s %9s %9s %9s %10s%n",
+                "images", "phase", "samples", "total ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "heap MB");
+        for (int size : sizes)
+            run(size, seed, keep);
+        HistoryManager.flush();
+    }
+
+    /**
+     * Generates a library of size images and times every phase on it.
+     *
+     * @param size number of images
+     * @param seed seeds the generator and the choices of images
+     * @param keep whether to keep the library afterwards
+     * @throws IOException if the library can not be made or read
+     */
+    private static void run(int size, long seed, boolean keep) throws IOException {
+        Path work = Benchmarks.createWorkDirectory("scaling");
+        try {
+            run(size, seed, work);
+        } finally {
+            HistoryManager.flush();
+            HistoryManager.setSupPath(Paths.get("superlog.log"));
+            if (keep)
+                System.err.println("Kept " + work);
+            else
+                Benchmarks.deleteWorkDirectory(work);
+        }
+    }
+
+    /**
+     * Generates a library of size images in work and times every phase on it.
+     *
+     * @param size number of images
+     * @param seed seeds the generator and the choices of images
+     * @param work an empty directory to work in
+     * @throws IOException if the library can not be made or read
+     */
+    private static void run(int size, long seed, Path work) throws IOException {
+        Path root = work.resolve("library");
+        LibraryGenerator generator = new LibraryGenerator(root, seed);
+        long start = System.nanoTime();
+        int histories = generator.generate(size);
+        System.err.printf("Generated %d images, %d with history, in %s in %.1f s%n",
+                size, histories, root, (System.nanoTime() - start) / 1e9);
+        HistoryManager.setSupPath(work.resolve("superlog.log"));
+        Random random = new Random(seed);
+
+        scan(size, "scan", work, root);
+        ImageTagger imageTagger = scan(size, "rescan", work, root);
+        TagIndex index = imageTagger.getTagIndex();
+
+        List<String> searches = Arrays.asList("tag:" + generator.getTag(0), "tag:" + generator.getTag(30),
+                "tag:" + generator.getTag(0) + " tag:" + generator.getTag(1), "untagged",
+                "path:" + generator.getDirectory(size / 2).getName(0) + " -tag:" + generator.getTag(2),
+                "IMG_00012", String.format("IMG_%07d", random.nextInt(size)), "@" + generator.getTag(5));
+        Phase search = new Phase(size, "search");
+        for (int i = 0; i < SEARCHES; i++) {
+            String text = searches.get(i % searches.size());
+            long t = System.nanoTime();
+            BitSet matches = index.search(SearchQuery.parse(text));
+            matches.cardinality();
+            search.sample(t);
+        }
+        search.report();
+
+        String bulkTag = "benchmark";
+        imageTagger.createTagsIfNotExist(Collections.singletonList(bulkTag));
+        Phase tag = new Phase(size, "tag");
+        int batchSize = Math.max(1, Math.min(BULK_BATCH, size / (2 * BULK_BATCHES))); // leaves untagged images.
+        for (int b = 0; b < BULK_BATCHES; b++) {
+            Set<ImageFile> batch = new LinkedHashSet<>();
+            while (batch.size() < batchSize) {
+                ImageFile image = randomImage(index, random);
+                if (!image.hasTag(bulkTag))
+                    batch.add(image);
+            }
+            long t = System.nanoTime();
+            for (RenameResult result : imageTagger.tagImages(new ArrayList<>(batch),
+                    Collections.singletonList(bulkTag))) {
+                if (!result.isSuccess())
+                    throw new IOException("Unable to tag " + result.getOldPath(), result.getError());
+            }
+            tag.sample(t);
+        }
+        HistoryManager.flush();
+        tag.report();
+
+        Phase revert = new Phase(size, "revert");
+        for (int i = 0; i < REVERT_LOOKUPS; i++) {
+            ImageFile image = randomImage(index, random);
+            long t = System.nanoTime();
+            imageTagger.getOldNames(image, REVERT_CHOICES);
+            revert.sample(t);
+        }
+        revert.report();
+    }
+
+    /**
+     * Opens root the way the window does, with a new tagger whose tags file is in work.
+     *
+     * @param size  number of images, for the report
+     * @param name  name of the phase
+     * @param work  where the tags file and the scan catalog are kept
+     * @param root  the library
+     * @return the tagger, with every image indexed
+     * @throws IOException if the library can not be read
+     */
+    private static ImageTagger scan(int size, String name, Path work, Path root) throws IOException {
+        ImageTagger imageTagger = new ImageTagger(new TagManager(work.resolve("tags-" + name + ".txt")));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:**.{jpg,jpeg,png,gif,bmp}");
+        LibraryScanner scanner = new LibraryScanner(root, matcher,
+                Math.max(4, Runtime.getRuntime().availableProcessors()));
+        scanner.setCatalogDirectory(work.resolve("catalogs"));
+        ExecutorService indexer = Executors.newSingleThreadExecutor(); // stands in for the FX thread.
+        List<Future<?>> batches = new ArrayList<>();
+        Phase phase = new Phase(size, name);
+        long start = System.nanoTime();
+        try {
+            scanner.scan(batch -> batches.add(indexer.submit(() -> {
+                long t = System.nanoTime();
+                imageTagger.addImages(batch, ImageTagger.discoverTags(batch));
+                phase.sample(t);
+                return null;
+            })), SCAN_PUBLISH_INTERVAL_MILLIS);
+            for (Future<?> batch : batches)
+                batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to index a batch", e.getCause());
+        } finally {
+            indexer.shutdownNow();
+        }
+        phase.report(System.nanoTime() - start);
+        if (imageTagger.getTagIndex().size() != size)
+            throw new IOException("Scanned " + imageTagger.getTagIndex().size() + " of " + size + " images");
+        return imageTagger;
+    }
+
+    /**
+     * @param index  a full index
+     * @param random picks the image
+     * @return a random indexed image
+     */
+    private static ImageFile randomImage(TagIndex index, Random random) {
+        ImageFile image = null;
+        while (image == null) // there are no free ordinals unless images were removed.
+            image = index.imageAt(random.nextInt(index.size()));
+        return image;
+    }
+
+    /** Samples and heap use of one phase. */
+    private static class Phase {
+
+        /** Number of images, for the report. */
+        private final int size;
+
+        /** Name of the phase. */
+        private final String name;
+
+        /** Latencies in nanoseconds. */
+        private long[] samples = new long[1024];
+
+        /** Number of samples. */
+        private int count;
+
+        /** Sum of the samples. */
+        private long total;
+
+        /**
+         * Starts a phase, after collecting garbage so the heap peak is the phase's own.
+         */
+        Phase(int size, String name) {
+            this.size = size;
+            this.name = name;
+            System.gc();
+            for (MemoryPoolMXBean pool : HEAP_POOLS)
+                pool.resetPeakUsage();
+        }
+
+        /**
+         * Records the time since start.
+         *
+         * @param start System.nanoTime() when the sample started
+         */
+        void sample(long start) {
+            long latency = System.nanoTime() - start;
+            if (count == samples.length)
+                samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = latency;
+            total += latency;
+        }
+
+        /**
+         * Prints the phase's line of the report, with the sum of the samples as its total time.
+         */
+        void report() {
+            report(total);
+        }
+
+        /**
+         * Prints the phase's line of the report.
+         *
+         * @param totalNanos the phase's total time
+         */
+        void report(long totalNanos) {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : HEAP_POOLS)
+                peak += pool.getPeakUsage().getUsed();
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            System.out.printf("%-9d %-7s %8d %10.1f %9.3f %9.3f %9.3f %9.3f %10.1f%n", size, name, count,
+                    totalNanos / 1e6, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    percentile(sorted, 100), peak / (1024.0 * 1024.0));
+        }
+
+        /**
+         * @param sorted  sorted latencies in nanoseconds
+         * @param percent a percentile
+         * @return the nearest-rank percentile, in milliseconds
+         */
+        private static double percentile(long[] sorted, int percent) {
+            if (sorted.length == 0)
+                return 0;
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package benchmarks;
+
+import backend.TagManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up and adding tags with 1k, 10k and 100k tags known. addTag writes to a Writer that discards its
+ * input, so it measures the bookkeeping and not the disk. It is timed as single shots of ADD_BATCH adds, with the
+ * manager rebuilt before each, so the number of tags stays close to the parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagManagerBenchmark {
+
+    /** Number of tags added by one shot of addTag. */
+    private static final int ADD_BATCH = 10000;
+
+    /** Number of tags known. */
+    @Param({"1000", "10000", "100000"})
+    public int tagCount;
+
+    /** The tags file's contents. */
+    private String tagsFile;
+
+    /** The manager. */
+    private TagManager tagManager;
+
+    /** Known tags cycled through by contains. */
+    private String[] known;
+
+    /** Unknown tags cycled through by contains. */
+    private String[] unknown;
+
+    /** Next tag to look up. */
+    private int next;
+
+    /** Number of tags added since the manager was built. */
+    private int added;
+
+    /** Discards what addTag writes. */
+    private final Writer discard = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUpTags() {
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < tagCount; i++)
+            file.append("tag").append(i).append('\n');
+        tagsFile = file.toString();
+        known = new String[1024];
+        unknown = new String[known.length];
+        for (int i = 0; i < known.length; i++) {
+            known[i] = "tag" + (int) ((i * 2654435761L) % tagCount);
+            unknown[i] = "missing" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpManager() throws IOException {
+        tagManager = new TagManager(new BufferedReader(new StringReader(tagsFile)));
+        added = 0;
+    }
+
+    @Benchmark
+    public boolean containsKnown() {
+        next = (next + 1) & (known.length - 1);
+        return tagManager.contains(known[next]);
+    }
+
+    @Benchmark
+    public boolean containsUnknown() {
+        next = (next + 1) & (unknown.length - 1);
+        return tagManager.contains(unknown[next]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, batchSize = ADD_BATCH)
+    @Measurement(iterations = 20, batchSize = ADD_BATCH)
+    public boolean addTag() throws IOException {
+        return tagManager.addTag("new" + added++, discard);
+    }
+}
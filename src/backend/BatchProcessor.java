@@ -0,0 +1,435 @@
+package backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs tagging operations read as text records, for scripts and servers without a display.
+ *
+ * Each line is one operation, its fields separated by tabs:
+ * <pre>
+ * tag      PATH  TAG...    adds the tags to the image
+ * untag    PATH  TAG...    removes the tags from the image
+ * rename   PATH  NAME      renames the image, in its directory
+ * move     PATH  DIR       moves the image, and its history, to another directory
+ * revert   PATH  [N]       renames the image back to its Nth most recent old name, 1 by default
+ * </pre>
+ * Empty lines and lines starting with # are skipped.
+ *
+ * Operations run on a fixed number of lanes, each a thread with a bounded queue, so input of any size is
+ * streamed through in constant memory. An operation is given to the lane its image's base name, the file name
+ * without tags or extension, hashes to. Tagging, untagging, moving and reverting keep the base name, so the
+ * operations on one image run in the order they were read even when a line names the image by the path an
+ * earlier line gave it; after a rename to another base name that order is no longer guaranteed. New tags are
+ * registered by the reading thread, once each, before the operations using them are handed out.
+ */
+public class BatchProcessor {
+
+    /** The outcome of one operation. */
+    public static class Result {
+
+        /** Line number of the operation in the input, from 1. */
+        private final long line;
+
+        /** The operation, e.g. tag. */
+        private final String operation;
+
+        /** Path of the image before the operation. */
+        private final Path oldPath;
+
+        /** Path of the image after the operation, null if it failed. */
+        private final Path newPath;
+
+        /** Why the operation failed, null if it succeeded. */
+        private final String error;
+
+        /**
+         * Class constructor
+         */
+        Result(long line, String operation, Path oldPath, Path newPath, String error) {
+            this.line = line;
+            this.operation = operation;
+            this.oldPath = oldPath;
+            this.newPath = newPath;
+            this.error = error;
+        }
+
+        /**
+         * @return line number of the operation in the input, from 1
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * @return whether the operation succeeded
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return path of the image after the operation, null if it failed
+         */
+        public Path getNewPath() {
+            return newPath;
+        }
+
+        /**
+         * @return why the operation failed, null if it succeeded
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return the result as a tab separated record: ok, line, operation, old path and new path, or error, line,
+         * operation, path and reason
+         */
+        @Override
+        public String toString() {
+            String path = oldPath == null ? "" : oldPath.toString();
+            if (error == null)
+                return "ok\t" + line + "\t" + operation + "\t" + path + "\t" + newPath;
+            return "error\t" + line + "\t" + operation + "\t" + path + "\t"
+                    + error.replace('\t', ' ').replace('\n', ' ');
+        }
+    }
+
+    /** Number of operations each lane may have waiting. */
+    private static final int LANE_CAPACITY = 1024;
+
+    /** Handed to a lane to stop it. */
+    private static final Operation STOP = new Operation(0, null, null, null, null);
+
+    /** One parsed input line. */
+    private static class Operation {
+
+        /** Line number in the input, from 1. */
+        final long line;
+
+        /** The operation, e.g. tag. */
+        final String name;
+
+        /** Absolute path of the image. */
+        final Path path;
+
+        /** Base name of the image, which picks its lane. */
+        final String baseName;
+
+        /** The fields after the path. */
+        final List<String> arguments;
+
+        Operation(long line, String name, Path path, String baseName, List<String> arguments) {
+            this.line = line;
+            this.name = name;
+            this.path = path;
+            this.baseName = baseName;
+            this.arguments = arguments;
+        }
+    }
+
+    /** Renames the images. */
+    private final ImageTagger imageTagger;
+
+    /** The library root images belong to, null to use each image's directory. */
+    private final Path root;
+
+    /** Number of lanes. */
+    private final int parallelism;
+
+    /** Tags already registered or found invalid, only used by the reading thread. */
+    private final Set<String> knownTags = new HashSet<>();
+
+    /** Tags found invalid, only used by the reading thread. */
+    private final Set<String> invalidTags = new HashSet<>();
+
+    /** Number of operations finished. */
+    private final LongAdder processed = new LongAdder();
+
+    /** Number of operations that failed. */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Class constructor
+     *
+     * @param imageTagger renames the images
+     * @param root        the library root the images belong to, which keeps their history when history stores are
+     *                    used; null to use each image's directory
+     * @param parallelism number of operations run at once, at least 1
+     */
+    public BatchProcessor(ImageTagger imageTagger, Path root, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.imageTagger = imageTagger;
+        this.root = root;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs every operation in input, handing each result to sink as soon as it is known. sink is called from the
+     * lane threads, possibly at the same time, so results of different paths arrive in no particular order.
+     * Returns once every operation has finished.
+     *
+     * @param input the operations, one per line
+     * @param sink  receives the result of every operation
+     * @throws IOException if input can not be read or new tags can not be registered; operations already handed
+     *                     out still finish first
+     */
+    public void run(BufferedReader input, Consumer<Result> sink) throws IOException {
+        List<BlockingQueue<Operation>> queues = new ArrayList<>(parallelism);
+        List<Thread> lanes = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            BlockingQueue<Operation> queue = new ArrayBlockingQueue<>(LANE_CAPACITY);
+            Thread lane = new Thread(() -> drain(queue, sink), "batch-lane-" + (lanes.size() + 1));
+            lane.setDaemon(true);
+            lane.start();
+            queues.add(queue);
+            lanes.add(lane);
+        }
+
+        try {
+            String text;
+            long line = 0;
+            while ((text = input.readLine()) != null) {
+                line++;
+                if (text.trim().isEmpty() || text.startsWith("#"))
+                    continue;
+                Operation operation;
+                try {
+                    operation = parse(line, text);
+                } catch (IllegalArgumentException e) {
+                    report(sink, new Result(line, text.split("\t", 2)[0], null, null, e.getMessage()));
+                    continue;
+                }
+                String invalid = registerTags(operation);
+                if (invalid != null) {
+                    report(sink, new Result(line, operation.name, operation.path, null, "Invalid tag: " + invalid));
+                    continue;
+                }
+                put(queues.get(Math.floorMod(operation.baseName.hashCode(), parallelism)), operation);
+            }
+        } finally {
+            for (BlockingQueue<Operation> queue : queues)
+                put(queue, STOP);
+            for (Thread lane : lanes)
+                join(lane);
+        }
+    }
+
+    /**
+     * @return number of operations finished so far, failed ones included
+     */
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    /**
+     * @return number of operations that failed so far
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Runs the operations of one lane until it is stopped.
+     *
+     * @param queue the lane's operations
+     * @param sink  receives the results
+     */
+    private void drain(BlockingQueue<Operation> queue, Consumer<Result> sink) {
+        while (true) {
+            Operation operation;
+            try {
+                operation = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (operation == STOP)
+                return;
+            Result result;
+            try {
+                result = new Result(operation.line, operation.name, operation.path, execute(operation), null);
+            } catch (IOException | RuntimeException e) {
+                String reason = e.getMessage() == null || e instanceof FileSystemException
+                        ? e.toString() : e.getMessage(); // the message of a FileSystemException is just the path.
+                result = new Result(operation.line, operation.name, operation.path, null, reason);
+            }
+            report(sink, result);
+        }
+    }
+
+    /**
+     * Counts result and hands it to sink.
+     *
+     * @param sink   receives the result
+     * @param result the result
+     */
+    private void report(Consumer<Result> sink, Result result) {
+        if (!result.isSuccess())
+            failed.increment();
+        processed.increment();
+        sink.accept(result);
+    }
+
+    /**
+     * Runs one operation.
+     *
+     * @param operation the operation
+     * @return path of the image afterwards
+     * @throws IOException if the image can not be renamed or moved
+     */
+    private Path execute(Operation operation) throws IOException {
+        ImageFile image = new ImageFile(operation.path, root != null ? root : operation.path.getParent());
+        List<String> arguments = operation.arguments;
+        switch (operation.name) {
+            case "tag":
+                imageTagger.tagImage(image, arguments);
+                break;
+            case "untag":
+                imageTagger.unTagImage(image, arguments);
+                break;
+            case "rename":
+                imageTagger.renameImage(image, arguments.get(0));
+                break;
+            case "move":
+                imageTagger.moveFile(image, Paths.get(arguments.get(0)).toAbsolutePath());
+                break;
+            case "revert":
+                int back = arguments.isEmpty() ? 1 : Integer.parseInt(arguments.get(0));
+                List<String> oldNames = imageTagger.getOldNames(image, back);
+                if (oldNames.size() < back)
+                    throw new IOException("Only " + oldNames.size() + " old names");
+                imageTagger.renameImage(image, oldNames.get(back - 1));
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation " + operation.name);
+        }
+        return image.getFilePath();
+    }
+
+    /**
+     * @param line the line number
+     * @param text the line
+     * @return the operation on the line
+     * @throws IllegalArgumentException if the line is not a well formed operation
+     */
+    private static Operation parse(long line, String text) {
+        String[] fields = text.split("\t", -1);
+        String name = fields[0].trim();
+        if (fields.length < 2 || fields[1].isEmpty())
+            throw new IllegalArgumentException("Missing path");
+        List<String> arguments = new ArrayList<>(Arrays.asList(fields).subList(2, fields.length));
+        arguments.removeIf(String::isEmpty);
+        switch (name) {
+            case "tag":
+            case "untag":
+                if (arguments.isEmpty())
+                    throw new IllegalArgumentException("Missing tags");
+                break;
+            case "rename":
+                if (arguments.size() != 1)
+                    throw new IllegalArgumentException("Expected one name");
+                break;
+            case "move":
+                if (arguments.size() != 1)
+                    throw new IllegalArgumentException("Expected one directory");
+                break;
+            case "revert":
+                if (arguments.size() > 1 || (!arguments.isEmpty() && !arguments.get(0).matches("[1-9][0-9]{0,8}")))
+                    throw new IllegalArgumentException("Expected a positive number of names to go back");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + name);
+        }
+        Path path = Paths.get(fields[1]).toAbsolutePath().normalize();
+        Path fileName = path.getFileName();
+        if (fileName == null)
+            throw new IllegalArgumentException("Not a file: " + path);
+        String baseName = ParsedName.parse(fileName.toString()).getBaseName(); // throws if there is no extension
+        return new Operation(line, name, path, baseName, arguments);
+    }
+
+    /**
+     * Registers the tags a tag operation adds that are not registered yet, with one write for the lot.
+     *
+     * @param operation an operation
+     * @return a tag of the operation that is invalid, null if there is none
+     * @throws IOException if the tags file can not be written
+     */
+    private String registerTags(Operation operation) throws IOException {
+        if (!operation.name.equals("tag"))
+            return null;
+        List<String> newTags = new ArrayList<>();
+        for (String tag : operation.arguments) {
+            if (invalidTags.contains(tag))
+                return tag;
+            if (!knownTags.contains(tag))
+                newTags.add(tag);
+        }
+        if (newTags.isEmpty())
+            return null;
+        String invalid = null;
+        for (Map.Entry<String, TagManager.AddResult> entry : imageTagger.createTags(newTags).entrySet()) {
+            knownTags.add(entry.getKey());
+            if (entry.getValue() == TagManager.AddResult.INVALID) {
+                invalidTags.add(entry.getKey());
+                if (invalid == null)
+                    invalid = entry.getKey();
+            }
+        }
+        return invalid;
+    }
+
+    /**
+     * Puts operation on queue, waiting for room.
+     *
+     * @param queue     a lane's queue
+     * @param operation the operation
+     */
+    private static void put(BlockingQueue<Operation> queue, Operation operation) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(operation);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // finish handing out, so the lanes stop, then restore the flag.
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Waits for thread to finish.
+     *
+     * @param thread the thread
+     */
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -1,34 +1,571 @@
 package backend;
 
 import java.io.*;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-/** Responsible for logging changes on file names to superLog and individual log files for images. */
+/**
+ * Responsible for logging changes on file names to superLog and individual log files for images.
+ *
+ * The superlog is written to supPath until it reaches a size or age limit, then it is sealed: renamed to a
+ * numbered segment next to it (superlog.1.log, superlog.2.log, ...) with a small summary file of its time range
+ * and directories, and a new superlog is started. Reads cover the segments oldest first, then the superlog.
+ */
 public class HistoryManager {
 
     private static Path supPath = Paths.get("superlog.log");
 
+    /** Default number of log files the appender keeps open. */
+    private static final int DEFAULT_MAX_OPEN_LOGS = 64;
+
+    /** Default time the appender gathers log entries before writing them, in milliseconds. */
+    private static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 20;
+
+    /** Whether new image log entries end with an extra field holding the time in milliseconds since the epoch. */
+    private static volatile boolean recordEpochMillis = false;
+
+    /** Writes all log entries from a background thread, created on first use. */
+    private static LogAppender appender;
+
+    /** Default size at which the superlog is sealed into a segment. */
+    private static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    /** Suffix of the files holding the line index of a superlog file. */
+    private static final String LINE_INDEX_SUFFIX = ".lines";
+
+    /** Suffix of the files holding the summary of a segment. */
+    private static final String SUMMARY_SUFFIX = ".summary";
+
+    /** Size at which the superlog is sealed, 0 for no limit. */
+    private static long maxSegmentBytes = DEFAULT_MAX_SEGMENT_BYTES;
+
+    /** Age of its first entry at which the superlog is sealed, in milliseconds, 0 for no limit. */
+    private static long maxSegmentAgeMillis = 0;
+
+    /** Approximate size of the superlog including queued entries, -1 until it is first needed. */
+    private static long supBytes = -1;
+
+    /** Time the first entry of the superlog was logged, -1 if it has none. */
+    private static long supStartMillis = -1;
+
+    /** Whether image history is kept in one store per library instead of a .log file per image. */
+    private static volatile boolean useHistoryStore = false;
+
+    /** Open history stores, by library root. */
+    private static final Map<Path, HistoryStore> historyStores = new HashMap<>();
+
+    /** Line indexes of the superlog and its segments, created on first use. */
+    private static final Map<Path, LineIndex> lineIndexes = new HashMap<>();
+
+    /** Summaries of sealed segments, loaded on first use. */
+    private static final Map<Path, SegmentSummary> summaries = new HashMap<>();
+
+    /**
+     * Configures how log entries are written. Entries queued with the previous settings are written first.
+     *
+     * @param maxOpenLogs          how many log files may be kept open at once
+     * @param commitIntervalMillis how long to gather entries before writing them, 0 to write right away
+     * @param sync                 whether to force every write to disk
+     */
+    public static synchronized void configure(int maxOpenLogs, long commitIntervalMillis, boolean sync) {
+        LogAppender old = appender;
+        appender = new LogAppender(maxOpenLogs, commitIntervalMillis, sync);
+        if (old != null)
+            old.shutdown();
+    }
+
+    /**
+     * Sets when the superlog is sealed into a numbered segment and a new one started. Sealing happens before an
+     * entry would grow the superlog past maxSegmentBytes, or once its first entry is older than
+     * maxSegmentAgeMillis. Segments are sealed at 64MB by default, with no age limit.
+     *
+     * @param maxSegmentBytes     size limit of the superlog in bytes, 0 for none
+     * @param maxSegmentAgeMillis age limit of the superlog in milliseconds, 0 for none
+     */
+    public static synchronized void configureRotation(long maxSegmentBytes, long maxSegmentAgeMillis) {
+        HistoryManager.maxSegmentBytes = Math.max(0, maxSegmentBytes);
+        HistoryManager.maxSegmentAgeMillis = Math.max(0, maxSegmentAgeMillis);
+    }
+
+    /**
+     * Sets whether new image log entries get a fourth field with the exact time in milliseconds since the epoch,
+     * after the new name. Readers of the old three field format ignore it. Off by default.
+     *
+     * @param record true to record the field
+     */
+    public static void setRecordEpochMillis(boolean record) {
+        recordEpochMillis = record;
+    }
+
+    /**
+     * Sets whether image history is kept in one binary store per library root, see HistoryStore, instead of a
+     * .log file next to each image. Images whose history is still in a .log file are read from it until their
+     * logs are imported with migrateImageLogs. Off by default.
+     *
+     * @param use true to use history stores
+     */
+    public static void setUseHistoryStore(boolean use) {
+        useHistoryStore = use;
+    }
+
+    /**
+     * @return whether image history is kept in history stores
+     */
+    public static boolean isUsingHistoryStore() {
+        return useHistoryStore;
+    }
+
+    /**
+     * Imports the .log files of every image under root into the library's history store.
+     *
+     * @param root       the library root
+     * @param deleteLogs whether to delete the .log files once imported
+     * @return the number of .log files imported
+     * @throws IOException if a log can not be read or the store can not be written
+     */
+    public static int migrateImageLogs(Path root, boolean deleteLogs) throws IOException {
+        flush(); // queued entries belong in the logs being imported
+        return getHistoryStore(root).importLogs(deleteLogs);
+    }
+
+    /**
+     * Imports the .log files of every image under root into the library's history store, unless that was done
+     * before for this library. Meant to be called whenever a library is opened.
+     *
+     * @param root       the library root
+     * @param deleteLogs whether to delete the .log files once imported
+     * @return the number of .log files imported, 0 if they were imported before
+     * @throws IOException if a log can not be read or the store can not be written
+     */
+    public static int migrateImageLogsOnce(Path root, boolean deleteLogs) throws IOException {
+        flush();
+        return getHistoryStore(root).importLogsOnce(deleteLogs);
+    }
+
+    /**
+     * Saves the indexes of the open history stores and closes them.
+     *
+     * @throws IOException if an index can not be saved
+     */
+    public static synchronized void closeHistoryStores() throws IOException {
+        IOException failure = null;
+        for (HistoryStore store : historyStores.values()) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+        historyStores.clear();
+        if (failure != null)
+            throw failure;
+    }
+
     /**
-     * Logs name change from oldName to newName in file located at Path as well as in the superlog file.
+     * @param root a library root
+     * @return the history store of the library, opening it if needed
+     * @throws IOException if the store can not be opened
+     */
+    private static synchronized HistoryStore getHistoryStore(Path root) throws IOException {
+        Path key = root.toAbsolutePath().normalize();
+        HistoryStore store = historyStores.get(key);
+        if (store == null) {
+            store = new HistoryStore(key, false);
+            historyStores.put(key, store);
+        }
+        return store;
+    }
+
+    /**
+     * Returns the distinct old names of an image, most recent first: those in its history store entry, if history
+     * stores are in use, followed by those in its .log file, if it still has one.
+     *
+     * @param root    the library root of the image
+     * @param logPath path of the image's .log file
+     * @param limit   the maximum number of names to return
+     * @return at most limit old names, most recent first
+     * @throws IOException if the history can not be read
+     */
+    static ArrayList<String> getOldNames(Path root, Path logPath, int limit) throws IOException {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        if (useHistoryStore && root != null)
+            names.addAll(getHistoryStore(root).getOldNames(logPath, limit));
+        if (names.size() < limit) {
+            flush();
+            if (Files.isRegularFile(logPath)) // not imported yet, its entries are older than the store's
+                names.addAll(getOldNames(logPath, limit));
+        }
+        ArrayList<String> oldNames = new ArrayList<>(names);
+        return oldNames.size() > limit ? new ArrayList<>(oldNames.subList(0, limit)) : oldNames;
+    }
+
+    /**
+     * Takes the history of an image along when it moves. A .log file is moved by the caller; an entry in a
+     * history store is handed over to the image's new location.
+     *
+     * @param root       the library root of the image
+     * @param oldLogPath path of the image's .log file before the move
+     * @param newLogPath path of the image's .log file after the move
+     * @throws IOException if the store can not be written
+     */
+    static void moveHistory(Path root, Path oldLogPath, Path newLogPath) throws IOException {
+        if (useHistoryStore && root != null)
+            getHistoryStore(root).move(oldLogPath, newLogPath);
+    }
+
+    /**
+     * Waits until every logged change has been written to its log files. A failed write is reported to the next
+     * change logged for the same file, not here, so readers never see the failures of other callers.
+     *
+     * @throws IOException if interrupted while waiting
+     */
+    public static void flush() throws IOException {
+        getAppender().flush();
+    }
+
+    /**
+     * Waits until every logged change has been written to its log files and reports the write failures no change
+     * logged since has reported. Meant for the end of a run that made all the changes, e.g. a batch.
+     *
+     * @throws IOException if writing a log entry failed
+     */
+    public static void flushAll() throws IOException {
+        getAppender().flushAll();
+    }
+
+    /**
+     * Writes pending entries of the given log file and closes it, so it can be moved or deleted.
+     *
+     * @param logPath path of the log file
+     * @throws IOException if interrupted while waiting
+     */
+    static void release(Path logPath) throws IOException {
+        getAppender().close(logPath);
+    }
+
+    /**
+     * @return the appender, creating it with the default settings if needed
+     */
+    private static synchronized LogAppender getAppender() {
+        if (appender == null)
+            appender = new LogAppender(DEFAULT_MAX_OPEN_LOGS, DEFAULT_COMMIT_INTERVAL_MILLIS, false);
+        return appender;
+    }
+
+    /**
+     * Sets where the superlog is kept. Defaults to superlog.log in the working directory.
+     *
+     * @param path path of the superlog file
+     */
+    public static synchronized void setSupPath(Path path) {
+        supPath = path;
+        supBytes = -1;
+        supStartMillis = -1;
+        lineIndexes.clear();
+        summaries.clear();
+    }
+
+    /**
+     * @return path of the superlog file
+     */
+    private static synchronized Path getSupPath() {
+        return supPath;
+    }
+
+    /**
+     * Logs every rename in renames, queueing a single entry block for the superlog and for each image's log file.
      *
-     * @param filePath Path to log file
-     * @param oldName Old name of Image file
-     * @param newName New name of Image file
-     * @throws IOException if file is not found or another IO exception occurs
+     * @param renames successful renames to log
+     * @throws IOException if the entries could not be queued, or an earlier write to one of these logs failed;
+     *                     the entries are queued for every other log either way
      */
+    static void logChanges(List<RenameResult> renames) throws IOException {
+        if (renames.isEmpty())
+            return;
 
-    static void logChange(Path filePath, Path oldName, Path newName) throws IOException {
-        BufferedWriter imgLog = new BufferedWriter(new FileWriter( filePath.toFile() , true));
-        //the above code was obtained from https://stackoverflow.com/questions/1237235/check-file-exists-java
-        imgLogChange(imgLog, oldName.getFileName().toString(), newName.getFileName().toString());
-        //The above logs the name change in the image log file
-        BufferedWriter supLog = new BufferedWriter(new FileWriter( supPath.toFile() , true));
-        supLogChange(supLog, oldName.toAbsolutePath().toString(), newName.toAbsolutePath().toString());
-        //the above logs the name change in the super log file
+        Map<Path, StringBuilder> imgEntries = new LinkedHashMap<>();
+        Map<Path, List<RenameResult>> storeEntries = new LinkedHashMap<>();
+        StringBuilder supEntries = new StringBuilder();
+        for (RenameResult rename : renames) {
+            supLogChange(supEntries, rename.getOldPath().toAbsolutePath().toString(),
+                    rename.getNewPath().toAbsolutePath().toString());
+            Path root = rename.getImageFile().getBaseDir();
+            if (useHistoryStore && root != null) {
+                List<RenameResult> stored = storeEntries.get(root);
+                if (stored == null) {
+                    stored = new ArrayList<>();
+                    storeEntries.put(root, stored);
+                }
+                stored.add(rename);
+                continue;
+            }
+            StringBuilder imgEntry = imgEntries.get(rename.getLogPath());
+            if (imgEntry == null) {
+                imgEntry = new StringBuilder();
+                imgEntries.put(rename.getLogPath(), imgEntry);
+            }
+            imgLogChange(imgEntry, rename.getOldPath().getFileName().toString(),
+                    rename.getNewPath().getFileName().toString());
+        }
+
+        for (Map.Entry<Path, List<RenameResult>> stored : storeEntries.entrySet())
+            getHistoryStore(stored.getKey()).logChanges(stored.getValue());
+        LogAppender logAppender = getAppender();
+        IOException failure = null; // an earlier failure of one log must not keep the entries of the others out
+        for (Map.Entry<Path, StringBuilder> imgEntry : imgEntries.entrySet()) {
+            try {
+                logAppender.append(imgEntry.getKey(), imgEntry.getValue().toString());
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+        try {
+            appendSupEntries(supEntries.toString());
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Queues entries for the superlog, sealing it first if they would take it past the rotation limits.
+     * Holding the class lock keeps other entries from being queued for the superlog while it is sealed.
+     *
+     * @param entries the entries
+     * @throws IOException if the superlog could not be sealed or the entries could not be queued
+     */
+    private static synchronized void appendSupEntries(String entries) throws IOException {
+        long now = System.currentTimeMillis();
+        if (supBytes < 0)
+            loadSupState();
+        boolean full = maxSegmentBytes > 0 && supBytes + entries.length() > maxSegmentBytes;
+        boolean old = maxSegmentAgeMillis > 0 && supStartMillis >= 0 && now - supStartMillis >= maxSegmentAgeMillis;
+        if (supBytes > 0 && (full || old))
+            sealSupLog();
+
+        getAppender().append(supPath, entries);
+        supBytes += entries.length(); // chars, close enough to bytes for a size limit
+        if (supStartMillis < 0)
+            supStartMillis = now;
+    }
+
+    /**
+     * Finds the size of the superlog and the time of its first entry.
+     *
+     * @throws IOException if the superlog can not be read
+     */
+    private static void loadSupState() throws IOException {
+        flush();
+        supBytes = 0;
+        supStartMillis = -1;
+        if (!Files.exists(supPath))
+            return;
+        supBytes = Files.size(supPath);
+        try (BufferedReader reader = Files.newBufferedReader(supPath, Charset.defaultCharset())) {
+            String first = reader.readLine();
+            if (first != null)
+                supStartMillis = LogTimestamp.parseSupStamp(first);
+        }
+    }
+
+    /**
+     * Renames the superlog to the next numbered segment, moving its line index along, and writes the segment's
+     * summary. The next entry starts a new superlog.
+     *
+     * @throws IOException if the superlog can not be moved or summarized
+     */
+    private static void sealSupLog() throws IOException {
+        flush();
+        release(supPath);
+
+        List<Path> segments = getSupSegments();
+        Path segment = segmentPath(segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1);
+        Files.move(supPath, segment);
+        lineIndexes.remove(supPath);
+        Path lines = lineIndexPath(supPath);
+        if (Files.exists(lines))
+            Files.move(lines, lineIndexPath(segment), StandardCopyOption.REPLACE_EXISTING);
+
+        SegmentSummary summary = SegmentSummary.build(segment, Charset.defaultCharset());
+        summary.write(summaryPath(segment));
+        summaries.put(segment, summary);
+        supBytes = 0;
+        supStartMillis = -1;
+    }
+
+    /**
+     * @return the sealed segments of the superlog, oldest first
+     * @throws IOException if the directory of the superlog can not be listed
+     */
+    private static synchronized List<Path> getSupSegments() throws IOException {
+        Path dir = supPath.toAbsolutePath().getParent();
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (dir == null || !Files.isDirectory(dir))
+            return new ArrayList<>();
+        Pattern pattern = segmentPattern();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches() && matcher.group(1).length() < 18)
+                    segments.put(Long.parseLong(matcher.group(1)), supPath.resolveSibling(file.getFileName()));
+            }
+        }
+        return new ArrayList<>(segments.values());
+    }
+
+    /**
+     * @return the superlog segments followed by the superlog, all the files holding its entries in order
+     * @throws IOException if the directory of the superlog can not be listed
+     */
+    private static synchronized List<Path> getSupFiles() throws IOException {
+        List<Path> files = getSupSegments();
+        files.add(supPath);
+        return files;
+    }
+
+    /**
+     * @return pattern matching the file names of segments, with the segment number as group 1
+     */
+    private static Pattern segmentPattern() {
+        String name = supPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0)
+            return Pattern.compile(Pattern.quote(name) + "\\.(\\d+)");
+        return Pattern.compile(Pattern.quote(name.substring(0, dot)) + "\\.(\\d+)"
+                + Pattern.quote(name.substring(dot)));
+    }
+
+    /**
+     * @param segment a segment
+     * @return its number
+     */
+    private static long segmentNumber(Path segment) {
+        Matcher matcher = segmentPattern().matcher(segment.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    /**
+     * @param number a segment number
+     * @return path of the segment, superlog.3.log for segment 3 of superlog.log
+     */
+    private static Path segmentPath(long number) {
+        String name = supPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0)
+            return supPath.resolveSibling(name + "." + number);
+        return supPath.resolveSibling(name.substring(0, dot) + "." + number + name.substring(dot));
+    }
+
+    /**
+     * @param file a superlog file
+     * @return where its line index is kept
+     */
+    private static Path lineIndexPath(Path file) {
+        return file.resolveSibling(file.getFileName() + LINE_INDEX_SUFFIX);
+    }
+
+    /**
+     * @param segment a segment
+     * @return where its summary is kept
+     */
+    private static Path summaryPath(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + SUMMARY_SUFFIX);
+    }
+
+    /**
+     * @param segment a sealed segment
+     * @return its summary, rebuilt if the summary file is missing or damaged
+     * @throws IOException if the segment can not be read
+     */
+    private static synchronized SegmentSummary getSummary(Path segment) throws IOException {
+        SegmentSummary summary = summaries.get(segment);
+        if (summary == null) {
+            summary = SegmentSummary.read(summaryPath(segment));
+            if (summary == null) {
+                summary = SegmentSummary.build(segment, Charset.defaultCharset());
+                summary.write(summaryPath(segment));
+            }
+            summaries.put(segment, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Returns the superlog entries logged from fromMillis to toMillis that renamed a file in or under directory,
+     * oldest first. Timestamps have minute resolution, so an entry matches if any part of its minute is in range.
+     * Sealed segments whose summary shows they have no entries in the time range or under directory are skipped
+     * without being read.
+     *
+     * @param directory  the directory the old or new path must be in, null for any
+     * @param fromMillis start of the time range in milliseconds since the epoch
+     * @param toMillis   end of the time range, inclusive
+     * @return the matching entries
+     * @throws IOException if the superlog can not be read
+     */
+    public static List<String> findSupLogEntries(Path directory, long fromMillis, long toMillis) throws IOException {
+        flush();
+        String key = directory == null ? null : SegmentSummary.directoryKey(directory);
+        boolean filterDirectory = directory != null && directory.toAbsolutePath().normalize().getParent() != null;
+        List<String> entries = new ArrayList<>();
+        List<Path> segments = getSupSegments();
+        for (Path segment : segments) {
+            SegmentSummary summary = getSummary(segment);
+            if (!summary.overlaps(fromMillis, toMillis))
+                continue;
+            if (filterDirectory && !summary.mightContainDirectory(key))
+                continue;
+            findEntries(segment, key, fromMillis, toMillis, entries);
+        }
+        Path sup = getSupPath();
+        if (Files.exists(sup))
+            findEntries(sup, key, fromMillis, toMillis, entries);
+        return entries;
+    }
+
+    /**
+     * Adds the entries of a superlog file that match to entries.
+     *
+     * @param file       the superlog file
+     * @param directory  directory key the old or new path must be under, null for any
+     * @param fromMillis start of the time range
+     * @param toMillis   end of the time range, inclusive
+     * @param entries    where to add matching entries
+     * @throws IOException if the file can not be read
+     */
+    private static void findEntries(Path file, String directory, long fromMillis, long toMillis,
+                                    List<String> entries) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, Charset.defaultCharset())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long millis = LogTimestamp.parseSupStamp(line);
+                if (millis < 0 || millis + 60000L <= fromMillis || millis > toMillis)
+                    continue;
+                if (directory != null) {
+                    int arrow = SegmentSummary.arrowOf(line);
+                    if (arrow < 0 || !(SegmentSummary.isUnder(SegmentSummary.oldPathOf(line, arrow), directory)
+                            || SegmentSummary.isUnder(SegmentSummary.newPathOf(line, arrow), directory)))
+                        continue;
+                }
+                entries.add(line);
+            }
+        }
     }
 
     /**
@@ -40,12 +577,23 @@ public class HistoryManager {
      * @throws IOException if IOException occurs
      */
     public static void supLogChange(Writer supWriter , String abOldName, String abNewName) throws IOException {
-        String timeStamp = new SimpleDateFormat("dd.MM.yyyy HH:mm").format(new java.util.Date());
-        String supToWrite = timeStamp + " " + abOldName + " -> " + abNewName + "\n";
-        supWriter.append(supToWrite);
+        supLogChange((Appendable) supWriter, abOldName, abNewName);
         supWriter.close();
     }
 
+    /**
+     * Appends name change entry for the superlog to entries
+     *
+     * @param entries where to append the entry
+     * @param abOldName Absolute old name of img (including absolute filepath)
+     * @param abNewName Absolute new name of img (including absolute filepath)
+     * @throws IOException if IOException occurs
+     */
+    private static void supLogChange(Appendable entries, String abOldName, String abNewName) throws IOException {
+        String timeStamp = LogTimestamp.supStamp();
+        entries.append(timeStamp).append(" ").append(abOldName).append(" -> ").append(abNewName).append("\n");
+    }
+
     /**
      * Writes name change entry to logWriter
      *
@@ -55,24 +603,50 @@ public class HistoryManager {
      * @throws IOException if IOException occurs
      */
     public static void imgLogChange(Writer imgWriter, String oldName, String newName) throws IOException {
-        String timeStamp = new SimpleDateFormat("mm.HH.dd.MM.yyyy").format(new java.util.Date());
-        String toWrite = timeStamp + "\u0000" + oldName + "\u0000"+ newName + "\n" ;
-        imgWriter.append(toWrite);
+        imgLogChange((Appendable) imgWriter, oldName, newName);
         imgWriter.close();
     }
 
     /**
-     * Returns an ArrayList of old names for image file associated with the given log file.
+     * Appends name change entry for an image log to entries
+     *
+     * @param entries where to append the entry
+     * @param oldName old name of img (including relative filepath)
+     * @param newName new name of img (including relative filepath)
+     * @throws IOException if IOException occurs
+     */
+    private static void imgLogChange(Appendable entries, String oldName, String newName) throws IOException {
+        long now = System.currentTimeMillis();
+        entries.append(LogTimestamp.imgStamp(now)).append("\u0000").append(oldName).append("\u0000").append(newName);
+        if (recordEpochMillis)
+            entries.append("\u0000").append(Long.toString(now));
+        entries.append("\n");
+    }
+
+    /**
+     * Returns the distinct old names in the given log file, most recent first.
+     * The log is read backwards from its end, so only as much of it is read as is needed to find limit names.
      *
      * @param filePath Path for log file with old names
-     * @return ArrayList of old names
+     * @param limit the maximum number of names to return
+     * @return ArrayList of at most limit old names, most recent first
+     * @throws IOException if the log file can not be read
      */
-    static ArrayList<String> getOldNames(Path filePath) throws IOException
+    static ArrayList<String> getOldNames(Path filePath, int limit) throws IOException
     {
-        try (BufferedReader reader = Files.newBufferedReader(filePath))
+        flush();
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        try (ReverseLineReader reader = new ReverseLineReader(filePath, Charset.defaultCharset()))
         {
-            return getOldNames(reader);
+            while (names.size() < limit && reader.previousLine()) {
+                long nameStart = reader.indexOf((byte) 0, reader.lineStart(), reader.lineEnd());
+                if (nameStart < 0)
+                    continue; // not a log entry
+                long nameEnd = reader.indexOf((byte) 0, nameStart + 1, reader.lineEnd());
+                names.add(reader.decode(nameStart + 1, nameEnd < 0 ? reader.lineEnd() : nameEnd));
+            }
         }
+        return new ArrayList<>(names);
     }
 
     /**
@@ -84,20 +658,20 @@ public class HistoryManager {
      */
     public static ArrayList<String> getOldNames(BufferedReader reader) throws IOException
     {
-        ArrayList<String> names = new ArrayList<>();
+        LinkedHashSet<String> names = new LinkedHashSet<>();
         String logLine = reader.readLine();
 
         while(logLine != null) {
-            String[] oldName = logLine.split("\u0000");
-            if (!names.contains(oldName[1]))
-            {
-                names.add(oldName[1]);
+            int nameStart = logLine.indexOf('\u0000');
+            if (nameStart >= 0) {
+                int nameEnd = logLine.indexOf('\u0000', nameStart + 1);
+                names.add(logLine.substring(nameStart + 1, nameEnd < 0 ? logLine.length() : nameEnd));
             }
             logLine = reader.readLine();
         }
 
         reader.close();
-        return names;
+        return new ArrayList<>(names);
     }
 
     /**
@@ -107,10 +681,90 @@ public class HistoryManager {
      * @throws IOException if IOException occurs
      */
     public static String readSupLog() throws IOException{
-        try (BufferedReader reader = Files.newBufferedReader(supPath))
-        {
-            return readSupLog(reader);
+        flush();
+        StringBuilder log = new StringBuilder();
+        for (Path file : getSupFiles()) {
+            if (log.length() > 0 && !Files.exists(file))
+                continue; // everything has been sealed, no entries since
+            try (BufferedReader reader = Files.newBufferedReader(file))
+            {
+                log.append(readSupLog(reader));
+            }
+        }
+        return log.toString();
+    }
+
+    /**
+     * Returns count lines of the superlog starting at line fromLine, 0 being the oldest entry.
+     * Only the requested lines are read, using an index of line offsets kept next to the superlog.
+     *
+     * @param fromLine the first line to read
+     * @param count the maximum number of lines to read
+     * @return the lines, fewer than count if the end of the superlog is reached
+     * @throws IOException if IOException occurs
+     */
+    public static List<String> readSupLog(long fromLine, int count) throws IOException {
+        flush();
+        return readWrittenSupLog(fromLine, count);
+    }
+
+    /**
+     * Returns count lines of the superlog starting at line fromLine, as readSupLog does, but only from the lines
+     * written so far: entries still queued are not waited for, so it never blocks on the log writer.
+     *
+     * @param fromLine the first line to read
+     * @param count the maximum number of lines to read
+     * @return the lines, fewer than count if the end of what has been written is reached
+     * @throws IOException if the superlog can not be read
+     */
+    public static List<String> readWrittenSupLog(long fromLine, int count) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Path file : getSupFiles()) {
+            if (lines.size() >= count)
+                break;
+            LineIndex index = getLineIndex(file);
+            long fileLines = index.refresh();
+            if (fromLine >= fileLines) {
+                fromLine -= fileLines;
+                continue;
+            }
+            lines.addAll(index.read(fromLine, count - lines.size()));
+            fromLine = 0;
+        }
+        return lines;
+    }
+
+    /**
+     * @return the number of entries in the superlog
+     * @throws IOException if IOException occurs
+     */
+    public static long getSupLogLineCount() throws IOException {
+        flush();
+        return getWrittenSupLogLineCount();
+    }
+
+    /**
+     * @return the number of entries written to the superlog so far, not counting queued ones
+     * @throws IOException if the superlog can not be read
+     */
+    public static long getWrittenSupLogLineCount() throws IOException {
+        long count = 0;
+        for (Path file : getSupFiles())
+            count += getLineIndex(file).refresh();
+        return count;
+    }
+
+    /**
+     * @param file the superlog or one of its segments
+     * @return the line index of file, creating it if needed
+     */
+    private static synchronized LineIndex getLineIndex(Path file) {
+        LineIndex index = lineIndexes.get(file);
+        if (index == null) {
+            index = new LineIndex(file, lineIndexPath(file), Charset.defaultCharset());
+            lineIndexes.put(file, index);
         }
+        return index;
     }
 
     /**
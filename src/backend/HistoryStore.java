@@ -0,0 +1,503 @@
+package backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the history of every image of a library in one append-only file at the library root, instead of a
+ * .log file next to each image.
+ *
+ * Images are keyed by the path of the .log file they would otherwise have, relative to the root, so an image
+ * keeps its key when it is retagged. Every record holds the offset of the previous record of the same image,
+ * and an in-memory index maps each key to the offset of its latest record, so the recent names of an image are
+ * found by following a few offsets back instead of scanning anything. Moving an image appends a single record
+ * that hands its history over to the new key. The index is saved next to the store when it is closed, and on
+ * open only the records appended after the saved index are replayed.
+ */
+public class HistoryStore {
+
+    /** Name of the store file in the library root. */
+    static final String STORE_NAME = ".imagetagger-history";
+
+    /** Suffix of the saved index, next to the store. */
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /** Suffix of the file, next to the store, that records that the library's .log files were imported. */
+    private static final String IMPORTED_SUFFIX = ".imported";
+
+    /** Identifies saved indexes. */
+    private static final int INDEX_MAGIC = 0x48495358;
+
+    /** A name change of an image. */
+    private static final byte CHANGE = 1;
+
+    /** An image moved to a new key, taking its history along. */
+    private static final byte MOVE = 2;
+
+    /** The library root. */
+    private final Path root;
+
+    /** The store file. */
+    private final Path storeFile;
+
+    /** The open store file. */
+    private final FileChannel channel;
+
+    /** Whether every append is forced to disk. */
+    private final boolean sync;
+
+    /** Offset of the latest record of each key. */
+    private final Map<String, Long> heads = new HashMap<>();
+
+    /** Length of the store, where the next record goes. */
+    private long end;
+
+    /** Held while importing .log files, so imports do not run twice at once. The store lock is not held. */
+    private final Object importLock = new Object();
+
+    /**
+     * Opens the store of a library, creating it if needed.
+     *
+     * @param root the library root
+     * @param sync whether to force every append to disk
+     * @throws IOException if the store can not be opened
+     */
+    public HistoryStore(Path root, boolean sync) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.storeFile = this.root.resolve(STORE_NAME);
+        this.sync = sync;
+        this.channel = FileChannel.open(storeFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        load();
+    }
+
+    /**
+     * @return the library root
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param logPath the path an image's .log file would have
+     * @return the key of the image
+     */
+    String keyOf(Path logPath) {
+        return root.relativize(logPath.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    /**
+     * Appends the renames to the history of their images, with one write.
+     *
+     * @param renames successful renames of images in this library
+     * @throws IOException if the store can not be written
+     */
+    synchronized void logChanges(List<RenameResult> renames) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        Map<String, Long> updated = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (RenameResult rename : renames) {
+            String key = keyOf(rename.getLogPath());
+            long offset = end + records.size();
+            writeRecord(records, CHANGE, headOf(key, updated), now, key,
+                    rename.getOldPath().getFileName().toString(), rename.getNewPath().getFileName().toString());
+            updated.put(key, offset);
+        }
+        write(records, updated);
+    }
+
+    /**
+     * Hands the history of an image over to its new key, after it moved. The move is refused if another image
+     * already has a history under the new key, the way moving a .log file onto an existing one is, so that
+     * history is not lost.
+     *
+     * @param oldLogPath the path its .log file would have had before the move
+     * @param newLogPath the path its .log file would have after the move
+     * @throws FileAlreadyExistsException if the new key already has a history
+     * @throws IOException                if the store can not be written
+     */
+    synchronized void move(Path oldLogPath, Path newLogPath) throws IOException {
+        String oldKey = keyOf(oldLogPath);
+        String newKey = keyOf(newLogPath);
+        Long head = heads.get(oldKey);
+        if (head == null || oldKey.equals(newKey))
+            return; // nothing to take along
+        if (heads.containsKey(newKey))
+            throw new FileAlreadyExistsException(oldKey, newKey, "Another image already has a history here");
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        writeRecord(record, MOVE, head, System.currentTimeMillis(), newKey, oldKey, "");
+        Map<String, Long> updated = new HashMap<>();
+        updated.put(newKey, end);
+        write(record, updated);
+        heads.remove(oldKey);
+    }
+
+    /**
+     * @param logPath the path an image's .log file would have
+     * @return whether the store has any history of the image
+     */
+    synchronized boolean hasHistory(Path logPath) {
+        return heads.containsKey(keyOf(logPath));
+    }
+
+    /**
+     * Returns the distinct names an image had, most recent first, reading only as many records as needed.
+     *
+     * @param logPath the path the image's .log file would have
+     * @param limit   the maximum number of names to return
+     * @return at most limit old names, most recent first
+     * @throws IOException if the store can not be read
+     */
+    synchronized ArrayList<String> getOldNames(Path logPath, int limit) throws IOException {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        Long head = heads.get(keyOf(logPath));
+        long offset = head == null ? -1 : head;
+        while (offset >= 0 && names.size() < limit) {
+            Record record = readRecord(offset);
+            if (record.type == CHANGE)
+                names.add(record.first);
+            offset = record.prev;
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Imports every image .log file under the library root into the store, oldest entry first, so the history
+     * reads the same as before. Files that hold no image log entries, such as a superlog, are left alone.
+     * The logs are found and read without holding the store lock, which is only taken to append each log's
+     * records, so renames keep being logged while a large library is imported.
+     *
+     * @param deleteLogs whether to delete each .log file once it has been imported
+     * @return the number of .log files imported
+     * @throws IOException if a log can not be read or the store can not be written
+     */
+    public int importLogs(boolean deleteLogs) throws IOException {
+        synchronized (importLock) {
+            List<Path> logs;
+            try (Stream<Path> files = Files.walk(root)) {
+                logs = files.filter(p -> p.getFileName().toString().endsWith(".log") && Files.isRegularFile(p))
+                        .sorted().collect(Collectors.toList());
+            }
+
+            List<Path> imported = new ArrayList<>();
+            for (Path log : logs) {
+                List<Record> entries = readLog(log);
+                if (entries.isEmpty())
+                    continue;
+                append(keyOf(log), entries);
+                imported.add(log);
+            }
+
+            synchronized (this) {
+                channel.force(false);
+                saveIndex();
+            }
+            Path marker = storeFile.resolveSibling(STORE_NAME + IMPORTED_SUFFIX);
+            if (!Files.exists(marker))
+                Files.createFile(marker);
+            if (deleteLogs) {
+                for (Path log : imported)
+                    Files.delete(log);
+            }
+            return imported.size();
+        }
+    }
+
+    /**
+     * Imports the library's .log files as importLogs does, unless they were imported before.
+     *
+     * @param deleteLogs whether to delete each .log file once it has been imported
+     * @return the number of .log files imported, 0 if they were imported before
+     * @throws IOException if a log can not be read or the store can not be written
+     */
+    public int importLogsOnce(boolean deleteLogs) throws IOException {
+        synchronized (importLock) {
+            if (Files.exists(storeFile.resolveSibling(STORE_NAME + IMPORTED_SUFFIX)))
+                return 0;
+            return importLogs(deleteLogs);
+        }
+    }
+
+    /**
+     * @param log an image .log file
+     * @return its entries, oldest first, empty if it holds no image log entries
+     * @throws IOException if the log can not be read
+     */
+    private static List<Record> readLog(Path log) throws IOException {
+        List<Record> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(log, Charset.defaultCharset())) {
+            String[] fields = line.split("\u0000", -1);
+            if (fields.length < 3)
+                continue; // not an image log entry
+            Record entry = new Record();
+            entry.type = CHANGE;
+            entry.millis = fields.length > 3 ? parseMillis(fields[3]) : LogTimestamp.parseImgStamp(fields[0]);
+            entry.first = fields[1];
+            entry.second = fields[2];
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Appends imported entries to the history of key, ahead of the name changes already in the store for it.
+     *
+     * @param key     the key of the image
+     * @param entries the imported entries, oldest first
+     * @throws IOException if the store can not be read or written
+     */
+    private synchronized void append(String key, List<Record> entries) throws IOException {
+        List<Record> chain = new ArrayList<>(entries);
+        chain.addAll(chainOf(key)); // logged to the store before the import, so they stay the latest
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        Map<String, Long> updated = new HashMap<>();
+        for (Record entry : chain) {
+            long offset = end + records.size();
+            writeRecord(records, CHANGE, headOf(key, updated), entry.millis, key, entry.first, entry.second);
+            updated.put(key, offset);
+        }
+        write(records, updated);
+    }
+
+    /**
+     * Saves the index and closes the store.
+     *
+     * @throws IOException if the index can not be saved
+     */
+    public synchronized void close() throws IOException {
+        try {
+            saveIndex();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param key     a key
+     * @param updated heads written by the records being built
+     * @return the latest record of key, -1 if it has none
+     */
+    private long headOf(String key, Map<String, Long> updated) {
+        Long head = updated.get(key);
+        if (head == null)
+            head = heads.get(key);
+        return head == null ? -1 : head;
+    }
+
+    /**
+     * @param key a key
+     * @return the name changes recorded for key, oldest first
+     * @throws IOException if the store can not be read
+     */
+    private List<Record> chainOf(String key) throws IOException {
+        List<Record> chain = new ArrayList<>();
+        Long head = heads.get(key);
+        long offset = head == null ? -1 : head;
+        while (offset >= 0) {
+            Record record = readRecord(offset);
+            if (record.type == CHANGE)
+                chain.add(record);
+            offset = record.prev;
+        }
+        Collections.reverse(chain);
+        return chain;
+    }
+
+    /**
+     * Appends records to the store and, once they are written, points the index at them.
+     *
+     * @param records the encoded records
+     * @param updated the new heads of the keys the records belong to
+     * @throws IOException if the store can not be written
+     */
+    private void write(ByteArrayOutputStream records, Map<String, Long> updated) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(records.toByteArray());
+        long position = end;
+        while (bytes.hasRemaining())
+            position += channel.write(bytes, position);
+        if (sync)
+            channel.force(false);
+        end = position;
+        heads.putAll(updated);
+    }
+
+    /**
+     * Encodes a record: its length, then type, previous offset, time, key and two strings.
+     */
+    private static void writeRecord(ByteArrayOutputStream out, byte type, long prev, long millis, String key,
+                                    String first, String second) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(type);
+        data.writeLong(prev);
+        data.writeLong(millis);
+        data.writeUTF(key);
+        data.writeUTF(first);
+        data.writeUTF(second);
+        data.flush();
+        new DataOutputStream(out).writeInt(body.size());
+        body.writeTo(out);
+    }
+
+    /** A decoded record. */
+    private static class Record {
+        private byte type;
+        private long prev;
+        private long millis;
+        private String key;
+        private String first;
+        private String second;
+        private int length;
+    }
+
+    /**
+     * @param offset offset of a record
+     * @return the decoded record
+     * @throws IOException if the record can not be read or is damaged
+     */
+    private Record readRecord(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, offset);
+        int length = header.getInt(0);
+        if (length <= 0 || offset + 4 + length > end)
+            throw new IOException("Damaged history record at " + offset + " in " + storeFile);
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(body, offset + 4);
+
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(body.array()));
+        Record record = new Record();
+        record.type = data.readByte();
+        record.prev = data.readLong();
+        record.millis = data.readLong();
+        record.key = data.readUTF();
+        record.first = data.readUTF();
+        record.second = data.readUTF();
+        record.length = 4 + length;
+        return record;
+    }
+
+    /**
+     * Fills buffer from the store.
+     *
+     * @param buffer   the buffer
+     * @param position where to read
+     * @throws IOException if the store ends first
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("History store is truncated: " + storeFile);
+        }
+    }
+
+    /**
+     * Loads the saved index, if it matches the store, and replays the records appended after it.
+     * A record cut short by a crash is dropped.
+     *
+     * @throws IOException if the store can not be read
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        end = size;
+        long replayFrom = loadIndex(size);
+
+        long offset = replayFrom;
+        while (offset < size) {
+            Record record;
+            try {
+                record = readRecord(offset);
+            } catch (IOException e) {
+                break;
+            }
+            if (record.type == MOVE)
+                heads.remove(record.first);
+            heads.put(record.key, offset);
+            offset += record.length;
+        }
+        if (offset < size) {
+            channel.truncate(offset);
+            end = offset;
+        }
+    }
+
+    /**
+     * Loads the saved index if it was saved for a prefix of the store.
+     *
+     * @param size the size of the store
+     * @return the offset the saved index covers the store up to, 0 if there is none
+     * @throws IOException if the index can not be read
+     */
+    private long loadIndex(long size) throws IOException {
+        Path indexFile = storeFile.resolveSibling(STORE_NAME + INDEX_SUFFIX);
+        if (!Files.exists(indexFile))
+            return 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(indexFile))) {
+            if (in.readInt() != INDEX_MAGIC)
+                return 0;
+            long covered = in.readLong();
+            int count = in.readInt();
+            if (covered > size)
+                return 0; // the store was replaced
+            Map<String, Long> saved = new HashMap<>();
+            for (int i = 0; i < count; i++)
+                saved.put(in.readUTF(), in.readLong());
+            heads.putAll(saved);
+            return covered;
+        } catch (EOFException e) {
+            heads.clear();
+            return 0;
+        }
+    }
+
+    /**
+     * Saves the index, replacing the previous one.
+     *
+     * @throws IOException if the index can not be written
+     */
+    private void saveIndex() throws IOException {
+        Path indexFile = storeFile.resolveSibling(STORE_NAME + INDEX_SUFFIX);
+        Path tmp = storeFile.resolveSibling(STORE_NAME + INDEX_SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(end);
+            out.writeInt(heads.size());
+            for (Map.Entry<String, Long> head : heads.entrySet()) {
+                out.writeUTF(head.getKey());
+                out.writeLong(head.getValue());
+            }
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param field the time field of a log entry
+     * @return its value, 0 if it is not a number
+     */
+    private static long parseMillis(String field) {
+        try {
+            return Long.parseLong(field);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
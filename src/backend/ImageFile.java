@@ -4,10 +4,18 @@ import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /** Collection of data about an image */
 public class ImageFile {
 
+    /** Runs updates of path properties, so a UI can have them applied on its own thread. */
+    private static volatile Executor propertyExecutor = Runnable::run;
+
     /** Path of imageFile */
     private Path filePath;
 
@@ -17,6 +25,12 @@ public class ImageFile {
     /** Path of directory opened by user in program. */
     private Path baseDir;
 
+    /** Tags parsed from the file name, in order. null until requested, reset whenever filePath changes. */
+    private List<String> tags;
+
+    /** The same tags as in tags, for fast lookups. null until requested, reset whenever filePath changes. */
+    private Set<String> tagSet;
+
     /**
      * Class constructor
      */
@@ -26,25 +40,42 @@ public class ImageFile {
         this.absPathProperty = new SimpleStringProperty("Path: " + filePath.toString());
     }
 
+    /**
+     * Class constructor for an image whose tags are already known, so its name does not have to be parsed.
+     *
+     * @param tags the tags in the image's file name, in order, as getTags would return them
+     */
+    ImageFile(Path filePath, Path baseDir, List<String> tags) {
+        this(filePath, baseDir);
+        this.tags = Collections.unmodifiableList(tags);
+    }
+
     /**
      * @return return filename of image
      */
-    public String getFileName() {
+    public synchronized String getFileName() {
         return this.filePath.getFileName().toString();
     }
 
     /**
      * @return return path of image
      */
-    public Path getFilePath() {
+    public synchronized Path getFilePath() {
         return filePath;
     }
 
+    /**
+     * @return the directory the user opened, the root of the library the image is in
+     */
+    public Path getBaseDir() {
+        return baseDir;
+    }
+
     /**
      * @return return string representation of the image's path relative to baseDir
      */
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return this.baseDir.relativize(this.filePath).toString();
     }
 
@@ -53,8 +84,51 @@ public class ImageFile {
      * @param filePath the filePath to set.
      */
     public void setFilePath(Path filePath) {
-        this.filePath = filePath;
-        this.absPathProperty.set("Path: " + filePath.toString());
+        synchronized (this) {
+            this.filePath = filePath;
+            this.tags = null;
+            this.tagSet = null;
+        }
+        String pathText = "Path: " + filePath.toString();
+        propertyExecutor.execute(() -> absPathProperty.set(pathText));
+    }
+
+    /**
+     * Set how updates of path properties are run. By default they run right away on the thread that changed the
+     * path; a UI whose controls are bound to the properties can make them run on its own thread instead.
+     *
+     * @param executor runs each property update, in order.
+     */
+    public static void setPropertyExecutor(Executor executor) {
+        propertyExecutor = executor;
+    }
+
+    /**
+     * The file name is only parsed the first time this is called after the file path changes.
+     *
+     * @return an unmodifiable list of the tags in the image's file name, in order
+     */
+    public synchronized List<String> getTags() {
+        if (tags == null)
+            tags = Collections.unmodifiableList(ParsedName.parse(getFileName()).getTags());
+        return tags;
+    }
+
+    /**
+     * @return an unmodifiable set of the tags in the image's file name, iterating in file name order
+     */
+    public synchronized Set<String> getTagSet() {
+        if (tagSet == null)
+            tagSet = Collections.unmodifiableSet(new LinkedHashSet<>(getTags()));
+        return tagSet;
+    }
+
+    /**
+     * @param tag the tag to look for
+     * @return true iff the image's file name contains tag
+     */
+    public boolean hasTag(String tag) {
+        return getTagSet().contains(tag);
     }
 
     /**
@@ -6,7 +6,20 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /** The backend class used to tag images. */
 public class ImageTagger {
@@ -15,11 +28,43 @@ public class ImageTagger {
      */
     private TagManager tagManager;
 
+    /**
+     * Index from tags to the images using them, kept up to date by every rename and move.
+     */
+    private TagIndex tagIndex;
+
+    /** Number of images a rename worker renames before logging them together. */
+    private static final int RENAME_BATCH_SIZE = 64;
+
+    /** Number of images from which discoverTags parses names in parallel. */
+    private static final int PARALLEL_DISCOVERY_THRESHOLD = 1024;
+
+    /** Number of workers bulk renames run on. */
+    private int renameParallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Pool bulk renames run on, created on first use. */
+    private ExecutorService renameExecutor;
+
+    /** Striped locks held while moving a file to a destination, so no two renames can claim the same name. */
+    private final Object[] renameLocks = new Object[64];
+
     /**
      * Constructor for backend.ImageTagger. @throws IOException
      */
     public ImageTagger() throws IOException {
-        this.tagManager = new TagManager();
+        this(new TagManager());
+    }
+
+    /**
+     * Constructor for backend.ImageTagger using the given tagManager.
+     *
+     * @param tagManager the tag manager to create and look up tags with.
+     */
+    public ImageTagger(TagManager tagManager) {
+        this.tagManager = tagManager;
+        this.tagIndex = new TagIndex(tagManager);
+        for (int i = 0; i < renameLocks.length; i++)
+            renameLocks[i] = new Object();
     }
 
     /**
@@ -33,18 +78,7 @@ public class ImageTagger {
         if(tags.size() == 0)
             return; // no tags to tag image with...
 
-        ArrayList<String> parsedImageName = parseName(f.getFileName());
-        for(String tag: tags) {
-            if (!tagManager.contains(tag)) // tag manager does not know of this tag, so ignore it.
-                continue;
-
-            int idx = parsedImageName.indexOf(tag);
-            if (idx > 0 && idx < parsedImageName.size() - 1)
-                continue; // already tagged with tag.
-
-            parsedImageName.add(parsedImageName.size() - 1, tag);
-        }
-        this.renameImage(f, parsedImageName);
+        this.renameImage(f, image -> taggedName(image, tags));
     }
 
     /**
@@ -57,43 +91,89 @@ public class ImageTagger {
     public void unTagImage(ImageFile f, List<String> tags) throws IOException {
         if(tags.size() == 0)
             return; // no tags to remove from image...
-        
-        ArrayList<String> parsedImageName = parseName(f.getFileName());
-        for(String tag: tags) {
-            int idx = parsedImageName.indexOf(tag);
-            if (idx <= 0 || idx >= parsedImageName.size() - 1)
-                continue; // nothing to delete...
 
-            parsedImageName.remove(idx);
+        this.renameImage(f, image -> untaggedName(image, tags));
+    }
+
+    /**
+     * Tags every image in files with tags. The renames run in parallel on the rename workers,
+     * and the history of each batch of renames is written in one go.
+     *
+     * @param files the image files to tag.
+     * @param tags  the list of tags to add to each image.
+     * @return the result for each image, in the order of files.
+     */
+    public List<RenameResult> tagImages(List<ImageFile> files, List<String> tags) {
+        return this.renameImages(files, image -> taggedName(image, tags));
+    }
+
+    /**
+     * Removes tags from every image in files. The renames run in parallel on the rename workers,
+     * and the history of each batch of renames is written in one go.
+     *
+     * @param files the image files to remove the tags from.
+     * @param tags  the list of tags to remove from each image.
+     * @return the result for each image, in the order of files.
+     */
+    public List<RenameResult> unTagImages(List<ImageFile> files, List<String> tags) {
+        return this.renameImages(files, image -> untaggedName(image, tags));
+    }
+
+    /**
+     * Sets the number of worker threads bulk operations rename images with.
+     * Takes effect for the next bulk operation.
+     *
+     * @param parallelism the number of workers, at least 1.
+     */
+    public synchronized void setRenameParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.renameParallelism = parallelism;
+        if (renameExecutor != null) {
+            renameExecutor.shutdown();
+            renameExecutor = null;
         }
-        this.renameImage(f, parsedImageName);
     }
 
     /**
      * Rename the imagefile f with the given new name.
      *
      * @param f       the file to rename.
-     * @param newName the name to rename to.
+     * @param newName the name to rename to, a file name without any directory.
      * @throws IOException if rename fails.
+     * @throws IllegalArgumentException if newName is not a plain file name, so the image would leave its directory.
      */
     public void renameImage(ImageFile f, String newName) throws IOException {
-        this.renameImage(f, parseName(newName));
+        if (newName.isEmpty() || newName.equals(".") || newName.equals("..") || newName.indexOf('/') >= 0
+                || newName.indexOf(File.separatorChar) >= 0)
+            throw new IllegalArgumentException("Not a file name: " + newName);
+        ArrayList<String> parsedName = parseName(newName);
+        this.renameImage(f, image -> parsedName);
     }
 
     /**
      * Returns a list of tags the file has used prior to this.
      *
      * @param f the file in question.
-     * @return a list of old tagsets the file has used.
+     * @return a list of old tagsets the file has used, most recent first.
      * @throws IOException if tagManager fails retrieving.
      */
     public ArrayList<String> getOldNames(ImageFile f) throws IOException {
-        String historyFileName = parseName(f.getFileName()).get(0) + ".log";
+        return getOldNames(f, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the most recent names the file has used prior to this.
+     *
+     * @param f     the file in question.
+     * @param limit the maximum number of names to return.
+     * @return a list of at most limit distinct old names, most recent first.
+     * @throws IOException if tagManager fails retrieving.
+     */
+    public ArrayList<String> getOldNames(ImageFile f, int limit) throws IOException {
+        String historyFileName = ParsedName.parse(f.getFileName()).getBaseName() + ".log";
         Path historyFilePath = f.getFilePath().resolveSibling(historyFileName);
-        File historyFile = historyFilePath.toFile();
-        if (!historyFile.isFile())
-            return new ArrayList<String>();
-        return HistoryManager.getOldNames(historyFilePath);
+        return HistoryManager.getOldNames(f.getBaseDir(), historyFilePath, limit);
     }
 
     /**
@@ -114,20 +194,19 @@ public class ImageTagger {
      * @return true if all tags were valid, false if an invalid tag was encountered.
      * @throws IOException due to tagManager.add performing i/o on tag file.
      */
-    public boolean createTagsIfNotExist(List<String> tags) throws IOException {
-        boolean malformedTagFound = false;
-        for (String tag: tags)
-        {
-            if(!tagManager.contains(tag)) {
-                try {
-                    tagManager.addTag(tag);
-                } catch (InvalidTagException e) {
-                    malformedTagFound = true;
-                }
-            }
-        }
+    public boolean createTagsIfNotExist(Collection<String> tags) throws IOException {
+        return !createTags(tags).containsValue(TagManager.AddResult.INVALID);
+    }
 
-        return !malformedTagFound;
+    /**
+     * Adds every unrecognized tag in tags to the tagManager with a single write to the tag file.
+     *
+     * @param tags the tags to add if they do not already exist.
+     * @return the outcome for each distinct tag, so invalid tags can be reported.
+     * @throws IOException due to tagManager performing i/o on tag file.
+     */
+    public Map<String, TagManager.AddResult> createTags(Collection<String> tags) throws IOException {
+        return tagManager.addTags(tags);
     }
 
     /**
@@ -137,6 +216,48 @@ public class ImageTagger {
         return tagManager.getTags();
     }
 
+    /**
+     * @return the number of tags the user has ever created; tags created later get the following ids.
+     */
+    public int getTagCount() {
+        return tagManager.getTagCount();
+    }
+
+    /**
+     * @param id the id of a tag, from 0 to getTagCount() - 1 in the order the tags were created
+     * @return the tag with the given id
+     */
+    public String getTag(int id) {
+        return tagManager.getTag(id);
+    }
+
+    /**
+     * @param tag a tag
+     * @return true iff the user has created tag
+     */
+    public boolean hasTag(String tag) {
+        return tagManager.contains(tag);
+    }
+
+    /**
+     * @return the index from tags to the images using them. Images must be added to it to be found by queries.
+     */
+    public TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * Returns the indexed images tagged with all tags in allOf, any tag in anyOf (if not empty) and no tag in noneOf.
+     *
+     * @param allOf  tags the images must all have.
+     * @param anyOf  tags of which the images must have at least one, ignored if empty.
+     * @param noneOf tags the images must not have.
+     * @return the matching images.
+     */
+    public List<ImageFile> findImages(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        return tagIndex.getImages(tagIndex.query(allOf, anyOf, noneOf));
+    }
+
     /**
      * Returns the list of tags the image uses.
      *
@@ -144,13 +265,45 @@ public class ImageTagger {
      * @return an arraylist with all the tags the image uses.
      */
     public static ArrayList<String> parseTags(ImageFile f) {
-        ArrayList<String> tags = parseName(f.getFileName());
-        tags.remove(tags.size() - 1);
-        tags.remove(0);
+        return new ArrayList<>(f.getTags());
+    }
 
-        // if there are new tags the tag manager does not recognize
+    /**
+     * Parses the tags of every image and reduces them to the distinct tags, in the order they are first found.
+     * Large batches are parsed in parallel. Images whose names can not be parsed contribute no tags, the same
+     * as when they are scanned. Pass the result to createTags to check each distinct tag once and register the
+     * new ones with a single write.
+     *
+     * @param images the images whose tags to find.
+     * @return the distinct tags of the images.
+     */
+    public static Set<String> discoverTags(Collection<ImageFile> images) {
+        Stream<ImageFile> stream = images.size() >= PARALLEL_DISCOVERY_THRESHOLD
+                ? images.parallelStream() : images.stream();
+        return stream.flatMap(f -> {
+            try {
+                return f.getTags().stream();
+            } catch (IllegalArgumentException e) {
+                return Stream.empty();
+            }
+        }).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
 
-        return tags;
+    /**
+     * Adds newly found images to the tag index, after registering the tags in their names so every tag gets an
+     * id. This is what opening a directory or noticing new files does with each batch of images.
+     *
+     * @param images    images that are not in the index yet.
+     * @param foundTags their distinct tags, see discoverTags; it can be computed on another thread beforehand.
+     * @return false if an invalid tag was found.
+     * @throws IOException if the tags file can not be written; the images are indexed all the same.
+     */
+    public boolean addImages(Collection<ImageFile> images, Set<String> foundTags) throws IOException {
+        try {
+            return createTagsIfNotExist(foundTags); // registers every new tag with a single write.
+        } finally {
+            tagIndex.addAll(images);
+        }
     }
 
     /**
@@ -161,31 +314,188 @@ public class ImageTagger {
      * @throws IOException if backend.HistoryManager is unable to log and/or the moving fails.
      */
     public void moveFile(ImageFile f, Path destFolder) throws IOException {
-        Path src = f.getFilePath();
-        Path dest = destFolder.resolve(f.getFileName());
-        Files.move(src, dest);
-        f.setFilePath(dest);
+        try {
+            synchronized (f) { // one rename or move of an image at a time.
+                Path src = f.getFilePath();
+                Path dest = destFolder.resolve(f.getFileName());
+                synchronized (renameLockFor(dest)) {
+                    Files.move(src, dest);
+                }
+                f.setFilePath(dest);
 
-        String historyFileName = parseName(f.getFileName()).get(0) + ".log";
-        Path historyFilePath = src.resolveSibling(historyFileName);
-        if (Files.exists(historyFilePath))
-            Files.move(historyFilePath, destFolder.resolve(historyFileName));
+                String historyFileName = ParsedName.parse(f.getFileName()).getBaseName() + ".log";
+                Path historyFilePath = src.resolveSibling(historyFileName);
+                Path historyDest = destFolder.resolve(historyFileName);
+                HistoryManager.release(historyFilePath); // write pending entries and close the log before moving it.
+                if (Files.exists(historyFilePath)) {
+                    synchronized (renameLockFor(historyDest)) {
+                        Files.move(historyFilePath, historyDest);
+                    }
+                }
+                HistoryManager.moveHistory(f.getBaseDir(), historyFilePath, historyDest);
+            }
+        } finally { // outside f's lock: the index reads f while holding its own lock.
+            tagIndex.update(f);
+        }
     }
 
     /**
-     * Helper method for the public renameImage. It takes in a tokenized image name list and the file to rename.
+     * Helper method for the public renameImage. It renames f to the name namer gives it and logs the change.
      *
-     * @param f             the file to rename.
-     * @param newParsedName the tokenized image name.
+     * @param f     the file to rename.
+     * @param namer computes the tokenized new name from the image's current name.
      * @throws IOException if backend.HistoryManager or rename fails.
      */
-    private void renameImage(ImageFile f, List<String> newParsedName) throws IOException {
-        Path src = f.getFilePath();
-        Path dest = src.resolveSibling(parsedNameToStr(newParsedName));
-        Path imgHistoryPath = src.resolveSibling(newParsedName.get(0) + ".log");
-        Files.move(src, dest);
-        f.setFilePath(dest);
-        HistoryManager.logChange(imgHistoryPath, src, dest);
+    private void renameImage(ImageFile f, Function<ImageFile, List<String>> namer) throws IOException {
+        RenameResult result = moveToName(f, namer);
+        HistoryManager.logChanges(Collections.singletonList(result));
+    }
+
+    /**
+     * Renames f to the name namer gives it, without logging the change.
+     * The new name is computed while holding f's lock, so concurrent operations on one image do not lose updates,
+     * and the move holds the lock of its destination, so two images can not be renamed to the same name at once.
+     * The index is updated after f's lock is released, as it takes its own lock before reading f; whichever
+     * update runs last reads f's latest name, so concurrent renames still leave the index current.
+     *
+     * @param f     the file to rename.
+     * @param namer computes the tokenized new name from the image's current name.
+     * @return the result of the rename.
+     * @throws IOException if the rename fails.
+     */
+    private RenameResult moveToName(ImageFile f, Function<ImageFile, List<String>> namer) throws IOException {
+        RenameResult result;
+        synchronized (f) {
+            List<String> newParsedName = namer.apply(f);
+            Path src = f.getFilePath();
+            Path dest = src.resolveSibling(parsedNameToStr(newParsedName));
+            Path imgHistoryPath = src.resolveSibling(newParsedName.get(0) + ".log");
+            synchronized (renameLockFor(dest)) {
+                Files.move(src, dest);
+            }
+            f.setFilePath(dest);
+            result = new RenameResult(f, src, dest, imgHistoryPath, null);
+        }
+        tagIndex.update(f);
+        return result;
+    }
+
+    /**
+     * Renames every image in files on the rename workers. Files are handed out in batches,
+     * and each batch logs its successful renames with a single call to backend.HistoryManager.
+     *
+     * @param files the files to rename.
+     * @param namer computes the tokenized new name of an image from its current name.
+     * @return the result for each image, in the order of files.
+     */
+    private List<RenameResult> renameImages(List<ImageFile> files, Function<ImageFile, List<String>> namer) {
+        RenameResult[] results = new RenameResult[files.size()];
+        ExecutorService executor = getRenameExecutor();
+        List<Future<?>> batches = new ArrayList<>();
+
+        for (int start = 0; start < files.size(); start += RENAME_BATCH_SIZE) {
+            int from = start;
+            int to = Math.min(files.size(), start + RENAME_BATCH_SIZE);
+            batches.add(executor.submit(() -> {
+                List<RenameResult> renamed = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    try {
+                        results[i] = moveToName(files.get(i), namer);
+                        renamed.add(results[i]);
+                    } catch (IOException | RuntimeException e) {
+                        results[i] = RenameResult.failed(files.get(i), e);
+                    }
+                }
+                try {
+                    HistoryManager.logChanges(renamed);
+                } catch (IOException e) {
+                    for (RenameResult result : renamed)
+                        result.setError(e); // renamed, but the change could not be logged.
+                }
+            }));
+        }
+
+        boolean interrupted = false;
+        for (Future<?> batch : batches) {
+            while (true) {
+                try {
+                    batch.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true; // finish waiting so every result is filled in, then restore the flag.
+                } catch (ExecutionException e) {
+                    break; // every error is recorded in results by the batch itself.
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return the pool bulk renames run on, creating it if needed.
+     */
+    private synchronized ExecutorService getRenameExecutor() {
+        if (renameExecutor == null) {
+            AtomicInteger count = new AtomicInteger();
+            renameExecutor = Executors.newFixedThreadPool(renameParallelism, task -> {
+                Thread worker = new Thread(task, "rename-worker-" + count.incrementAndGet());
+                worker.setDaemon(true);
+                return worker;
+            });
+        }
+        return renameExecutor;
+    }
+
+    /**
+     * @param dest the destination of a rename.
+     * @return the object to hold while moving a file to dest.
+     */
+    private Object renameLockFor(Path dest) {
+        return renameLocks[(dest.hashCode() & 0x7fffffff) % renameLocks.length];
+    }
+
+    /**
+     * Computes the new name of an image when it is tagged with tags.
+     *
+     * @param f    the image to tag.
+     * @param tags the tags to add. Tags the tagManager does not know are ignored.
+     * @return the tokenized new name.
+     */
+    private ArrayList<String> taggedName(ImageFile f, List<String> tags) {
+        ArrayList<String> parsedImageName = parseName(f.getFileName());
+        for(String tag: tags) {
+            if (!tagManager.contains(tag)) // tag manager does not know of this tag, so ignore it.
+                continue;
+
+            int idx = parsedImageName.indexOf(tag);
+            if (idx > 0 && idx < parsedImageName.size() - 1)
+                continue; // already tagged with tag.
+
+            parsedImageName.add(parsedImageName.size() - 1, tag);
+        }
+        return parsedImageName;
+    }
+
+    /**
+     * Computes the new name of an image when tags are removed from it.
+     *
+     * @param f    the image to remove the tags from.
+     * @param tags the tags to remove.
+     * @return the tokenized new name.
+     */
+    private static ArrayList<String> untaggedName(ImageFile f, List<String> tags) {
+        ArrayList<String> parsedImageName = parseName(f.getFileName());
+        for(String tag: tags) {
+            int idx = parsedImageName.indexOf(tag);
+            if (idx <= 0 || idx >= parsedImageName.size() - 1)
+                continue; // nothing to delete...
+
+            parsedImageName.remove(idx);
+        }
+        return parsedImageName;
     }
 
     /**
@@ -194,7 +504,7 @@ public class ImageTagger {
      * @param parsedName the list to stringify.
      * @return A string constructed from the tokenized name list.
      */
-    private String parsedNameToStr(List<String> parsedName) {
+    private static String parsedNameToStr(List<String> parsedName) {
         StringBuilder str = new StringBuilder(parsedName.get(0));
 
         for (int i = 1; i < parsedName.size() - 1; i++)
@@ -216,11 +526,6 @@ public class ImageTagger {
      * @return a tokenized list of the file name.
      */
     private static ArrayList<String> parseName(String name) {
-        String[] fnameAndTags = name.split("(\\s@)|(\\..+)");
-        String ext = name.substring(name.lastIndexOf("."), name.length());
-        ArrayList<String> parsed = new ArrayList<>(Arrays.asList(fnameAndTags));
-        parsed.add(ext);
-
-        return parsed;
+        return ParsedName.parse(name).toList();
     }
 }
@@ -0,0 +1,275 @@
+package backend;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the directories of a library, saved after a scan so the next scan can skip directories that
+ * have not changed.
+ *
+ * For each directory the snapshot holds its path relative to the root, its modification time, its
+ * subdirectories, and its images with the tags parsed from their names. Tags are stored as indexes into a table
+ * of the distinct tags in the library. A directory's modification time changes whenever a file in it is
+ * created, deleted or renamed, so if it still matches, the directory's entries are known without listing it.
+ *
+ * The file is memory-mapped when loaded, and only an index of where each directory's record starts is built
+ * up front; a record is decoded when its directory is looked up.
+ */
+class LibraryCatalog {
+
+    /** Identifies catalog files. */
+    private static final int MAGIC = 0x43415447;
+
+    /** Format version of catalog files. */
+    private static final int VERSION = 1;
+
+    /** The recorded state of one directory. */
+    static class Directory {
+
+        /** Path relative to the root, with '/' separators, "" for the root itself. */
+        final String path;
+
+        /** Modification time in milliseconds, -1 if it must not be trusted. */
+        final long modified;
+
+        /** Names of the subdirectories. */
+        final List<String> subdirectories;
+
+        /** Names of the images. */
+        final List<String> images;
+
+        /** Tags of each image, in the order of images. */
+        final List<List<String>> tags;
+
+        /**
+         * Class constructor
+         *
+         * @param path           path relative to the root
+         * @param modified       modification time, -1 if it must not be trusted
+         * @param subdirectories names of the subdirectories
+         * @param images         names of the images
+         * @param tags           tags of each image
+         */
+        Directory(String path, long modified, List<String> subdirectories, List<String> images,
+                  List<List<String>> tags) {
+            this.path = path;
+            this.modified = modified;
+            this.subdirectories = subdirectories;
+            this.images = images;
+            this.tags = tags;
+        }
+    }
+
+    /** The mapped file. */
+    private final ByteBuffer buffer;
+
+    /** The tag table. */
+    private final String[] tagTable;
+
+    /** Offset of the record of each directory, by path. */
+    private final Map<String, Integer> offsets;
+
+    /**
+     * Class constructor
+     *
+     * @param buffer   the mapped file
+     * @param tagTable the tag table
+     * @param offsets  offset of each directory's record
+     */
+    private LibraryCatalog(ByteBuffer buffer, String[] tagTable, Map<String, Integer> offsets) {
+        this.buffer = buffer;
+        this.tagTable = tagTable;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Loads a catalog.
+     *
+     * @param file the catalog file
+     * @return the catalog, or null if the file is missing, damaged or from another version
+     * @throws IOException if the file exists but can not be read
+     */
+    static LibraryCatalog load(Path file) throws IOException {
+        if (!Files.isRegularFile(file))
+            return null;
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+            String[] tagTable = new String[buffer.getInt()];
+            for (int i = 0; i < tagTable.length; i++)
+                tagTable[i] = readString(buffer);
+            int directories = buffer.getInt();
+            Map<String, Integer> offsets = new HashMap<>(directories * 2);
+            for (int i = 0; i < directories; i++) {
+                String path = readString(buffer);
+                int length = buffer.getInt();
+                offsets.put(path, buffer.position());
+                buffer.position(buffer.position() + length);
+            }
+            return new LibraryCatalog(buffer, tagTable, offsets);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null; // truncated or damaged, the next scan lists everything and replaces it.
+        }
+    }
+
+    /**
+     * @param path a directory path relative to the root, with '/' separators
+     * @return the recorded state of the directory, null if it was not recorded
+     */
+    Directory get(String path) {
+        Integer offset = offsets.get(path);
+        if (offset == null)
+            return null;
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        try {
+            long modified = record.getLong();
+            int subdirectoryCount = record.getInt();
+            List<String> subdirectories = new ArrayList<>(subdirectoryCount);
+            for (int i = 0; i < subdirectoryCount; i++)
+                subdirectories.add(readString(record));
+            int imageCount = record.getInt();
+            List<String> images = new ArrayList<>(imageCount);
+            List<List<String>> tags = new ArrayList<>(imageCount);
+            for (int i = 0; i < imageCount; i++) {
+                images.add(readString(record));
+                int tagCount = record.getInt();
+                List<String> imageTags = new ArrayList<>(tagCount);
+                for (int t = 0; t < tagCount; t++)
+                    imageTags.add(tagTable[record.getInt()]);
+                tags.add(Collections.unmodifiableList(imageTags));
+            }
+            return new Directory(path, modified, subdirectories, images, tags);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null; // a damaged record, the directory is listed instead.
+        }
+    }
+
+    /**
+     * @return number of directories in the catalog
+     */
+    int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Writes a catalog, replacing the previous one once it is complete.
+     *
+     * @param file        the catalog file
+     * @param directories the directories to record
+     * @throws IOException if the file can not be written
+     */
+    static void write(Path file, Collection<Directory> directories) throws IOException {
+        Map<String, Integer> tagIds = new HashMap<>();
+        List<String> tagTable = new ArrayList<>();
+        for (Directory directory : directories) {
+            for (List<String> imageTags : directory.tags) {
+                for (String tag : imageTags) {
+                    if (!tagIds.containsKey(tag)) {
+                        tagIds.put(tag, tagTable.size());
+                        tagTable.add(tag);
+                    }
+                }
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tagTable.size());
+            for (String tag : tagTable)
+                writeString(out, tag);
+            out.writeInt(directories.size());
+            for (Directory directory : directories) {
+                writeString(out, directory.path);
+                byte[] record = encode(directory, tagIds);
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param directory a directory
+     * @param tagIds    index of each tag in the tag table
+     * @return the directory's record
+     */
+    private static byte[] encode(Directory directory, Map<String, Integer> tagIds) {
+        int size = 8 + 4 + 4;
+        List<byte[]> subdirectories = new ArrayList<>(directory.subdirectories.size());
+        for (String name : directory.subdirectories) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            subdirectories.add(bytes);
+            size += 4 + bytes.length;
+        }
+        List<byte[]> images = new ArrayList<>(directory.images.size());
+        for (int i = 0; i < directory.images.size(); i++) {
+            byte[] bytes = directory.images.get(i).getBytes(StandardCharsets.UTF_8);
+            images.add(bytes);
+            size += 4 + bytes.length + 4 + 4 * directory.tags.get(i).size();
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putLong(directory.modified);
+        record.putInt(subdirectories.size());
+        for (byte[] name : subdirectories)
+            record.putInt(name.length).put(name);
+        record.putInt(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            record.putInt(images.get(i).length).put(images.get(i));
+            List<String> imageTags = directory.tags.get(i);
+            record.putInt(imageTags.size());
+            for (String tag : imageTags)
+                record.putInt(tagIds.get(tag));
+        }
+        return record.array();
+    }
+
+    /**
+     * @param buffer a buffer positioned at a string written by writeString
+     * @return the string
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalArgumentException("Bad string length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes.
+     *
+     * @param out    where to write
+     * @param string the string
+     * @throws IOException if writing fails
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
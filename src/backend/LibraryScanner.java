@@ -0,0 +1,381 @@
+package backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Finds the images under a library root, listing directories in parallel.
+ *
+ * Every directory is listed by its own fork/join task, so subdirectories are listed by idle workers while a
+ * large directory is still being read. Images found are queued, and the thread that called scan hands them to
+ * a sink in batches at a fixed interval, so a UI can add each batch with a single change instead of one per
+ * image. A batch holds at most MAX_BATCH images, so a burst of images, such as those of a library whose
+ * directories all come from its catalog, is handed over in pieces a UI thread can take one at a time. Symbolic
+ * links are not followed, the same as Files.walk. A directory that can not be read is counted as a failure and
+ * skipped; the rest of the library is still scanned.
+ *
+ * If a catalog file is set, the snapshot saved there by the previous scan is loaded first, and a directory whose
+ * modification time still matches its snapshot is not listed: its images, with their parsed tags, and its
+ * subdirectories are taken from the snapshot, and only its subdirectories are checked in turn. A new snapshot
+ * is saved when a scan completes.
+ */
+public class LibraryScanner {
+
+    /** The library root. */
+    private final Path root;
+
+    /** Selects the images among the files. */
+    private final PathMatcher matcher;
+
+    /** Most images handed to the sink at once. */
+    private static final int MAX_BATCH = 5000;
+
+    /** Number of directories listed at once. */
+    private final int parallelism;
+
+    /** Images found and not handed to the sink yet. */
+    private final ConcurrentLinkedQueue<ImageFile> found = new ConcurrentLinkedQueue<>();
+
+    /** Number of files looked at so far. */
+    private final LongAdder scannedFiles = new LongAdder();
+
+    /** Number of images found so far. */
+    private final LongAdder foundImages = new LongAdder();
+
+    /** Number of directories that could not be read. */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /** The first failure, reported by getFirstFailure. */
+    private volatile IOException firstFailure;
+
+    /** Directories modified this recently are listed again by the next scan, in milliseconds. */
+    private static final long MODIFIED_GRACE_MILLIS = 2000;
+
+    /** Suffix of the snapshot files kept by setCatalogDirectory. */
+    private static final String CATALOG_SUFFIX = ".catalog";
+
+    /** Where the snapshot of the library is kept, null to list every directory. */
+    private Path catalogFile;
+
+    /** The snapshot saved by the previous scan, null if there is none. */
+    private LibraryCatalog previous;
+
+    /** The state of every directory scanned, for the next snapshot. */
+    private final ConcurrentLinkedQueue<LibraryCatalog.Directory> recorded = new ConcurrentLinkedQueue<>();
+
+    /** Number of directories taken from the snapshot instead of being listed. */
+    private final LongAdder reusedDirectories = new LongAdder();
+
+    /** Set once the scan is cancelled. */
+    private volatile boolean cancelled;
+
+    /**
+     * Class constructor
+     *
+     * @param root        the library root
+     * @param matcher     selects the images among the files under root
+     * @param parallelism number of directories listed at once, at least 1
+     */
+    public LibraryScanner(Path root, PathMatcher matcher, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.root = root;
+        this.matcher = matcher;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets where a snapshot of the library is kept between scans. Must be called before scan.
+     *
+     * @param catalogFile the snapshot file, null to list every directory
+     */
+    public void setCatalogFile(Path catalogFile) {
+        this.catalogFile = catalogFile;
+    }
+
+    /**
+     * Keeps the snapshot of the library in a file of its own in directory, named after the library root. Keeping
+     * it outside the library matters: writing it into the root would change the root's modification time, so
+     * the next scan would always list the root again. Must be called before scan.
+     *
+     * @param directory directory to keep the snapshots of libraries in, created when the first one is written
+     */
+    public void setCatalogDirectory(Path directory) {
+        byte[] name = root.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8);
+        this.catalogFile = directory.resolve(UUID.nameUUIDFromBytes(name) + CATALOG_SUFFIX);
+    }
+
+    /**
+     * Scans the library, handing the images found to sink from the calling thread. A batch is handed over every
+     * publishIntervalMillis while images are being found, and the last one when the scan is done. Returns when
+     * the scan is done or has been cancelled.
+     *
+     * @param sink                  receives each batch of images, never an empty one
+     * @param publishIntervalMillis how often to hand over a batch, in milliseconds
+     * @return true if the whole library was scanned, false if the scan was cancelled
+     * @throws IOException if root is not a directory
+     */
+    public boolean scan(Consumer<List<ImageFile>> sink, long publishIntervalMillis) throws IOException {
+        if (!Files.isDirectory(root))
+            throw new IOException("Not a directory: " + root);
+        if (catalogFile != null) {
+            try {
+                previous = LibraryCatalog.load(catalogFile);
+            } catch (IOException e) {
+                previous = null; // list everything, the new snapshot replaces it.
+            }
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            worker.setName("library-scanner-" + count.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        }, null, false);
+
+        try {
+            ForkJoinTask<Void> task = pool.submit(new DirectoryTask(root));
+            while (!cancelled) {
+                try {
+                    task.get(Math.max(1, publishIntervalMillis), TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    publish(sink);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                } catch (ExecutionException e) {
+                    throw new IOException("Scan of " + root + " failed", e.getCause());
+                }
+            }
+            if (cancelled)
+                return false;
+            publish(sink);
+            previous = null;
+            if (catalogFile != null) {
+                try {
+                    Files.createDirectories(catalogFile.toAbsolutePath().getParent());
+                    LibraryCatalog.write(catalogFile, recorded);
+                } catch (IOException e) {
+                    // the images were found, the next scan just has to list every directory again.
+                }
+            }
+            return true;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops the scan. Batches already handed over are not taken back, and no more are handed over.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return whether the scan was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the library root
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return number of files looked at so far
+     */
+    public long getScannedFileCount() {
+        return scannedFiles.sum();
+    }
+
+    /**
+     * @return number of images found so far
+     */
+    public long getFoundImageCount() {
+        return foundImages.sum();
+    }
+
+    /**
+     * @return number of directories whose contents were taken from the snapshot instead of being listed
+     */
+    public long getReusedDirectoryCount() {
+        return reusedDirectories.sum();
+    }
+
+    /**
+     * @return number of directories that could not be read
+     */
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return the first directory that could not be read and why, null if there was none
+     */
+    public IOException getFirstFailure() {
+        return firstFailure;
+    }
+
+    /**
+     * Hands the images queued so far to sink, in batches of at most MAX_BATCH.
+     *
+     * @param sink receives the batches
+     */
+    private void publish(Consumer<List<ImageFile>> sink) {
+        List<ImageFile> batch = new ArrayList<>();
+        ImageFile image;
+        while (!cancelled && (image = found.poll()) != null) {
+            batch.add(image);
+            if (batch.size() == MAX_BATCH) {
+                sink.accept(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty() && !cancelled)
+            sink.accept(batch);
+    }
+
+    /**
+     * Records a directory that could not be read.
+     *
+     * @param e why it could not be read
+     */
+    private void fail(IOException e) {
+        if (failures.getAndIncrement() == 0)
+            firstFailure = e;
+    }
+
+    /** Lists one directory, queueing its images and forking a task for each subdirectory. */
+    private class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The directory to list. */
+        private final Path dir;
+
+        /**
+         * @param dir the directory to list
+         */
+        private DirectoryTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled)
+                return;
+            String path = root.relativize(dir).toString().replace(File.separatorChar, '/');
+            long modified;
+            try { // read before listing, so a change made while listing shows up as a change next time.
+                modified = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                        .lastModifiedTime().toMillis();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            LibraryCatalog.Directory known = previous == null ? null : previous.get(path);
+            if (known != null && known.modified >= 0 && known.modified == modified) {
+                reuse(known);
+                return;
+            }
+
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            List<String> subdirectoryNames = new ArrayList<>();
+            List<String> imageNames = new ArrayList<>();
+            List<List<String>> imageTags = new ArrayList<>();
+            boolean complete = true;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (cancelled)
+                        return;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue; // removed while being listed
+                    }
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new DirectoryTask(entry));
+                        subdirectoryNames.add(entry.getFileName().toString());
+                    } else {
+                        scannedFiles.increment();
+                        if (matcher.matches(entry)) {
+                            ImageFile image = new ImageFile(entry, root);
+                            List<String> tags;
+                            try {
+                                tags = image.getTags(); // parsed here so the snapshot can hold them.
+                            } catch (IllegalArgumentException e) {
+                                tags = null; // not a name the tagger understands, parsed again when needed.
+                            }
+                            if (tags != null) {
+                                imageNames.add(entry.getFileName().toString());
+                                imageTags.add(tags);
+                            } else {
+                                complete = false;
+                            }
+                            found.add(image);
+                            foundImages.increment();
+                        }
+                    }
+                }
+                boolean recent = modified > System.currentTimeMillis() - MODIFIED_GRACE_MILLIS;
+                boolean trusted = complete && !recent;
+                recorded.add(new LibraryCatalog.Directory(path, trusted ? modified : -1, subdirectoryNames,
+                        imageNames, imageTags));
+            } catch (IOException e) {
+                fail(e);
+            } catch (DirectoryIteratorException e) {
+                fail(e.getCause());
+            }
+            invokeAll(subdirectories);
+        }
+
+        /**
+         * Takes the contents of the directory from its snapshot and checks its subdirectories.
+         *
+         * @param known the snapshot of the directory
+         */
+        private void reuse(LibraryCatalog.Directory known) {
+            reusedDirectories.increment();
+            for (int i = 0; i < known.images.size(); i++)
+                found.add(new ImageFile(dir.resolve(known.images.get(i)), root, known.tags.get(i)));
+            scannedFiles.add(known.images.size());
+            foundImages.add(known.images.size());
+            recorded.add(known);
+
+            List<DirectoryTask> subdirectories = new ArrayList<>(known.subdirectories.size());
+            for (String name : known.subdirectories)
+                subdirectories.add(new DirectoryTask(dir.resolve(name)));
+            invokeAll(subdirectories);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Watches a library for images other programs add, remove or rename, and reports the changes in batches.
+ *
+ * Every directory under the root is registered with a WatchService. Events are gathered until none have arrived
+ * for a short quiet period (or a maximum delay has passed), so a burst such as a script copying thousands of
+ * files is reported as one batch. Changes are worked out by comparing the file system with the TagIndex rather
+ * than by replaying events, so renames done by this program, which the index already knows about, are not
+ * reported, and the order events arrive in does not matter. A new directory, a deleted directory and an
+ * OVERFLOW (events were lost) make the whole directory be compared again.
+ */
+public class LibraryWatcher implements Closeable {
+
+    /** Images added and removed since the last batch. */
+    public static class Changes {
+
+        /** Images that appeared, not in the index yet. */
+        private final List<ImageFile> added;
+
+        /** Indexed images that are gone. */
+        private final List<ImageFile> removed;
+
+        /**
+         * Class constructor
+         *
+         * @param added   images that appeared
+         * @param removed indexed images that are gone
+         */
+        Changes(List<ImageFile> added, List<ImageFile> removed) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        /**
+         * @return images that appeared, not in the index yet
+         */
+        public List<ImageFile> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return indexed images that are gone
+         */
+        public List<ImageFile> getRemoved() {
+            return removed;
+        }
+    }
+
+    /** Default time without events after which a batch is reported, in milliseconds. */
+    private static final long DEFAULT_QUIET_MILLIS = 250;
+
+    /** Default longest time a change waits to be reported during a steady stream of events, in milliseconds. */
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+
+    /** The library root. */
+    private final Path root;
+
+    /** Selects the images among the files. */
+    private final PathMatcher matcher;
+
+    /** The images already known. */
+    private final TagIndex index;
+
+    /** Receives each batch of changes, on the watcher thread. */
+    private final Consumer<Changes> listener;
+
+    /** The watch service, null until started. */
+    private WatchService watchService;
+
+    /** Directory each registered key watches. Only used by the watcher thread. */
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    /** Directories being watched. Only used by the watcher thread. */
+    private final Set<Path> watched = new HashSet<>();
+
+    /** Time without events after which a batch is reported. */
+    private volatile long quietMillis = DEFAULT_QUIET_MILLIS;
+
+    /** Longest time a change waits to be reported. */
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    /** Number of directories that could not be watched. */
+    private volatile int failures;
+
+    /** Set once closed. */
+    private volatile boolean closed;
+
+    /** The watcher thread. */
+    private Thread thread;
+
+    /**
+     * Class constructor
+     *
+     * @param root     the library root
+     * @param matcher  selects the images among the files under root
+     * @param index    the images already known; changes are worked out against it
+     * @param listener receives each batch of changes, on the watcher thread
+     */
+    public LibraryWatcher(Path root, PathMatcher matcher, TagIndex index, Consumer<Changes> listener) {
+        this.root = root;
+        this.matcher = matcher;
+        this.index = index;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets how events are gathered into batches.
+     *
+     * @param quietMillis    time without events after which a batch is reported, in milliseconds
+     * @param maxDelayMillis longest time a change waits to be reported, in milliseconds
+     */
+    public void setCoalescing(long quietMillis, long maxDelayMillis) {
+        this.quietMillis = Math.max(0, quietMillis);
+        this.maxDelayMillis = Math.max(this.quietMillis, maxDelayMillis);
+    }
+
+    /**
+     * Starts watching. Directories are registered on the watcher thread, so this returns right away.
+     *
+     * @throws IOException if the watch service can not be created
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null)
+            throw new IllegalStateException("Already started");
+        watchService = root.getFileSystem().newWatchService();
+        thread = new Thread(this::run, "library-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return number of directories that could not be watched, e.g. because the system limit was reached
+     */
+    public int getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * Stops watching. Changes not reported yet are dropped.
+     *
+     * @throws IOException if the watch service can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (watchService != null)
+            watchService.close();
+    }
+
+    /**
+     * Body of the watcher thread.
+     */
+    private void run() {
+        Set<Path> touched = new LinkedHashSet<>();
+        Set<Path> rescans = new LinkedHashSet<>();
+        long first = 0;
+        long last = 0;
+        try {
+            register(root);
+            while (!closed) {
+                boolean pending = !touched.isEmpty() || !rescans.isEmpty();
+                WatchKey key;
+                if (pending) {
+                    long now = System.currentTimeMillis();
+                    long wait = Math.min(last + quietMillis, first + maxDelayMillis) - now;
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : watchService.poll();
+                } else {
+                    key = watchService.take();
+                }
+
+                if (key != null) {
+                    last = System.currentTimeMillis();
+                    if (!pending)
+                        first = last;
+                    handle(key, touched, rescans);
+                    if (last - first < maxDelayMillis)
+                        continue; // keep gathering until quiet
+                }
+                if (!touched.isEmpty() || !rescans.isEmpty()) {
+                    Changes changes = changes(touched, rescans);
+                    touched.clear();
+                    rescans.clear();
+                    if (!changes.getAdded().isEmpty() || !changes.getRemoved().isEmpty())
+                        listener.accept(changes);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Records the events of key.
+     *
+     * @param key     a signalled key
+     * @param touched where to record paths that were created or deleted
+     * @param rescans where to record directories to compare in full
+     */
+    private void handle(WatchKey key, Set<Path> touched, Set<Path> rescans) {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null)
+                continue;
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescans.add(dir);
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                register(child); // files created before it was registered are found by the rescan
+                rescans.add(child);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && watched.remove(child)) {
+                rescans.add(child);
+            } else {
+                touched.add(child);
+            }
+        }
+        if (!key.reset()) { // its directory is gone
+            watched.remove(keys.remove(key));
+        }
+    }
+
+    /**
+     * Works out the changes from the recorded paths by comparing them with the file system and the index.
+     *
+     * @param touched paths that were created or deleted
+     * @param rescans directories to compare in full
+     * @return the changes
+     */
+    private Changes changes(Set<Path> touched, Set<Path> rescans) {
+        Map<Path, ImageFile> added = new LinkedHashMap<>();
+        Set<ImageFile> removed = new LinkedHashSet<>();
+
+        for (Path path : touched) {
+            ImageFile known = index.imageAt(path);
+            boolean exists = Files.exists(path, LinkOption.NOFOLLOW_LINKS);
+            if (exists && known == null && isImage(path))
+                added.put(path, newImage(path));
+            else if (!exists && known != null && !Files.exists(known.getFilePath(), LinkOption.NOFOLLOW_LINKS))
+                removed.add(known); // the image's own path, as it may have just been renamed by this app.
+        }
+
+        for (Path dir : rescans) {
+            for (ImageFile known : index.getImagesUnder(dir)) {
+                if (!Files.exists(known.getFilePath(), LinkOption.NOFOLLOW_LINKS))
+                    removed.add(known);
+            }
+            if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS))
+                continue;
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.filter(this::isImage).forEach(path -> {
+                    if (index.imageAt(path) == null && !added.containsKey(path))
+                        added.put(path, newImage(path));
+                });
+            } catch (IOException | RuntimeException e) {
+                failures++; // what was found is still reported, the rest shows up with the next event there
+            }
+        }
+        return new Changes(new ArrayList<>(added.values()), new ArrayList<>(removed));
+    }
+
+    /**
+     * @param path a path
+     * @return whether path is an image file
+     */
+    private boolean isImage(Path path) {
+        return matcher.matches(path) && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * @param path path of an image
+     * @return an image file for path, with its tags parsed on this thread
+     */
+    private ImageFile newImage(Path path) {
+        ImageFile image = new ImageFile(path, root);
+        try {
+            image.getTags();
+        } catch (IllegalArgumentException e) {
+            // parsed again, and reported, when the tags are needed.
+        }
+        return image;
+    }
+
+    /**
+     * Watches dir and every directory under it.
+     *
+     * @param dir the directory
+     */
+    private void register(Path dir) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attributes) {
+                    if (closed)
+                        return FileVisitResult.TERMINATE;
+                    if (watched.contains(d))
+                        return FileVisitResult.CONTINUE;
+                    try {
+                        WatchKey key = d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE);
+                        keys.put(key, d);
+                        watched.add(d);
+                    } catch (IOException e) {
+                        failures++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A persistent index of where each line of an append-only text file starts, so any range of lines can be read
+ * without reading the lines before it.
+ *
+ * The index file holds a header of two longs, the number of bytes of the text file indexed so far and the number
+ * of lines found in them, followed by the start offset of every line. refresh() only scans what was appended
+ * since the last refresh, and lookups read the offsets they need straight from the index file, so neither the
+ * text nor the index is ever held in memory as a whole.
+ */
+class LineIndex {
+
+    /** Size of the header of the index file. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Size of the chunks the text file is scanned in. */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /** The text file being indexed. */
+    private final Path file;
+
+    /** Where the index is kept. */
+    private final Path indexFile;
+
+    /** Charset the text file is written in. */
+    private final Charset charset;
+
+    /** Number of bytes of the text file covered by the index, always just after a line terminator. */
+    private long indexedBytes;
+
+    /** Number of lines covered by the index. */
+    private long lineCount;
+
+    /** Whether indexedBytes and lineCount have been read from the index file. */
+    private boolean loaded;
+
+    /**
+     * Class constructor
+     *
+     * @param file      the text file to index
+     * @param indexFile where to keep the index
+     * @param charset   the charset the text file is written in
+     */
+    LineIndex(Path file, Path indexFile, Charset charset) {
+        this.file = file;
+        this.indexFile = indexFile;
+        this.charset = charset;
+    }
+
+    /**
+     * @return the indexed text file
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return where the index is kept
+     */
+    Path getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Indexes the lines appended to the text file since the last refresh. Starts over if the text file shrank.
+     *
+     * @return the number of complete lines in the text file
+     * @throws IOException if either file can not be read or written
+     */
+    synchronized long refresh() throws IOException {
+        if (!Files.exists(file)) {
+            indexedBytes = 0;
+            lineCount = 0;
+            loaded = true;
+            Files.deleteIfExists(indexFile);
+            return 0;
+        }
+
+        try (FileChannel text = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            load(index);
+            long size = text.size();
+            if (size < indexedBytes) { // the file was replaced or truncated
+                indexedBytes = 0;
+                lineCount = 0;
+                index.truncate(HEADER_SIZE);
+            }
+            if (size == indexedBytes)
+                return lineCount;
+
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            ByteBuffer offsets = ByteBuffer.allocate(CHUNK_SIZE);
+            long lineStart = indexedBytes;
+            long newLines = 0;
+            long position = indexedBytes;
+            while (position < size) {
+                chunk.clear();
+                int read = text.read(chunk, position);
+                if (read < 0)
+                    break;
+                for (int i = 0; i < read; i++) {
+                    if (chunk.get(i) != '\n')
+                        continue;
+                    if (!offsets.hasRemaining())
+                        flushOffsets(index, offsets, lineCount + newLines - offsets.position() / 8);
+                    offsets.putLong(lineStart);
+                    newLines++;
+                    lineStart = position + i + 1;
+                }
+                position += read;
+            }
+            flushOffsets(index, offsets, lineCount + newLines - offsets.position() / 8);
+
+            indexedBytes = lineStart; // a trailing partial line is indexed once it is terminated
+            lineCount += newLines;
+            writeHeader(index);
+            return lineCount;
+        }
+    }
+
+    /**
+     * @return the number of lines covered by the index as of the last refresh
+     * @throws IOException if the index file can not be read
+     */
+    synchronized long getLineCount() throws IOException {
+        if (!loaded)
+            refresh();
+        return lineCount;
+    }
+
+    /**
+     * Reads count lines starting at line fromLine (0 being the first line), as of the last refresh.
+     *
+     * @param fromLine the first line to read
+     * @param count    the maximum number of lines to read
+     * @return the lines, fewer than count if the end of the file is reached
+     * @throws IOException if either file can not be read
+     */
+    synchronized List<String> read(long fromLine, int count) throws IOException {
+        if (!loaded)
+            refresh();
+        List<String> lines = new ArrayList<>();
+        if (fromLine < 0 || fromLine >= lineCount || count <= 0)
+            return lines;
+
+        long toLine = Math.min(lineCount, fromLine + count);
+        long start;
+        long end;
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            start = readLong(index, HEADER_SIZE + fromLine * 8);
+            end = toLine < lineCount ? readLong(index, HEADER_SIZE + toLine * 8) : indexedBytes;
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        try (FileChannel text = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (text.read(bytes, start + bytes.position()) < 0)
+                    throw new IOException("File shrank while reading: " + file);
+            }
+        }
+        bytes.flip();
+
+        String block = charset.decode(bytes).toString();
+        int lineStart = 0;
+        for (int i = 0; i < block.length(); i++) {
+            if (block.charAt(i) == '\n') {
+                lines.add(block.substring(lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Reads the header of the index file, or starts a new index if it has none.
+     *
+     * @param index the open index file
+     * @throws IOException if the index can not be read
+     */
+    private void load(FileChannel index) throws IOException {
+        if (index.size() < HEADER_SIZE) {
+            indexedBytes = 0;
+            lineCount = 0;
+            writeHeader(index);
+        } else {
+            indexedBytes = readLong(index, 0);
+            lineCount = readLong(index, 8);
+            if (index.size() < HEADER_SIZE + lineCount * 8) { // offsets missing, start over
+                indexedBytes = 0;
+                lineCount = 0;
+                index.truncate(HEADER_SIZE);
+                writeHeader(index);
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * Writes buffered offsets to the index file and empties the buffer.
+     * Offsets are written before the header is updated, so an interrupted refresh never leaves a header that
+     * points past the offsets.
+     *
+     * @param index     the open index file
+     * @param offsets   the buffered offsets
+     * @param firstLine the line number of the first buffered offset
+     * @throws IOException if the index can not be written
+     */
+    private static void flushOffsets(FileChannel index, ByteBuffer offsets, long firstLine) throws IOException {
+        offsets.flip();
+        long position = HEADER_SIZE + firstLine * 8;
+        while (offsets.hasRemaining())
+            position += index.write(offsets, position);
+        offsets.clear();
+    }
+
+    /**
+     * Writes indexedBytes and lineCount to the header of the index file.
+     *
+     * @param index the open index file
+     * @throws IOException if the index can not be written
+     */
+    private void writeHeader(FileChannel index) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(indexedBytes).putLong(lineCount).flip();
+        long position = 0;
+        while (header.hasRemaining())
+            position += index.write(header, position);
+    }
+
+    /**
+     * @param channel  an open file
+     * @param position where to read
+     * @return the long at position
+     * @throws IOException if the file can not be read
+     */
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(8);
+        while (value.hasRemaining()) {
+            if (channel.read(value, position + value.position()) < 0)
+                throw new IOException("Index file is truncated");
+        }
+        return value.getLong(0);
+    }
+}
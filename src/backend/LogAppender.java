@@ -0,0 +1,359 @@
+package backend;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Appends text to log files from a single background thread.
+ *
+ * Callers only queue their entries. The writer thread waits up to the commit interval to gather more entries,
+ * then writes everything queued for a file with one write on a channel it keeps open, so a burst of renames
+ * costs a few writes instead of an open, append and close per entry. Open channels are kept in an LRU cache
+ * and the least recently used one is closed when the cache is full. Text is encoded with the platform charset,
+ * the same as a FileWriter, so the files look exactly as if they had been written with one.
+ *
+ * A failed write is recorded for its file and reported to the next caller that appends to or flushes that file,
+ * so one file's failure never surfaces as an error of a caller that only reads or writes other files.
+ */
+public class LogAppender {
+
+    /** Kinds of requests handled by the writer thread. */
+    private enum Kind { APPEND, FLUSH, CLOSE, SHUTDOWN }
+
+    /** A request queued for the writer thread. */
+    private static class Request {
+        private final Kind kind;
+        private final Path file;
+        private final String text;
+        private final CountDownLatch done;
+
+        private Request(Kind kind, Path file, String text) {
+            this.kind = kind;
+            this.file = file;
+            this.text = text;
+            this.done = kind == Kind.APPEND ? null : new CountDownLatch(1);
+        }
+    }
+
+    /** Requests waiting for the writer thread. Bounded, so callers slow down if the disk can not keep up. */
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>(1 << 16);
+
+    /** Channels the writer thread keeps open, least recently used first. Only used by the writer thread. */
+    private final LinkedHashMap<Path, FileChannel> channels;
+
+    /** How long the writer thread gathers entries before writing them, in milliseconds. */
+    private final long commitIntervalMillis;
+
+    /** Whether every commit is forced to disk. */
+    private final boolean sync;
+
+    /** Charset used to encode the text, the same one a FileWriter would use. */
+    private final Charset charset = Charset.defaultCharset();
+
+    /** The first write failure of each file that has not been reported yet. */
+    private final Map<Path, IOException> failures = new ConcurrentHashMap<>();
+
+    /** Set once shutdown has been requested. */
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+
+    /** The writer thread. */
+    private final Thread writer;
+
+    /** Flushes the appender when the JVM exits. */
+    private final Thread shutdownHook;
+
+    /**
+     * Class constructor. Starts the writer thread and registers a shutdown hook that flushes it.
+     *
+     * @param maxOpenFiles         how many log files may be kept open at once, at least 1
+     * @param commitIntervalMillis how long to gather entries before writing them, 0 to write right away
+     * @param sync                 whether to force every commit to disk
+     */
+    public LogAppender(int maxOpenFiles, long commitIntervalMillis, boolean sync) {
+        if (maxOpenFiles < 1)
+            throw new IllegalArgumentException("maxOpenFiles must be at least 1");
+        this.commitIntervalMillis = Math.max(0, commitIntervalMillis);
+        this.sync = sync;
+        this.channels = new LinkedHashMap<Path, FileChannel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, FileChannel> eldest) {
+                if (size() <= maxOpenFiles)
+                    return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+
+        this.writer = new Thread(this::run, "log-appender");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        this.shutdownHook = new Thread(this::shutdown, "log-appender-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues text to be appended to file. Returns without waiting for the write.
+     *
+     * @param file the file to append to, created if it does not exist
+     * @param text the text to append
+     * @throws IOException if the appender has been shut down, the caller is interrupted while the queue is full,
+     *                     or an earlier write to file failed and has not been reported yet; text is queued
+     *                     in that last case
+     */
+    public void append(Path file, String text) throws IOException {
+        IOException earlier = failures.remove(file); // taken first, this text may fail before submit returns
+        submit(new Request(Kind.APPEND, file, text));
+        if (earlier != null)
+            throw earlier;
+    }
+
+    /**
+     * Waits until everything queued so far has been written. Write failures are left for the callers of the
+     * files they happened to.
+     *
+     * @throws IOException if the appender has been shut down or the caller is interrupted
+     */
+    public void flush() throws IOException {
+        await(submit(new Request(Kind.FLUSH, null, null)));
+    }
+
+    /**
+     * Waits until everything queued so far has been written.
+     *
+     * @param file the file whose failures to report
+     * @throws IOException if a write to file failed and has not been reported yet
+     */
+    public void flush(Path file) throws IOException {
+        flush();
+        report(file);
+    }
+
+    /**
+     * Waits until everything queued so far has been written and reports the write failures not reported yet,
+     * whatever file they happened to. Meant for the owner of all the appends, e.g. a batch that is done.
+     *
+     * @throws IOException the first unreported write failure
+     */
+    public void flushAll() throws IOException {
+        flush();
+        IOException first = null;
+        for (Path file : new ArrayList<>(failures.keySet())) {
+            IOException failure = failures.remove(file);
+            if (first == null)
+                first = failure;
+            else if (failure != null)
+                first.addSuppressed(failure);
+        }
+        if (first != null)
+            throw first;
+    }
+
+    /**
+     * Writes everything queued for file so far and closes its channel, e.g. before the file is moved.
+     *
+     * @param file the file to release
+     * @throws IOException if the caller is interrupted
+     */
+    public void close(Path file) throws IOException {
+        await(submit(new Request(Kind.CLOSE, file, null)));
+    }
+
+    /**
+     * Writes everything queued, closes all files and stops the writer thread. Later appends fail.
+     */
+    public void shutdown() {
+        if (!shutdown.compareAndSet(false, true))
+            return;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // the JVM is already exiting, this is the hook running.
+        }
+        Request request = new Request(Kind.SHUTDOWN, null, null);
+        try {
+            queue.put(request);
+            request.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Throws the unreported write failure of file, if it has one, and forgets it.
+     *
+     * @param file the file
+     * @throws IOException the failure
+     */
+    private void report(Path file) throws IOException {
+        IOException failure = failures.remove(file);
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Queues request for the writer thread.
+     *
+     * @param request the request
+     * @return request
+     * @throws IOException if the appender has been shut down or the caller is interrupted
+     */
+    private Request submit(Request request) throws IOException {
+        if (shutdown.get())
+            throw new IOException("Log appender has been shut down");
+        try {
+            queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing log entry");
+        }
+        return request;
+    }
+
+    /**
+     * Waits for the writer thread to handle request.
+     *
+     * @param request the request
+     * @throws IOException if the caller is interrupted
+     */
+    private static void await(Request request) throws IOException {
+        try {
+            request.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for log writer");
+        }
+    }
+
+    /**
+     * Body of the writer thread: gathers requests for up to the commit interval, then handles them in order.
+     */
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+                while (batch.get(batch.size() - 1).kind == Kind.APPEND) { // a barrier ends the group early
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // nobody interrupts the writer thread, but if it happens write what was gathered and carry on.
+            }
+
+            if (commit(batch))
+                return;
+            batch.clear();
+        }
+    }
+
+    /**
+     * Handles a batch of requests in order, grouping the text of consecutive appends per file.
+     *
+     * @param batch the requests
+     * @return true if the batch contained a shutdown request
+     */
+    private boolean commit(List<Request> batch) {
+        Map<Path, StringBuilder> pending = new LinkedHashMap<>();
+        for (Request request : batch) {
+            switch (request.kind) {
+                case APPEND:
+                    StringBuilder text = pending.get(request.file);
+                    if (text == null) {
+                        text = new StringBuilder();
+                        pending.put(request.file, text);
+                    }
+                    text.append(request.text);
+                    break;
+                case FLUSH:
+                    write(pending);
+                    request.done.countDown();
+                    break;
+                case CLOSE:
+                    write(pending);
+                    closeQuietly(channels.remove(request.file));
+                    request.done.countDown();
+                    break;
+                case SHUTDOWN:
+                    write(pending);
+                    Iterator<FileChannel> open = channels.values().iterator();
+                    while (open.hasNext()) {
+                        closeQuietly(open.next());
+                        open.remove();
+                    }
+                    List<Request> late = new ArrayList<>(); // queued while shutting down, nothing will write them.
+                    queue.drainTo(late);
+                    for (Request lateRequest : late) {
+                        if (lateRequest.done != null)
+                            lateRequest.done.countDown();
+                    }
+                    request.done.countDown();
+                    return true;
+            }
+        }
+        write(pending);
+        return false;
+    }
+
+    /**
+     * Writes the text gathered for each file and empties pending.
+     *
+     * @param pending text to append, per file
+     */
+    private void write(Map<Path, StringBuilder> pending) {
+        for (Map.Entry<Path, StringBuilder> entry : pending.entrySet()) {
+            Path file = entry.getKey();
+            try {
+                FileChannel channel = channels.get(file);
+                if (channel == null) {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+                    channels.put(file, channel);
+                }
+                ByteBuffer bytes = charset.encode(entry.getValue().toString());
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+                if (sync)
+                    channel.force(false);
+            } catch (IOException e) {
+                failures.putIfAbsent(file, new IOException("Unable to write log " + file + ": " + e.getMessage(), e));
+                closeQuietly(channels.remove(file));
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Closes channel, ignoring failures.
+     *
+     * @param channel the channel to close, may be null
+     */
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to write, the channel is unusable either way.
+        }
+    }
+}
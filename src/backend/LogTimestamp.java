@@ -0,0 +1,150 @@
+package backend;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats the timestamps of history entries.
+ *
+ * Both timestamp formats have minute resolution, so the formatted strings of the current minute are cached and
+ * shared by all threads; only the first entry of each minute pays for formatting. The strings are produced with
+ * SimpleDateFormat in the default locale and time zone, exactly as before.
+ */
+public class LogTimestamp {
+
+    /** Format of superlog timestamps. */
+    static final String SUP_PATTERN = "dd.MM.yyyy HH:mm";
+
+    /** Format of image log timestamps. */
+    static final String IMG_PATTERN = "mm.HH.dd.MM.yyyy";
+
+    /** The formatted timestamps of one minute. Immutable, so it can be shared between threads. */
+    private static class Minute {
+        private final long minute;
+        private final String sup;
+        private final String img;
+
+        private Minute(long minute) {
+            Date start = new Date(minute * 60000L);
+            this.minute = minute;
+            this.sup = new SimpleDateFormat(SUP_PATTERN).format(start);
+            this.img = new SimpleDateFormat(IMG_PATTERN).format(start);
+        }
+    }
+
+    /** The most recently used minute. */
+    private static volatile Minute cached = new Minute(Math.floorDiv(System.currentTimeMillis(), 60000L));
+
+    /** The most recently parsed superlog timestamp and its time. Entries come in order, so it is usually a hit. */
+    private static volatile Parsed lastParsed;
+
+    /** A parsed timestamp. Immutable, so it can be shared between threads. */
+    private static class Parsed {
+        private final String stamp;
+        private final long millis;
+
+        private Parsed(String stamp, long millis) {
+            this.stamp = stamp;
+            this.millis = millis;
+        }
+    }
+
+    /** Utility class, no instances. */
+    private LogTimestamp() {
+    }
+
+    /**
+     * @return the current time formatted as dd.MM.yyyy HH:mm
+     */
+    public static String supStamp() {
+        return supStamp(System.currentTimeMillis());
+    }
+
+    /**
+     * @param millis a time in milliseconds since the epoch
+     * @return millis formatted as dd.MM.yyyy HH:mm
+     */
+    public static String supStamp(long millis) {
+        return minuteOf(millis).sup;
+    }
+
+    /**
+     * @return the current time formatted as mm.HH.dd.MM.yyyy
+     */
+    public static String imgStamp() {
+        return imgStamp(System.currentTimeMillis());
+    }
+
+    /**
+     * @param millis a time in milliseconds since the epoch
+     * @return millis formatted as mm.HH.dd.MM.yyyy
+     */
+    public static String imgStamp(long millis) {
+        return minuteOf(millis).img;
+    }
+
+    /**
+     * @param millis a time in milliseconds since the epoch
+     * @return the formatted timestamps of the minute millis falls in
+     */
+    private static Minute minuteOf(long millis) {
+        long minute = Math.floorDiv(millis, 60000L);
+        Minute current = cached;
+        if (current.minute == minute)
+            return current;
+
+        Minute formatted = new Minute(minute);
+        if (minute > current.minute) // only move forward, old timestamps are formatted but not cached
+            cached = formatted;
+        return formatted;
+    }
+
+    /**
+     * Parses the timestamp at the start of a superlog entry.
+     *
+     * @param entry a superlog entry
+     * @return the start of the minute the entry was logged in, in milliseconds since the epoch, or -1 if entry
+     * does not start with a timestamp
+     */
+    static long parseSupStamp(String entry) {
+        if (entry.length() < SUP_PATTERN.length())
+            return -1;
+        Parsed last = lastParsed;
+        if (last != null && entry.startsWith(last.stamp))
+            return last.millis;
+
+        String stamp = entry.substring(0, SUP_PATTERN.length());
+        long millis = parse(stamp, SUP_PATTERN);
+        if (millis >= 0)
+            lastParsed = new Parsed(stamp, millis);
+        return millis;
+    }
+
+    /**
+     * Parses the timestamp field of an image log entry.
+     *
+     * @param stamp the timestamp field
+     * @return the start of the minute it names, in milliseconds since the epoch, or -1 if it is not a timestamp
+     */
+    static long parseImgStamp(String stamp) {
+        return parse(stamp, IMG_PATTERN);
+    }
+
+    /**
+     * @param stamp   a formatted timestamp
+     * @param pattern the format it is in
+     * @return the time it names in milliseconds since the epoch, or -1 if it does not match pattern
+     */
+    private static long parse(String stamp, String pattern) {
+        if (stamp.length() != pattern.length())
+            return -1;
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setLenient(false);
+        try {
+            return format.parse(stamp).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A set of image ordinals that stays small for rare members.
+ * It stores a sorted int array while it has few members and switches to a BitSet once the array would take
+ * more memory than the bitmap, so an index with many rare keys over a large image library stays compact.
+ */
+class OrdinalSet {
+
+    /** Members in ascending order while sparse, null once dense. */
+    private int[] sparse = new int[4];
+
+    /** Members while dense, null while sparse. */
+    private BitSet dense;
+
+    /** Number of members. */
+    private int size;
+
+    /**
+     * Adds ordinal to the set.
+     *
+     * @param ordinal the ordinal to add
+     * @param universe one more than the largest ordinal in use, used to decide when to become dense
+     */
+    void add(int ordinal, int universe) {
+        if (dense != null) {
+            if (!dense.get(ordinal)) {
+                dense.set(ordinal);
+                size++;
+            }
+            return;
+        }
+
+        int pos;
+        if (size == 0 || sparse[size - 1] < ordinal) {
+            pos = size; // the common case while indexing: ordinals arrive in ascending order
+        } else {
+            pos = Arrays.binarySearch(sparse, 0, size, ordinal);
+            if (pos >= 0)
+                return;
+            pos = -pos - 1;
+        }
+
+        if ((size + 1) > universe / 32 && size >= 64) { // an int per member now costs more than a bit per image
+            toDense();
+            dense.set(ordinal);
+            size++;
+            return;
+        }
+
+        if (size == sparse.length)
+            sparse = Arrays.copyOf(sparse, size * 2);
+        System.arraycopy(sparse, pos, sparse, pos + 1, size - pos);
+        sparse[pos] = ordinal;
+        size++;
+    }
+
+    /**
+     * Removes ordinal from the set.
+     *
+     * @param ordinal the ordinal to remove
+     */
+    void remove(int ordinal) {
+        if (dense != null) {
+            if (dense.get(ordinal)) {
+                dense.clear(ordinal);
+                size--;
+            }
+            return;
+        }
+
+        int pos = Arrays.binarySearch(sparse, 0, size, ordinal);
+        if (pos < 0)
+            return;
+        System.arraycopy(sparse, pos + 1, sparse, pos, size - pos - 1);
+        size--;
+    }
+
+    /**
+     * @param ordinal the ordinal to look for
+     * @return true iff ordinal is in the set
+     */
+    boolean contains(int ordinal) {
+        if (dense != null)
+            return dense.get(ordinal);
+        return Arrays.binarySearch(sparse, 0, size, ordinal) >= 0;
+    }
+
+    /**
+     * @return the number of members
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sets the bit of every member in result.
+     *
+     * @param result the bitmap to add the members to
+     */
+    void orInto(BitSet result) {
+        if (dense != null) {
+            result.or(dense);
+            return;
+        }
+        for (int i = 0; i < size; i++)
+            result.set(sparse[i]);
+    }
+
+    /**
+     * Clears every bit of result that is not a member.
+     *
+     * @param result the bitmap to intersect with this set
+     */
+    void andInto(BitSet result) {
+        if (dense != null) {
+            result.and(dense);
+            return;
+        }
+        BitSet kept = new BitSet();
+        for (int i = 0; i < size; i++) {
+            if (result.get(sparse[i]))
+                kept.set(sparse[i]);
+        }
+        result.clear();
+        result.or(kept);
+    }
+
+    /**
+     * Clears the bit of every member in result.
+     *
+     * @param result the bitmap to remove the members from
+     */
+    void andNotInto(BitSet result) {
+        if (dense != null) {
+            result.andNot(dense);
+            return;
+        }
+        for (int i = 0; i < size; i++)
+            result.clear(sparse[i]);
+    }
+
+    /**
+     * Switches from the sorted array to a bitmap.
+     */
+    private void toDense() {
+        dense = new BitSet();
+        for (int i = 0; i < size; i++)
+            dense.set(sparse[i]);
+        sparse = null;
+    }
+}
@@ -0,0 +1,203 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A file name broken down into its base name, tags and extension, e.g. "img @Jane @Bob.jpg" has base name "img",
+ * tags "Jane" and "Bob" and extension ".jpg".
+ *
+ * Parsing is a single pass over the name that only records token offsets, so a ParsedName can be reset and reused
+ * without creating intermediate strings. The tokens are exactly those of
+ * name.split("(\\s@)|(\\..+)") followed by the extension, which is how file names were parsed originally.
+ */
+public class ParsedName {
+
+    /** The file name that was parsed. */
+    private String name;
+
+    /** Start offset of each token produced by splitting name. */
+    private int[] starts = new int[8];
+
+    /** End offset (exclusive) of each token produced by splitting name. */
+    private int[] ends = new int[8];
+
+    /** Number of tokens produced by splitting name, not counting the extension. */
+    private int count;
+
+    /** Offset of the extension (the last '.') in name. */
+    private int extStart;
+
+    /**
+     * Returns a new ParsedName for name.
+     *
+     * @param name the file name to parse
+     * @return the parsed name
+     * @throws IllegalArgumentException if name has no extension
+     */
+    public static ParsedName parse(String name) {
+        return new ParsedName().reset(name);
+    }
+
+    /**
+     * Parses name into this object, replacing whatever was parsed before.
+     *
+     * @param name the file name to parse
+     * @return this
+     * @throws IllegalArgumentException if name has no extension
+     */
+    public ParsedName reset(String name) {
+        int ext = name.lastIndexOf('.');
+        if (ext < 0)
+            throw new IllegalArgumentException("File name has no extension: " + name);
+
+        this.name = name;
+        this.extStart = ext;
+        this.count = 0;
+
+        int n = name.length();
+        int index = 0; // start of the current token
+        int i = 0;
+        while (i < n) {
+            char c = name.charAt(i);
+            if (isSpace(c) && i + 1 < n && name.charAt(i + 1) == '@') { // "\s@"
+                addToken(index, i);
+                index = i + 2;
+                i = index;
+            } else if (c == '.' && i + 1 < n && !isLineTerminator(name.charAt(i + 1))) { // "\..+"
+                int j = i + 2;
+                while (j < n && !isLineTerminator(name.charAt(j)))
+                    j++;
+                addToken(index, i);
+                index = j;
+                i = j;
+            } else {
+                i++;
+            }
+        }
+
+        if (index == 0) { // no separator at all, the whole name is the only token
+            addToken(0, n);
+        } else {
+            addToken(index, n);
+            while (count > 0 && starts[count - 1] == ends[count - 1]) // drop trailing empty tokens
+                count--;
+        }
+        return this;
+    }
+
+    /**
+     * @return the file name that was parsed
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name without tags and extension
+     */
+    public String getBaseName() {
+        return count > 0 ? name.substring(starts[0], ends[0]) : getExtension();
+    }
+
+    /**
+     * @return the extension including the leading '.'
+     */
+    public String getExtension() {
+        return name.substring(extStart);
+    }
+
+    /**
+     * @return the number of tags in the name
+     */
+    public int getTagCount() {
+        return count > 1 ? count - 1 : 0;
+    }
+
+    /**
+     * @param i index of the tag, 0 being the first tag after the base name
+     * @return the i-th tag
+     */
+    public String getTag(int i) {
+        if (i < 0 || i >= getTagCount())
+            throw new IndexOutOfBoundsException("Tag index: " + i + ", tags: " + getTagCount());
+        return name.substring(starts[i + 1], ends[i + 1]);
+    }
+
+    /**
+     * @param i index of the tag, 0 being the first tag after the base name
+     * @return offset in the name at which the i-th tag starts
+     */
+    public int getTagStart(int i) {
+        getTag(i); // bounds check
+        return starts[i + 1];
+    }
+
+    /**
+     * @param i index of the tag, 0 being the first tag after the base name
+     * @return offset in the name at which the i-th tag ends (exclusive)
+     */
+    public int getTagEnd(int i) {
+        getTag(i); // bounds check
+        return ends[i + 1];
+    }
+
+    /**
+     * @return a new list with the tags in the name, in order
+     */
+    public ArrayList<String> getTags() {
+        int tagCount = getTagCount();
+        ArrayList<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++)
+            tags.add(getTag(i));
+        return tags;
+    }
+
+    /**
+     * Returns the name as a list of tokens:
+     * 0) the file name
+     * 1) first tag if it exists, else the extension
+     * ...) the remaining tags if any, else the extension
+     *
+     * @return a new tokenized list of the file name
+     */
+    public ArrayList<String> toList() {
+        ArrayList<String> tokens = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++)
+            tokens.add(name.substring(starts[i], ends[i]));
+        tokens.add(getExtension());
+        return tokens;
+    }
+
+    /**
+     * Records the token name[start, end).
+     *
+     * @param start start offset of the token
+     * @param end   end offset (exclusive) of the token
+     */
+    private void addToken(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * @param c a character
+     * @return true iff c matches the regex \s, i.e. [ \t\n\x0B\f\r]
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * @param c a character
+     * @return true iff c is a character the regex . does not match
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
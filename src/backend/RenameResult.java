@@ -0,0 +1,94 @@
+package backend;
+
+import java.nio.file.Path;
+
+/** The outcome of renaming or moving a single image as part of a bulk operation. */
+public class RenameResult {
+
+    /** The image that was renamed. */
+    private ImageFile imageFile;
+
+    /** Path of the image before the rename. */
+    private Path oldPath;
+
+    /** Path of the image after the rename, equal to oldPath if the rename failed. */
+    private Path newPath;
+
+    /** Path of the image's history log, null if the rename failed. */
+    private Path logPath;
+
+    /** Why the rename or its logging failed, null if it succeeded. */
+    private Exception error;
+
+    /**
+     * Class constructor
+     */
+    RenameResult(ImageFile imageFile, Path oldPath, Path newPath, Path logPath, Exception error) {
+        this.imageFile = imageFile;
+        this.oldPath = oldPath;
+        this.newPath = newPath;
+        this.logPath = logPath;
+        this.error = error;
+    }
+
+    /**
+     * @param imageFile the image that could not be renamed
+     * @param error     the reason
+     * @return a result for a rename that failed
+     */
+    static RenameResult failed(ImageFile imageFile, Exception error) {
+        Path path = imageFile.getFilePath();
+        return new RenameResult(imageFile, path, path, null, error);
+    }
+
+    /**
+     * @return the image that was renamed
+     */
+    public ImageFile getImageFile() {
+        return imageFile;
+    }
+
+    /**
+     * @return path of the image before the rename
+     */
+    public Path getOldPath() {
+        return oldPath;
+    }
+
+    /**
+     * @return path of the image after the rename
+     */
+    public Path getNewPath() {
+        return newPath;
+    }
+
+    /**
+     * @return path of the image's history log, null if the rename failed
+     */
+    Path getLogPath() {
+        return logPath;
+    }
+
+    /**
+     * @return why the rename failed, or null if it succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * @return true iff the image was renamed and the change was logged
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Marks this result as failed, e.g. when the rename went through but could not be logged.
+     *
+     * @param error the reason
+     */
+    void setError(Exception error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,209 @@
+package backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a file from last to first.
+ *
+ * Large files are memory-mapped one window at a time starting at the end, so reading the last few lines of a
+ * huge log only touches the pages holding them. Small files are read into memory in one go, which is cheaper
+ * than mapping them. Lines are located by scanning bytes for '\n', which is safe for the charsets log files are
+ * written in (UTF-8 and other ASCII compatible charsets), and only the parts a caller asks for are decoded.
+ */
+class ReverseLineReader implements Closeable {
+
+    /** Files up to this size are read into memory instead of being mapped. */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
+    /** Size of each mapped window. */
+    private static final int WINDOW_SIZE = 8 * 1024 * 1024;
+
+    /** The file being read. */
+    private final FileChannel channel;
+
+    /** Charset the file was written in. */
+    private final Charset charset;
+
+    /** Size of the file when it was opened. Anything appended later is not read. */
+    private final long size;
+
+    /** Bytes of the current window. */
+    private ByteBuffer window;
+
+    /** Offset in the file of the first byte of window. */
+    private long windowStart;
+
+    /** End (exclusive) of the part of the file not read yet, -1 once the first line has been read. */
+    private long pos;
+
+    /** Offset of the first byte of the current line. */
+    private long lineStart;
+
+    /** Offset just past the last byte of the current line, not counting the line terminator. */
+    private long lineEnd;
+
+    /**
+     * Class constructor
+     *
+     * @param file    the file to read
+     * @param charset the charset the file was written in
+     * @throws IOException if the file can not be opened
+     */
+    ReverseLineReader(Path file, Charset charset) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.charset = charset;
+        this.size = channel.size();
+        this.pos = size;
+        if (size == 0)
+            pos = -1;
+        else if (byteAt(size - 1) == '\n')
+            pos = size - 1; // a terminated last line is not followed by an empty one
+    }
+
+    /**
+     * Moves to the line before the current one.
+     *
+     * @return false if there are no more lines
+     * @throws IOException if the file can not be read
+     */
+    boolean previousLine() throws IOException {
+        if (pos < 0)
+            return false;
+
+        long end = pos;
+        long i = end - 1;
+        while (i >= 0 && byteAt(i) != '\n')
+            i--;
+
+        lineStart = i + 1;
+        lineEnd = end;
+        if (lineEnd > lineStart && byteAt(lineEnd - 1) == '\r')
+            lineEnd--;
+        pos = i; // -1 when the first line of the file was reached
+        return true;
+    }
+
+    /**
+     * @return offset of the first byte of the current line
+     */
+    long lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return offset just past the last byte of the current line
+     */
+    long lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * @return the current line
+     * @throws IOException if the file can not be read
+     */
+    String line() throws IOException {
+        return decode(lineStart, lineEnd);
+    }
+
+    /**
+     * Finds the first occurrence of b in [from, to).
+     *
+     * @param b    the byte to look for
+     * @param from offset to start at
+     * @param to   offset to stop before
+     * @return the offset of b, or -1 if not found
+     * @throws IOException if the file can not be read
+     */
+    long indexOf(byte b, long from, long to) throws IOException {
+        for (long i = from; i < to; i++) {
+            if (byteAt(i) == b)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the bytes in [from, to).
+     *
+     * @param from offset of the first byte
+     * @param to   offset just past the last byte
+     * @return the decoded text
+     * @throws IOException if the file can not be read
+     */
+    String decode(long from, long to) throws IOException {
+        int length = (int) (to - from);
+        if (length == 0)
+            return "";
+        if (window != null && from >= windowStart && to <= windowStart + window.limit()) {
+            ByteBuffer slice = window.duplicate();
+            slice.position((int) (from - windowStart));
+            slice.limit((int) (to - windowStart));
+            return charset.decode(slice).toString();
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(length); // the range spans windows, rare for log lines
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, from + bytes.position()) < 0)
+                throw new IOException("File shrank while reading");
+        }
+        bytes.flip();
+        return charset.decode(bytes).toString();
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * @param offset an offset in the file
+     * @return the byte at offset
+     * @throws IOException if the file can not be read
+     */
+    private byte byteAt(long offset) throws IOException {
+        if (window == null || offset < windowStart)
+            load(offset, true);
+        else if (offset >= windowStart + window.limit())
+            load(offset, false);
+        return window.get((int) (offset - windowStart));
+    }
+
+    /**
+     * Loads a window holding offset.
+     *
+     * @param offset    an offset that must be in the new window
+     * @param backwards true to end the window just after offset, false to start it at offset
+     * @throws IOException if the file can not be read
+     */
+    private void load(long offset, boolean backwards) throws IOException {
+        if (size <= MAP_THRESHOLD) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, bytes.position()) < 0)
+                    break;
+            }
+            bytes.flip();
+            window = bytes;
+            windowStart = 0;
+        } else {
+            long start = backwards ? Math.max(0, offset + 1 - WINDOW_SIZE) : offset;
+            long end = Math.min(size, start + WINDOW_SIZE);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            windowStart = start;
+        }
+        if (offset < windowStart || offset >= windowStart + window.limit())
+            throw new IOException("Offset " + offset + " is past the end of the file");
+    }
+}
@@ -0,0 +1,173 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed search of the image list.
+ *
+ * A search is a list of terms separated by spaces, all of which an image must match:
+ * <ul>
+ * <li>{@code tag:beach} - the image is tagged beach; {@code -tag:blurry} - it is not tagged blurry</li>
+ * <li>{@code path:2023} - its path relative to the library contains 2023; {@code -path:old} - it does not</li>
+ * <li>{@code untagged} - it has no tags</li>
+ * <li>any other word - its relative path contains the word</li>
+ * </ul>
+ * A value with spaces can be quoted, as in {@code path:"summer trip"}. Text with none of the keywords above is
+ * searched for as a whole, spaces included, the same as before the keywords were added.
+ *
+ * Tag terms and untagged are answered from the TagIndex's bitmaps; only the path terms check paths, and only
+ * those of the images the tag terms left.
+ */
+public class SearchQuery {
+
+    /** Tags the images must all have. */
+    private final List<String> tags = new ArrayList<>();
+
+    /** Tags the images must not have. */
+    private final List<String> excludedTags = new ArrayList<>();
+
+    /** Text the images' relative paths must all contain. */
+    private final List<String> paths = new ArrayList<>();
+
+    /** Text the images' relative paths must not contain. */
+    private final List<String> excludedPaths = new ArrayList<>();
+
+    /** Whether the images must have no tags. */
+    private boolean untagged;
+
+    /**
+     * Class constructor, use parse.
+     */
+    private SearchQuery() {
+    }
+
+    /**
+     * Parses a search.
+     *
+     * @param text the search as typed
+     * @return the parsed search; an empty text matches every image
+     */
+    public static SearchQuery parse(String text) {
+        SearchQuery query = new SearchQuery();
+        List<String> terms = split(text);
+        boolean keywords = false;
+        for (String term : terms) {
+            if (isKeyword(term))
+                keywords = true;
+        }
+        if (!keywords) {
+            if (!text.isEmpty())
+                query.paths.add(text);
+            return query;
+        }
+
+        for (String term : terms) {
+            if (term.startsWith("tag:"))
+                addIfNotEmpty(query.tags, term.substring(4));
+            else if (term.startsWith("-tag:"))
+                addIfNotEmpty(query.excludedTags, term.substring(5));
+            else if (term.startsWith("path:"))
+                addIfNotEmpty(query.paths, term.substring(5));
+            else if (term.startsWith("-path:"))
+                addIfNotEmpty(query.excludedPaths, term.substring(6));
+            else if (term.equals("untagged"))
+                query.untagged = true;
+            else
+                query.paths.add(term);
+        }
+        return query;
+    }
+
+    /**
+     * @return tags the images must all have
+     */
+    public List<String> getTags() {
+        return Collections.unmodifiableList(tags);
+    }
+
+    /**
+     * @return tags the images must not have
+     */
+    public List<String> getExcludedTags() {
+        return Collections.unmodifiableList(excludedTags);
+    }
+
+    /**
+     * @return text the images' relative paths must all contain
+     */
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * @return text the images' relative paths must not contain
+     */
+    public List<String> getExcludedPaths() {
+        return Collections.unmodifiableList(excludedPaths);
+    }
+
+    /**
+     * @return whether the images must have no tags
+     */
+    public boolean isUntagged() {
+        return untagged;
+    }
+
+    /**
+     * @return whether the search matches every image
+     */
+    public boolean isEmpty() {
+        return tags.isEmpty() && excludedTags.isEmpty() && paths.isEmpty() && excludedPaths.isEmpty() && !untagged;
+    }
+
+    /**
+     * @param term a term
+     * @return whether term uses one of the keywords
+     */
+    private static boolean isKeyword(String term) {
+        return term.startsWith("tag:") || term.startsWith("-tag:") || term.startsWith("path:")
+                || term.startsWith("-path:") || term.equals("untagged");
+    }
+
+    /**
+     * @param list  where to add value
+     * @param value a term's value, added unless empty
+     */
+    private static void addIfNotEmpty(List<String> list, String value) {
+        if (!value.isEmpty())
+            list.add(value);
+    }
+
+    /**
+     * Splits text into terms at spaces outside double quotes, dropping the quotes.
+     *
+     * @param text the search as typed
+     * @return the terms
+     */
+    private static List<String> split(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                any = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (any)
+                    terms.add(term.toString());
+                term.setLength(0);
+                any = false;
+            } else {
+                term.append(c);
+                any = true;
+            }
+        }
+        if (any)
+            terms.add(term.toString());
+        return terms;
+    }
+}
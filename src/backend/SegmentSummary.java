@@ -0,0 +1,289 @@
+package backend;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A compact summary of a sealed superlog segment: the time range of its entries and a Bloom filter of every
+ * directory its old and new paths are in (including all ancestors). A query can skip a segment if the time
+ * range does not overlap its own, or if the filter rules out the directory it is about.
+ *
+ * Summaries are built once when a segment is sealed and kept in a sidecar file next to it.
+ */
+class SegmentSummary {
+
+    /** Identifies summary files. */
+    private static final int MAGIC = 0x5345474d;
+
+    /** Format version of summary files. */
+    private static final int VERSION = 1;
+
+    /** Filter bits per distinct directory, for a false positive rate of about 1%. */
+    private static final int BITS_PER_KEY = 10;
+
+    /** Number of filter bits set per directory. */
+    private static final int HASHES = 7;
+
+    /** Separator between the old and new path of an entry. */
+    private static final String ARROW = " -> ";
+
+    /** Start of the minute of the oldest entry, -1 if the segment has no entries. */
+    private final long minMillis;
+
+    /** Start of the minute of the newest entry, -1 if the segment has no entries. */
+    private final long maxMillis;
+
+    /** Number of entries in the segment. */
+    private final long lineCount;
+
+    /** The Bloom filter bits. */
+    private final long[] bits;
+
+    /**
+     * Class constructor
+     *
+     * @param minMillis start of the minute of the oldest entry
+     * @param maxMillis start of the minute of the newest entry
+     * @param lineCount number of entries
+     * @param bits      the filter bits
+     */
+    private SegmentSummary(long minMillis, long maxMillis, long lineCount, long[] bits) {
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+        this.lineCount = lineCount;
+        this.bits = bits;
+    }
+
+    /**
+     * Summarizes a segment by reading it once.
+     *
+     * @param segment the segment
+     * @param charset the charset the segment is written in
+     * @return the summary
+     * @throws IOException if the segment can not be read
+     */
+    static SegmentSummary build(Path segment, Charset charset) throws IOException {
+        long min = Long.MAX_VALUE;
+        long max = -1;
+        long lines = 0;
+        Set<String> directories = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(segment, charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                long millis = LogTimestamp.parseSupStamp(line);
+                if (millis >= 0) {
+                    min = Math.min(min, millis);
+                    max = Math.max(max, millis);
+                }
+                int arrow = line.indexOf(ARROW);
+                if (arrow < 0)
+                    continue;
+                addDirectories(directories, oldPathOf(line, arrow));
+                addDirectories(directories, newPathOf(line, arrow));
+            }
+        }
+
+        int words = Math.max(1, (directories.size() * BITS_PER_KEY + 63) / 64);
+        long[] bits = new long[words];
+        for (String directory : directories)
+            set(bits, directory);
+        return new SegmentSummary(max < 0 ? -1 : min, max, lines, bits);
+    }
+
+    /**
+     * Reads a summary written by write().
+     *
+     * @param file the summary file
+     * @return the summary, or null if the file is missing or not a summary
+     * @throws IOException if the file can not be read
+     */
+    static SegmentSummary read(Path file) throws IOException {
+        if (!Files.exists(file))
+            return null;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            long min = in.readLong();
+            long max = in.readLong();
+            long lines = in.readLong();
+            int words = in.readInt();
+            if (words < 1)
+                return null;
+            long[] bits = new long[words];
+            for (int i = 0; i < words; i++)
+                bits[i] = in.readLong();
+            return new SegmentSummary(min, max, lines, bits);
+        } catch (java.io.EOFException e) {
+            return null; // a truncated summary is rebuilt
+        }
+    }
+
+    /**
+     * Writes the summary to file, replacing it atomically if the file system allows.
+     *
+     * @param file the summary file
+     * @throws IOException if the file can not be written
+     */
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(minMillis);
+            out.writeLong(maxMillis);
+            out.writeLong(lineCount);
+            out.writeInt(bits.length);
+            for (long word : bits)
+                out.writeLong(word);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return number of entries in the segment
+     */
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param fromMillis start of the time range
+     * @param toMillis   end of the time range, inclusive
+     * @return false if no entry of the segment was logged in the time range
+     */
+    boolean overlaps(long fromMillis, long toMillis) {
+        return maxMillis >= 0 && maxMillis + 60000L > fromMillis && minMillis <= toMillis;
+    }
+
+    /**
+     * @param directory an absolute directory path, as returned by directoryKey
+     * @return false if no entry of the segment has a path in or under directory
+     */
+    boolean mightContainDirectory(String directory) {
+        long hash = hash(directory);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = ((h1 + i * h2) & 0x7fffffffL) % size;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param line  a superlog entry
+     * @param arrow index of ARROW in line
+     * @return the old path of the entry
+     */
+    static String oldPathOf(String line, int arrow) {
+        int start = Math.min(arrow, LogTimestamp.SUP_PATTERN.length() + 1);
+        return line.substring(start, arrow);
+    }
+
+    /**
+     * @param line  a superlog entry
+     * @param arrow index of ARROW in line
+     * @return the new path of the entry
+     */
+    static String newPathOf(String line, int arrow) {
+        return line.substring(arrow + ARROW.length());
+    }
+
+    /**
+     * @param line a superlog entry
+     * @return index of the separator between its paths, -1 if it has none
+     */
+    static int arrowOf(String line) {
+        return line.indexOf(ARROW);
+    }
+
+    /**
+     * Normalizes a directory the way entries' directories are recorded.
+     *
+     * @param directory a directory
+     * @return its absolute path without a trailing separator
+     */
+    static String directoryKey(Path directory) {
+        String key = directory.toAbsolutePath().normalize().toString();
+        while (key.length() > 1 && isSeparator(key.charAt(key.length() - 1)))
+            key = key.substring(0, key.length() - 1);
+        return key;
+    }
+
+    /**
+     * @param path      an absolute path from an entry
+     * @param directory a directory key
+     * @return whether path is in or under directory
+     */
+    static boolean isUnder(String path, String directory) {
+        if (!path.startsWith(directory))
+            return false;
+        return path.length() == directory.length() || isSeparator(path.charAt(directory.length()))
+                || isSeparator(directory.charAt(directory.length() - 1));
+    }
+
+    /**
+     * Adds every directory path is in to directories, from its parent up to (not including) the root.
+     *
+     * @param directories where to add the directories
+     * @param path        an absolute path
+     */
+    private static void addDirectories(Set<String> directories, String path) {
+        for (int i = path.length() - 1; i > 0; i--) {
+            if (isSeparator(path.charAt(i)) && !isSeparator(path.charAt(i - 1))) {
+                if (!directories.add(path.substring(0, i)))
+                    return; // its ancestors were added with it
+            }
+        }
+    }
+
+    /**
+     * @param c a character
+     * @return whether c separates path elements
+     */
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == File.separatorChar;
+    }
+
+    /**
+     * Sets the filter bits of key.
+     *
+     * @param bits the filter bits
+     * @param key  a directory
+     */
+    private static void set(long[] bits, String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = ((h1 + i * h2) & 0x7fffffffL) % size;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param key a string
+     * @return a 64 bit FNV-1a hash of its characters, stable across runs so summaries stay valid
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,558 @@
+package backend;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An inverted index from tag id to the images whose file names contain the tag.
+ *
+ * Every indexed image is given a small integer ordinal, and query results are BitSets of ordinals, so combining
+ * tags with AND/OR/NOT costs a few bitmap operations instead of parsing every file name. Tags are looked up
+ * through the TagManager, so only tags the TagManager knows about are indexed.
+ *
+ * The path of every image relative to its library root, which includes its tags, is also indexed by trigram,
+ * so a substring search only checks the paths that contain every trigram of the search text.
+ *
+ * Lookups hold a read lock and changes a write lock, so any number of lookups run at once. The lock is a
+ * ReentrantReadWriteLock rather than the index's monitor, so a virtual thread waiting for it frees its carrier.
+ */
+public class TagIndex {
+
+    /** Taken for reading by lookups, which may run at once, and for writing by changes. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The tag manager that gives tags their ids. */
+    private TagManager tagManager;
+
+    /** Image with each ordinal, null for ordinals that are free. */
+    private ArrayList<ImageFile> images = new ArrayList<>();
+
+    /** Ordinal of each indexed image. */
+    private HashMap<ImageFile, Integer> ordinals = new HashMap<>();
+
+    /** Path each ordinal is currently indexed under. */
+    private ArrayList<Path> paths = new ArrayList<>();
+
+    /** Ordinal of the image at each indexed path. */
+    private HashMap<Path, Integer> byPath = new HashMap<>();
+
+    /** Ordinals of the images directly in each directory that has any. */
+    private HashMap<Path, OrdinalSet> byDirectory = new HashMap<>();
+
+    /** Path relative to the library root each ordinal is currently indexed under, for searches. */
+    private ArrayList<String> names = new ArrayList<>();
+
+    /** The relative paths in names, by trigram. */
+    private TrigramIndex grams = new TrigramIndex();
+
+    /** Tag ids each ordinal is currently indexed under. */
+    private ArrayList<int[]> imageTagIds = new ArrayList<>();
+
+    /** Images using each tag, indexed by tag id. */
+    private ArrayList<OrdinalSet> postings = new ArrayList<>();
+
+    /** Ordinals in use. */
+    private BitSet live = new BitSet();
+
+    /** Ordinals of images with no tags in their file name. */
+    private BitSet untagged = new BitSet();
+
+    /** Ordinals that were freed by remove and can be given out again. */
+    private int[] free = new int[0];
+
+    /** Number of ordinals in free. */
+    private int freeCount;
+
+    /**
+     * Class constructor
+     *
+     * @param tagManager the tag manager used to look up tag ids
+     */
+    public TagIndex(TagManager tagManager) {
+        this.tagManager = tagManager;
+    }
+
+    /**
+     * Adds f to the index, or re-indexes it if it is already there.
+     *
+     * @param f the image to index
+     * @return the ordinal of f
+     */
+    public int add(ImageFile f) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(f);
+            if (ordinal != null) {
+                reindex(ordinal, f);
+                return ordinal;
+            }
+
+            int newOrdinal;
+            if (freeCount > 0) {
+                newOrdinal = free[--freeCount];
+                images.set(newOrdinal, f);
+            } else {
+                newOrdinal = images.size();
+                images.add(f);
+                paths.add(null);
+                names.add(null);
+                imageTagIds.add(null);
+            }
+            ordinals.put(f, newOrdinal);
+            live.set(newOrdinal);
+            reindex(newOrdinal, f);
+            return newOrdinal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds every image in files to the index.
+     *
+     * @param files the images to index
+     */
+    public void addAll(Collection<ImageFile> files) {
+        lock.writeLock().lock();
+        try {
+            for (ImageFile f : files)
+                add(f);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Brings the entry for f up to date with its current file name. Does nothing if f is not indexed.
+     *
+     * @param f the image whose name changed
+     */
+    public void update(ImageFile f) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(f);
+            if (ordinal != null)
+                reindex(ordinal, f);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes f from the index. Its ordinal may be given to an image added later.
+     *
+     * @param f the image to remove
+     */
+    public void remove(ImageFile f) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(f);
+            if (ordinal == null)
+                return;
+
+            unindex(ordinal);
+            byPath.remove(paths.get(ordinal), ordinal);
+            removeFromDirectory(ordinal, paths.get(ordinal));
+            paths.set(ordinal, null);
+            grams.remove(ordinal, names.get(ordinal));
+            names.set(ordinal, null);
+            images.set(ordinal, null);
+            live.clear(ordinal);
+            if (freeCount == free.length)
+                free = Arrays.copyOf(free, Math.max(16, freeCount * 2));
+            free[freeCount++] = ordinal;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every image from the index.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            images.clear();
+            ordinals.clear();
+            paths.clear();
+            byPath.clear();
+            byDirectory.clear();
+            names.clear();
+            grams = new TrigramIndex();
+            imageTagIds.clear();
+            postings.clear();
+            live.clear();
+            untagged.clear();
+            freeCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param f an image
+     * @return the ordinal of f, or -1 if f is not indexed
+     */
+    public int ordinalOf(ImageFile f) {
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(f);
+            return ordinal == null ? -1 : ordinal;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param ordinal an ordinal
+     * @return the image with the given ordinal, or null if no image has it
+     */
+    public ImageFile imageAt(int ordinal) {
+        lock.readLock().lock();
+        try {
+            return ordinal >= 0 && ordinal < images.size() ? images.get(ordinal) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param path a file path
+     * @return the indexed image at path, or null if there is none
+     */
+    public ImageFile imageAt(Path path) {
+        lock.readLock().lock();
+        try {
+            Integer ordinal = byPath.get(path);
+            return ordinal == null ? null : images.get(ordinal);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the images in or under a directory by looking through the directories that hold images, which are
+     * far fewer than the images.
+     *
+     * @param directory a directory
+     * @return the indexed images in or under directory, in ordinal order
+     */
+    public List<ImageFile> getImagesUnder(Path directory) {
+        lock.readLock().lock();
+        try {
+            BitSet result = new BitSet();
+            for (Map.Entry<Path, OrdinalSet> entry : byDirectory.entrySet()) {
+                if (entry.getKey() != null && entry.getKey().startsWith(directory)) // null holds parentless paths.
+                    entry.getValue().orInto(result);
+            }
+            return getImages(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed images
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new bitmap of the ordinals of all indexed images
+     */
+    public BitSet all() {
+        lock.readLock().lock();
+        try {
+            return (BitSet) live.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new bitmap of the ordinals of images that have no tags
+     */
+    public BitSet untagged() {
+        lock.readLock().lock();
+        try {
+            return (BitSet) untagged.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param tag a tag
+     * @return a new bitmap of the ordinals of images tagged with tag
+     */
+    public BitSet withTag(String tag) {
+        lock.readLock().lock();
+        try {
+            BitSet result = new BitSet();
+            OrdinalSet posting = postingOf(tag);
+            if (posting != null)
+                posting.orInto(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param tag a tag
+     * @return the number of images tagged with tag
+     */
+    public int count(String tag) {
+        lock.readLock().lock();
+        try {
+            OrdinalSet posting = postingOf(tag);
+            return posting == null ? 0 : posting.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the images tagged with every tag in allOf, at least one tag in anyOf and none of the tags in noneOf.
+     * An empty allOf or anyOf does not restrict the result.
+     *
+     * @param allOf  tags the images must all have (AND)
+     * @param anyOf  tags of which the images must have at least one (OR)
+     * @param noneOf tags the images must not have (NOT)
+     * @return a new bitmap of the ordinals of the matching images
+     */
+    public BitSet query(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        lock.readLock().lock();
+        try {
+            BitSet result;
+
+            if (!anyOf.isEmpty()) {
+                result = new BitSet();
+                for (String tag : anyOf) {
+                    OrdinalSet posting = postingOf(tag);
+                    if (posting != null)
+                        posting.orInto(result);
+                }
+            } else {
+                result = (BitSet) live.clone();
+            }
+
+            List<OrdinalSet> required = new ArrayList<>(allOf.size());
+            for (String tag : allOf) {
+                OrdinalSet posting = postingOf(tag);
+                if (posting == null)
+                    return new BitSet(); // nothing has a tag nobody uses
+                required.add(posting);
+            }
+            required.sort((a, b) -> Integer.compare(a.size(), b.size())); // rarest first shrinks result fastest
+            for (OrdinalSet posting : required) {
+                if (result.isEmpty())
+                    return result;
+                posting.andInto(result);
+            }
+
+            for (String tag : noneOf) {
+                OrdinalSet posting = postingOf(tag);
+                if (posting != null)
+                    posting.andNotInto(result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the images whose path relative to their library root contains text, the same as searching their
+     * toString, without building any strings.
+     *
+     * @param text the text to look for, case sensitive
+     * @return a new bitmap of the ordinals of the matching images, every image if text is empty
+     */
+    public BitSet search(String text) {
+        lock.readLock().lock();
+        try {
+            BitSet result = (BitSet) live.clone();
+            narrow(result, text, true);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the images matching a search. Its tag terms are answered from the postings first, then its path
+     * terms are checked against the paths of the images left, the longest, usually most selective, first.
+     *
+     * @param search a parsed search
+     * @return a new bitmap of the ordinals of the matching images
+     */
+    public BitSet search(SearchQuery search) {
+        lock.readLock().lock();
+        try {
+            BitSet result;
+            if (search.getTags().isEmpty() && search.getExcludedTags().isEmpty())
+                result = (BitSet) live.clone();
+            else
+                result = query(search.getTags(), Collections.<String>emptyList(), search.getExcludedTags());
+            if (search.isUntagged())
+                result.and(untagged);
+
+            List<String> paths = new ArrayList<>(search.getPaths());
+            paths.sort((a, b) -> Integer.compare(b.length(), a.length()));
+            for (String text : paths)
+                narrow(result, text, true);
+            for (String text : search.getExcludedPaths())
+                narrow(result, text, false);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param ordinals a bitmap of ordinals
+     * @return the images with the given ordinals, in ordinal order
+     */
+    public List<ImageFile> getImages(BitSet ordinals) {
+        lock.readLock().lock();
+        try {
+            List<ImageFile> result = new ArrayList<>(ordinals.cardinality());
+            for (int i = ordinals.nextSetBit(0); i >= 0 && i < images.size(); i = ordinals.nextSetBit(i + 1)) {
+                ImageFile f = images.get(i);
+                if (f != null)
+                    result.add(f);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param tag a tag
+     * @return the posting list of tag, or null if no image is indexed under it
+     */
+    private OrdinalSet postingOf(String tag) {
+        int id = tagManager.getTagId(tag);
+        return id >= 0 && id < postings.size() ? postings.get(id) : null;
+    }
+
+    /**
+     * Keeps in result only the ordinals whose relative path does, or does not, contain text.
+     *
+     * @param result   ordinals to narrow down
+     * @param text     the text to look for, case sensitive
+     * @param contains whether to keep the paths that contain text or those that do not
+     */
+    private void narrow(BitSet result, String text, boolean contains) {
+        if (result.isEmpty() || text.isEmpty())
+            return;
+        if (contains && text.length() >= TrigramIndex.GRAM_LENGTH)
+            result.and(grams.candidates(text));
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            if (names.get(i).contains(text) != contains)
+                result.clear(i);
+        }
+    }
+
+    /**
+     * Replaces the postings of ordinal with the tags currently in f's file name.
+     *
+     * @param ordinal the ordinal of f
+     * @param f       the image
+     */
+    private void reindex(int ordinal, ImageFile f) {
+        unindex(ordinal);
+
+        Path path = f.getFilePath();
+        Path oldPath = paths.get(ordinal);
+        if (!path.equals(oldPath)) {
+            if (oldPath != null) {
+                byPath.remove(oldPath, ordinal);
+                removeFromDirectory(ordinal, oldPath);
+            }
+            byPath.put(path, ordinal);
+            OrdinalSet siblings = byDirectory.get(path.getParent());
+            if (siblings == null) {
+                siblings = new OrdinalSet();
+                byDirectory.put(path.getParent(), siblings);
+            }
+            siblings.add(ordinal, images.size());
+            paths.set(ordinal, path);
+        }
+        String name = f.toString();
+        String oldName = names.get(ordinal);
+        if (!name.equals(oldName)) {
+            if (oldName != null)
+                grams.remove(ordinal, oldName);
+            grams.add(ordinal, name, images.size());
+            names.set(ordinal, name);
+        }
+
+        List<String> tags = f.getTags();
+        int[] ids = new int[tags.size()];
+        int count = 0;
+        for (String tag : tags) {
+            int id = tagManager.getTagId(tag);
+            if (id < 0)
+                continue; // unknown or invalid tag
+            while (postings.size() <= id)
+                postings.add(null);
+            OrdinalSet posting = postings.get(id);
+            if (posting == null) {
+                posting = new OrdinalSet();
+                postings.set(id, posting);
+            }
+            posting.add(ordinal, images.size());
+            ids[count++] = id;
+        }
+        imageTagIds.set(ordinal, Arrays.copyOf(ids, count));
+        if (tags.isEmpty())
+            untagged.set(ordinal);
+    }
+
+    /**
+     * Removes ordinal from the images of the directory path is in, dropping the directory once it has none.
+     *
+     * @param ordinal the ordinal to remove
+     * @param path    the path ordinal is indexed under
+     */
+    private void removeFromDirectory(int ordinal, Path path) {
+        OrdinalSet siblings = byDirectory.get(path.getParent());
+        if (siblings == null)
+            return;
+        siblings.remove(ordinal);
+        if (siblings.size() == 0)
+            byDirectory.remove(path.getParent());
+    }
+
+    /**
+     * Removes ordinal from every posting it is in.
+     *
+     * @param ordinal the ordinal to remove
+     */
+    private void unindex(int ordinal) {
+        int[] ids = imageTagIds.get(ordinal);
+        if (ids != null) {
+            for (int id : ids)
+                postings.get(id).remove(ordinal);
+            imageTagIds.set(ordinal, null);
+        }
+        untagged.clear(ordinal);
+    }
+}
@@ -2,29 +2,70 @@ package backend;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * The tags the user has created, kept in the tags file, each with a dense id. Safe to use from several threads.
+ */
 public class TagManager {
 
+    /** Tags in insertion order; a tag's index in this list is its id. */
     private ArrayList<String> tags;
+
+    /** Maps each tag to its id (its index in tags). */
+    private HashMap<String, Integer> tagIds;
+
     private static final String FILE_NAME = "tags.txt";
     private static final Path PATH = Paths.get(FILE_NAME);
     private static final Pattern invalidPattern = Pattern.compile("[^a-zA-Z0-9\\s]");
 
+    /** The outcome of registering a single tag with addTags. */
+    public enum AddResult {
+        /** The tag was new and has been added. */
+        ADDED,
+        /** The tag already existed, nothing was done. */
+        EXISTS,
+        /** The tag contains forbidden symbols or is empty, nothing was done. */
+        INVALID
+    }
+
+    /** The tags file new tags are appended to. */
+    private final Path path;
+
     public TagManager() throws IOException {
-        this(getTagsFileBufferedReader());
+        this(PATH);
+    }
+
+    /**
+     * Reads the tags in file, creating it if it does not exist. New tags are appended to it.
+     *
+     * @param file the tags file
+     * @throws IOException if file can not be read or created
+     */
+    public TagManager(Path file) throws IOException {
+        this(getTagsFileBufferedReader(file), file);
     }
 
     public TagManager(BufferedReader reader) throws IOException {
+        this(reader, PATH);
+    }
+
+    private TagManager(BufferedReader reader, Path file) throws IOException {
+        path = file;
         tags = new ArrayList<String>();
+        tagIds = new HashMap<String, Integer>();
 
         String line = reader.readLine();
         while(line != null) {
-            tags.add(line);
+            if (!tagIds.containsKey(line)) // ignore duplicate lines in the tags file
+                register(line);
             line = reader.readLine();
         }
 
@@ -39,8 +80,8 @@ public class TagManager {
      * @return     true iff tag is not already in the list
      *
      */
-    public boolean addTag(String tag) throws IOException {
-        FileWriter writer = new FileWriter(PATH.toFile(),true);
+    public synchronized boolean addTag(String tag) throws IOException {
+        FileWriter writer = new FileWriter(path.toFile(),true);
         boolean result = this.addTag(tag, writer);
         writer.close();
         return result;
@@ -55,29 +96,138 @@ public class TagManager {
      * @return        true iff tag is not already in the list
      *
      */
-    public boolean addTag(String tag, Writer writer) throws IOException {
+    public synchronized boolean addTag(String tag, Writer writer) throws IOException {
 
-        if(tag == null || tags.contains(tag)){
+        if(tag == null || tagIds.containsKey(tag)){
             return false;
         }
 
-        Matcher matcher = invalidPattern.matcher(tag);
-        if (matcher.find() || tag.equals("")) {
+        if (!isValidTag(tag)) {
             throw new InvalidTagException("Invalid tag format");
         }
-        tags.add(tag);
+        register(tag);
         writer.append(tag).append("\n");
         return true;
     }
 
+    /**
+     * Adds every new, valid tag in tags to the list and appends them all to the tags file
+     * with a single write. Invalid tags are skipped and reported instead of thrown.
+     *
+     * @param  tags the tags to be added
+     * @return      the result for each distinct non-null tag, in iteration order of tags
+     * @throws IOException if the tags file could not be written
+     */
+    public synchronized LinkedHashMap<String, AddResult> addTags(Collection<String> tags) throws IOException {
+        return addTags(tags, false);
+    }
+
+    /**
+     * Adds every new, valid tag in tags to the list and appends them all to the tags file
+     * with a single write. The file is only opened if there is at least one new tag.
+     *
+     * @param  tags the tags to be added
+     * @param  sync if true, the tags file is forced to disk before returning
+     * @return      the result for each distinct non-null tag, in iteration order of tags
+     * @throws IOException if the tags file could not be written
+     */
+    public synchronized LinkedHashMap<String, AddResult> addTags(Collection<String> tags, boolean sync)
+            throws IOException {
+        LinkedHashMap<String, AddResult> results = checkTags(tags);
+        if (!results.containsValue(AddResult.ADDED))
+            return results;
+
+        try (FileOutputStream out = new FileOutputStream(path.toFile(), true);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out))) {
+            writeAdded(results, writer);
+            writer.flush();
+            if (sync)
+                out.getFD().sync();
+        }
+        registerAdded(results);
+        return results;
+    }
+
+    /**
+     * Adds every new, valid tag in tags to the list and appends them all to writer
+     * with a single write. Invalid tags are skipped and reported instead of thrown.
+     *
+     * @param  tags   the tags to be added
+     * @param  writer the writer to write the new tags with
+     * @return        the result for each distinct non-null tag, in iteration order of tags
+     * @throws IOException if writer fails
+     */
+    public synchronized LinkedHashMap<String, AddResult> addTags(Collection<String> tags, Writer writer)
+            throws IOException {
+        LinkedHashMap<String, AddResult> results = checkTags(tags);
+        writeAdded(results, writer);
+        registerAdded(results);
+        return results;
+    }
+
+    /**
+     * Return whether or not tag is a well formed tag, i.e. non-empty and made up
+     * of only letters, digits and whitespace.
+     *
+     * @param  tag the tag to check
+     * @return     true iff tag may be added
+     */
+    public static boolean isValidTag(String tag){
+        return tag != null && !tag.equals("") && !invalidPattern.matcher(tag).find();
+    }
+
     /**
      * Return whether or not tag is in the list
      *
      * @param  tag the tag to search for
      * @return     true iff tag is in tags list
      */
-    public boolean contains(String tag){
-        return tags.contains(tag);
+    public synchronized boolean contains(String tag){
+        return tag != null && tagIds.containsKey(tag);
+    }
+
+    /**
+     * Return the id of tag. Ids are dense: the first tag ever created has id 0,
+     * the next 1, and so on, matching the order of getTags().
+     *
+     * @param  tag the tag to look up
+     * @return     the id of tag, or -1 if tag is not in the list
+     */
+    public synchronized int getTagId(String tag){
+        if (tag == null)
+            return -1;
+        Integer id = tagIds.get(tag);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Return the tag with the given id.
+     *
+     * @param  id the id of the tag
+     * @return    the tag with the given id
+     * @throws IndexOutOfBoundsException if no tag has the given id
+     */
+    public synchronized String getTag(int id){
+        return tags.get(id);
+    }
+
+    /**
+     * Return whether or not a tag with the given id exists.
+     *
+     * @param  id the id to check
+     * @return    true iff 0 <= id < getTagCount()
+     */
+    public synchronized boolean containsId(int id){
+        return id >= 0 && id < tags.size();
+    }
+
+    /**
+     * Return the number of tags, which is also one more than the largest tag id.
+     *
+     * @return number of tags
+     */
+    public synchronized int getTagCount(){
+        return tags.size();
     }
 
     /**
@@ -85,23 +235,84 @@ public class TagManager {
      *
      * @return list of tags
      */
-    public ArrayList<String> getTags(){
-        return (ArrayList<String>)tags.clone();
+    public synchronized ArrayList<String> getTags(){
+        return new ArrayList<String>(tags);
+    }
+
+    /**
+     * Works out what addTags would do with each tag without changing anything.
+     *
+     * @param  tags the tags to check
+     * @return      the result for each distinct non-null tag
+     */
+    private LinkedHashMap<String, AddResult> checkTags(Collection<String> tags) {
+        LinkedHashMap<String, AddResult> results = new LinkedHashMap<>();
+        for (String tag : tags) {
+            if (tag == null || results.containsKey(tag))
+                continue;
+            if (tagIds.containsKey(tag))
+                results.put(tag, AddResult.EXISTS);
+            else if (isValidTag(tag))
+                results.put(tag, AddResult.ADDED);
+            else
+                results.put(tag, AddResult.INVALID);
+        }
+        return results;
+    }
+
+    /**
+     * Appends every tag marked ADDED in results to writer as one block.
+     *
+     * @param results the output of checkTags
+     * @param writer  the writer to write the tags with
+     * @throws IOException if writer fails
+     */
+    private static void writeAdded(LinkedHashMap<String, AddResult> results, Writer writer) throws IOException {
+        StringBuilder block = new StringBuilder();
+        for (Map.Entry<String, AddResult> entry : results.entrySet()) {
+            if (entry.getValue() == AddResult.ADDED)
+                block.append(entry.getKey()).append("\n");
+        }
+        if (block.length() > 0)
+            writer.append(block);
+    }
+
+    /**
+     * Registers every tag marked ADDED in results.
+     *
+     * @param results the output of checkTags
+     */
+    private void registerAdded(LinkedHashMap<String, AddResult> results) {
+        for (Map.Entry<String, AddResult> entry : results.entrySet()) {
+            if (entry.getValue() == AddResult.ADDED)
+                register(entry.getKey());
+        }
+    }
+
+    /**
+     * Gives tag the next id and adds it to the list.
+     *
+     * @param tag a tag that is not yet in the list
+     */
+    private void register(String tag) {
+        tagIds.put(tag, tags.size());
+        tags.add(tag);
     }
 
 
     /**
-     * Returns a buffered reader of the tags file.
+     * Returns a buffered reader of the tags file, creating it if it does not exist.
      *
+     * @param file the tags file
      * @return a buffered reader of the tags file
      * @throws IOException if we are unable read the tags file
      */
-    private static BufferedReader getTagsFileBufferedReader() throws IOException {
-        File tagFile = PATH.toFile();
+    private static BufferedReader getTagsFileBufferedReader(Path file) throws IOException {
+        File tagFile = file.toFile();
         if(!tagFile.isFile() && !tagFile.createNewFile())
             throw new IOException("Could not create: " + tagFile.getAbsolutePath());
 
-        return Files.newBufferedReader(PATH);
+        return Files.newBufferedReader(file);
     }
 
 }
\ No newline at end of file
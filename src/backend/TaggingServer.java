@@ -0,0 +1,644 @@
+package backend;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves the tags and images of one library over HTTP, for other programs on the same machine. It only listens
+ * on the loopback address.
+ *
+ * Parameters are passed in the query string, or as a form in the body of a POST, and every answer is JSON. Paths
+ * are relative to the library root, with '/' separators, and must stay inside it.
+ * <pre>
+ * GET  /tags                              every tag and how many indexed images have it
+ * POST /tags?tag=T                        creates a tag
+ * GET  /images?q=Q&amp;offset=N&amp;limit=N       the indexed images matching a search, see SearchQuery
+ * GET  /history?path=P&amp;limit=N             old names of an image, most recent first
+ * POST /tag?path=P&amp;tag=T&amp;tag=...            adds tags to an image, creating new ones
+ * POST /untag?path=P&amp;tag=T&amp;tag=...          removes tags from an image
+ * POST /rename?path=P&amp;name=NAME             renames an image in its directory
+ * POST /move?path=P&amp;dir=DIR                 moves an image to another directory of the library
+ * </pre>
+ * Errors are answered with a 4xx or 5xx status and {"error": reason}.
+ *
+ * Listening on the loopback address does not keep web pages out, as a browser on this machine will send their
+ * requests here. Requests whose Host header is not 127.0.0.1, localhost or [::1] are refused, so a page can not
+ * reach the server through a name of its own that it rebinds to 127.0.0.1. Requests other than GET must also
+ * carry the token made for this run in an X-ImageTagger-Token header: a page can not add such a header to a request to
+ * another origin without the server agreeing to it first, which this server never does, and other programs
+ * only learn the token from whoever started the server.
+ *
+ * Requests run on virtual threads when the JVM has them, otherwise on a fixed pool. Lookups only take the
+ * TagIndex's read lock, so they run at the same time; changes to images in one directory run one at a time, so
+ * two clients can not race to the same file name.
+ */
+public class TaggingServer implements Closeable {
+
+    /** Most images /images answers with at once. */
+    private static final int MAX_LIMIT = 10000;
+
+    /** Images /images answers with if no limit is given. */
+    private static final int DEFAULT_LIMIT = 100;
+
+    /** Number of connections the operating system queues before they are accepted. */
+    private static final int BACKLOG = 4096;
+
+    /** Header that requests other than GET must carry the token in. */
+    public static final String TOKEN_HEADER = "X-ImageTagger-Token";
+
+    /** Random bytes in a token. */
+    private static final int TOKEN_BYTES = 16;
+
+    /** Host names requests may be addressed to, without the port. */
+    private static final List<String> LOCAL_HOSTS = Arrays.asList("127.0.0.1", "localhost", "[::1]");
+
+    /** An error to answer a request with. */
+    private static class HttpError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The HTTP status. */
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /** Answers one kind of request. */
+    private interface Action {
+
+        /**
+         * @param parameters the request's parameters, each name with all its values
+         * @return the JSON answer
+         * @throws IOException if the library can not be read or changed
+         */
+        String run(Map<String, List<String>> parameters) throws IOException;
+    }
+
+    /** Renames and looks up the images. */
+    private final ImageTagger imageTagger;
+
+    /** The library root. */
+    private final Path root;
+
+    /** The HTTP server. */
+    private final HttpServer server;
+
+    /** Runs the requests. */
+    private final ExecutorService executor;
+
+    /** The token requests other than GET must carry, made for this run. */
+    private final String token;
+
+    /** Held while an image in the directory is being changed, by directory. */
+    private final Map<Path, ReentrantLock> directoryLocks = new ConcurrentHashMap<>();
+
+    /** Action for each path and method; only changed by the constructor, before the server starts. */
+    private final Map<String, Map<String, Action>> routes = new HashMap<>();
+
+    /**
+     * Class constructor. The server does not answer until start is called.
+     *
+     * @param imageTagger renames the images; its TagIndex must hold the library's images
+     * @param root        the library root
+     * @param port        the port to listen on, 0 for any free port
+     * @param threads     number of requests run at once when the JVM has no virtual threads
+     * @throws IOException if the port can not be bound
+     */
+    public TaggingServer(ImageTagger imageTagger, Path root, int port, int threads) throws IOException {
+        this.imageTagger = imageTagger;
+        this.root = root.toAbsolutePath().normalize();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = newExecutor(threads);
+        server.setExecutor(executor);
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder(2 * TOKEN_BYTES);
+        for (byte b : random)
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        this.token = hex.toString();
+
+        route("/tags", "GET", this::listTags);
+        route("/tags", "POST", this::createTag);
+        route("/images", "GET", this::findImages);
+        route("/history", "GET", this::history);
+        route("/tag", "POST", p -> change(p, image -> {
+            List<String> tags = required(p, "tag");
+            for (Map.Entry<String, TagManager.AddResult> entry : imageTagger.createTags(tags).entrySet()) {
+                if (entry.getValue() == TagManager.AddResult.INVALID)
+                    throw new HttpError(400, "Invalid tag: " + entry.getKey());
+            }
+            imageTagger.tagImage(image, tags);
+        }));
+        route("/untag", "POST", p -> change(p, image -> imageTagger.unTagImage(image, required(p, "tag"))));
+        route("/rename", "POST", p -> change(p, image -> imageTagger.renameImage(image, single(p, "name"))));
+        route("/move", "POST", this::move);
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the token requests other than GET must carry in a TOKEN_HEADER header
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Stops answering requests, giving those being answered a second to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param threads size of the pool used if the JVM has no virtual threads
+     * @return an executor that runs each request on its own virtual thread, or a fixed pool
+     */
+    private static ExecutorService newExecutor(int threads) {
+        try { // looked up by name so the code still builds and runs on JVMs without virtual threads.
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+                Thread worker = new Thread(task, "tagging-server-" + count.incrementAndGet());
+                worker.setDaemon(true);
+                return worker;
+            });
+        }
+    }
+
+    /**
+     * Answers requests for path with method by running action. One path may have an action per method.
+     *
+     * @param path   the path
+     * @param method the HTTP method
+     * @param action answers the requests
+     */
+    private void route(String path, String method, Action action) {
+        Map<String, Action> actions = routes.get(path);
+        if (actions == null) {
+            Map<String, Action> created = new HashMap<>();
+            server.createContext(path, exchange -> answer(exchange, created));
+            routes.put(path, created);
+            actions = created;
+        }
+        actions.put(method, action);
+    }
+
+    /**
+     * Answers one request.
+     *
+     * @param exchange the request
+     * @param actions  action for each method of the request's path
+     * @throws IOException if the answer can not be sent
+     */
+    private void answer(HttpExchange exchange, Map<String, Action> actions) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            if (!isLocalHost(exchange.getRequestHeaders().getFirst("Host")))
+                throw new HttpError(403, "Host not allowed");
+            if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath()))
+                throw new HttpError(404, "No such endpoint");
+            Action action = actions.get(exchange.getRequestMethod());
+            if (action == null)
+                throw new HttpError(405, "Method not allowed");
+            if (!exchange.getRequestMethod().equals("GET") && !hasToken(exchange))
+                throw new HttpError(403, "Missing or wrong " + TOKEN_HEADER + " header");
+            body = action.run(parameters(exchange));
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (NoSuchFileException e) {
+            status = 404;
+            body = error("No such file: " + e.getFile());
+        } catch (FileAlreadyExistsException e) {
+            status = 409;
+            body = error("Already exists: " + e.getFile());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            status = 500;
+            body = error(e.toString());
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @param host the Host header of a request, may be null
+     * @return whether it names this machine by its loopback address or as localhost, on any port
+     */
+    private static boolean isLocalHost(String host) {
+        if (host == null)
+            return false;
+        int colon = host.lastIndexOf(':');
+        String name = colon > host.lastIndexOf(']') ? host.substring(0, colon) : host;
+        return LOCAL_HOSTS.contains(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param exchange a request
+     * @return whether it carries this run's token
+     */
+    private boolean hasToken(HttpExchange exchange) {
+        String given = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        return given != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.US_ASCII),
+                given.getBytes(StandardCharsets.US_ASCII)); // takes as long wherever the first difference is.
+    }
+
+    /**
+     * @param exchange a request
+     * @return the parameters of the query string and, for a form, the body
+     * @throws IOException if the body can not be read
+     */
+    private static Map<String, List<String>> parameters(HttpExchange exchange) throws IOException {
+        Map<String, List<String>> parameters = new HashMap<>();
+        decodeInto(parameters, exchange.getRequestURI().getRawQuery());
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (type != null && type.startsWith("application/x-www-form-urlencoded")) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                    body.write(buffer, 0, n);
+            }
+            decodeInto(parameters, new String(body.toByteArray(), StandardCharsets.US_ASCII));
+        }
+        return parameters;
+    }
+
+    /**
+     * Adds the parameters of a URL encoded query to parameters.
+     *
+     * @param parameters where to add them
+     * @param query      the query, may be null
+     * @throws UnsupportedEncodingException never, every JVM has UTF-8
+     */
+    private static void decodeInto(Map<String, List<String>> parameters, String query)
+            throws UnsupportedEncodingException {
+        if (query == null || query.isEmpty())
+            return;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+            parameters.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+        }
+    }
+
+    /** GET /tags */
+    private String listTags(Map<String, List<String>> parameters) {
+        TagIndex index = imageTagger.getTagIndex();
+        StringBuilder json = new StringBuilder("{\"tags\":[");
+        List<String> tags = imageTagger.getTags();
+        for (int i = 0; i < tags.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"tag\":");
+            quote(json, tags.get(i));
+            json.append(",\"images\":").append(index.count(tags.get(i))).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    /** POST /tags */
+    private String createTag(Map<String, List<String>> parameters) throws IOException {
+        String tag = single(parameters, "tag");
+        TagManager.AddResult result = imageTagger.createTags(Collections.singletonList(tag)).get(tag);
+        if (result == TagManager.AddResult.INVALID)
+            throw new HttpError(400, "Invalid tag: " + tag);
+        StringBuilder json = new StringBuilder("{\"tag\":");
+        quote(json, tag);
+        return json.append(",\"created\":").append(result == TagManager.AddResult.ADDED).append('}').toString();
+    }
+
+    /** GET /images */
+    private String findImages(Map<String, List<String>> parameters) {
+        List<String> queries = parameters.get("q");
+        SearchQuery query = SearchQuery.parse(queries == null ? "" : queries.get(0));
+        int offset = number(parameters, "offset", 0, Integer.MAX_VALUE, 0);
+        int limit = number(parameters, "limit", 0, MAX_LIMIT, DEFAULT_LIMIT);
+
+        TagIndex index = imageTagger.getTagIndex();
+        BitSet matches = index.search(query);
+        BitSet page = new BitSet();
+        int skipped = 0;
+        int taken = 0;
+        for (int i = matches.nextSetBit(0); i >= 0 && taken < limit; i = matches.nextSetBit(i + 1)) {
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                page.set(i);
+                taken++;
+            }
+        }
+        StringBuilder json = new StringBuilder("{\"total\":").append(matches.cardinality()).append(",\"images\":[");
+        boolean first = true;
+        for (ImageFile image : index.getImages(page)) {
+            if (!first)
+                json.append(',');
+            first = false;
+            image(json, image);
+        }
+        return json.append("]}").toString();
+    }
+
+    /** GET /history */
+    private String history(Map<String, List<String>> parameters) throws IOException {
+        ImageFile image = imageAt(single(parameters, "path"));
+        int limit = number(parameters, "limit", 1, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        StringBuilder json = new StringBuilder("{\"path\":");
+        quote(json, relative(image.getFilePath()));
+        json.append(",\"names\":");
+        array(json, imageTagger.getOldNames(image, limit));
+        return json.append('}').toString();
+    }
+
+    /** POST /move */
+    private String move(Map<String, List<String>> parameters) throws IOException {
+        ImageFile image = imageAt(single(parameters, "path"));
+        Path destination = resolve(single(parameters, "dir"));
+        if (!Files.isDirectory(destination))
+            throw new HttpError(404, "No such directory: " + relative(destination));
+        while (true) {
+            Path source = image.getFilePath().getParent();
+            boolean sourceFirst = source.compareTo(destination) <= 0; // always lock in the same order.
+            ReentrantLock first = lockOf(sourceFirst ? source : destination);
+            ReentrantLock second = lockOf(sourceFirst ? destination : source);
+            first.lock();
+            try {
+                second.lock();
+                try {
+                    if (!source.equals(image.getFilePath().getParent()))
+                        continue; // moved by another request before the locks were taken, lock its new directory.
+                    imageTagger.moveFile(image, destination);
+                } finally {
+                    second.unlock();
+                }
+            } finally {
+                first.unlock();
+            }
+            return image(new StringBuilder(), image).toString();
+        }
+    }
+
+    /** Changes one image. */
+    private interface Change {
+
+        /**
+         * @param image the image to change
+         * @throws IOException if it can not be changed
+         */
+        void apply(ImageFile image) throws IOException;
+    }
+
+    /**
+     * Applies a change to the image named by the path parameter while holding its directory's lock. If the image
+     * is moved to another directory while the lock is awaited, the lock of its new directory is taken instead.
+     *
+     * @param parameters the request's parameters
+     * @param change     the change
+     * @return the image afterwards, as JSON
+     * @throws IOException if the image can not be changed
+     */
+    private String change(Map<String, List<String>> parameters, Change change) throws IOException {
+        ImageFile image = imageAt(single(parameters, "path"));
+        while (true) {
+            Path directory = image.getFilePath().getParent();
+            ReentrantLock lock = lockOf(directory);
+            lock.lock();
+            try {
+                if (!directory.equals(image.getFilePath().getParent()))
+                    continue; // moved by another request before the lock was taken, lock its new directory.
+                change.apply(image);
+            } finally {
+                lock.unlock();
+            }
+            return image(new StringBuilder(), image).toString();
+        }
+    }
+
+    /**
+     * A ReentrantLock rather than a monitor, because a virtual thread waiting for one frees its carrier.
+     *
+     * @param directory a directory
+     * @return the lock held while an image in directory is being changed
+     */
+    private ReentrantLock lockOf(Path directory) {
+        return directoryLocks.computeIfAbsent(directory, d -> new ReentrantLock());
+    }
+
+    /**
+     * @param path a path relative to the library root
+     * @return the indexed image at path
+     * @throws HttpError if there is none
+     */
+    private ImageFile imageAt(String path) {
+        Path resolved = resolve(path);
+        ImageFile image = imageTagger.getTagIndex().imageAt(resolved);
+        if (image == null)
+            throw new HttpError(404, "No such image: " + path);
+        return image;
+    }
+
+    /**
+     * @param path a path relative to the library root
+     * @return the absolute path
+     * @throws HttpError if path leads outside the library
+     */
+    private Path resolve(String path) {
+        Path resolved = root.resolve(path).normalize();
+        if (!resolved.startsWith(root))
+            throw new HttpError(400, "Outside the library: " + path);
+        return resolved;
+    }
+
+    /**
+     * @param path a path in the library
+     * @return path relative to the root, with '/' separators
+     */
+    private String relative(Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * @param parameters the request's parameters
+     * @param name       a parameter name
+     * @return every value of the parameter, at least one
+     * @throws HttpError if the parameter is missing
+     */
+    private static List<String> required(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        if (values == null || values.isEmpty())
+            throw new HttpError(400, "Missing parameter: " + name);
+        return values;
+    }
+
+    /**
+     * @param parameters the request's parameters
+     * @param name       a parameter name
+     * @return the parameter's only value
+     * @throws HttpError if the parameter is missing or given more than once
+     */
+    private static String single(Map<String, List<String>> parameters, String name) {
+        List<String> values = required(parameters, name);
+        if (values.size() > 1)
+            throw new HttpError(400, "Parameter given more than once: " + name);
+        return values.get(0);
+    }
+
+    /**
+     * @param parameters   the request's parameters
+     * @param name         a parameter name
+     * @param min          smallest value allowed
+     * @param max          largest value allowed, larger values are lowered to it
+     * @param defaultValue value if the parameter is missing
+     * @return the parameter's value as a number
+     * @throws HttpError if the value is not a number or below min
+     */
+    private static int number(Map<String, List<String>> parameters, String name, int min, int max,
+                              int defaultValue) {
+        if (!parameters.containsKey(name))
+            return defaultValue;
+        int value;
+        try {
+            value = Integer.parseInt(single(parameters, name));
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Not a number: " + name);
+        }
+        if (value < min)
+            throw new HttpError(400, name + " must be at least " + min);
+        return Math.min(value, max);
+    }
+
+    /**
+     * Appends an image as a JSON object of its relative path and tags.
+     *
+     * @param json  where to append
+     * @param image the image
+     * @return json
+     */
+    private StringBuilder image(StringBuilder json, ImageFile image) {
+        json.append("{\"path\":");
+        quote(json, relative(image.getFilePath()));
+        json.append(",\"tags\":");
+        List<String> tags;
+        try {
+            tags = image.getTags();
+        } catch (IllegalArgumentException e) {
+            tags = Collections.emptyList(); // a name without an extension has no tags.
+        }
+        array(json, tags);
+        return json.append('}');
+    }
+
+    /**
+     * Appends strings as a JSON array.
+     *
+     * @param json    where to append
+     * @param strings the strings
+     */
+    private static void array(StringBuilder json, List<String> strings) {
+        json.append('[');
+        for (int i = 0; i < strings.size(); i++) {
+            if (i > 0)
+                json.append(',');
+            quote(json, strings.get(i));
+        }
+        json.append(']');
+    }
+
+    /**
+     * @param message why a request failed
+     * @return the JSON answer for the failure
+     */
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        quote(json, message == null ? "" : message);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Appends a string as a JSON string.
+     *
+     * @param json   where to append
+     * @param string the string
+     */
+    private static void quote(StringBuilder json, String string) {
+        json.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < 0x20)
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,267 @@
+package backend;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Makes small previews of images and keeps them on disk, so an image is only decoded once for as long as it is
+ * not changed.
+ *
+ * A thumbnail is stored under a name derived from the image's absolute path, modification time and size, so a
+ * changed image gets a new thumbnail and the old one is simply no longer looked up. Large images are subsampled
+ * while they are decoded, so making a thumbnail never holds the full-resolution image in memory. Thumbnails are
+ * written to a temporary file and moved into place, so several threads may ask for the same one at once.
+ *
+ * Thumbnails of images that changed, moved or were renamed are never looked up again, so the cache is bounded:
+ * once the thumbnails stored take more than its limit, prune deletes the oldest until they take three quarters of
+ * it. Stale thumbnails are the oldest, and a current one that is deleted is simply made again when needed.
+ */
+public class ThumbnailCache {
+
+    /** Format thumbnails are stored in. */
+    private static final String FORMAT = "png";
+
+    /** Suffix of thumbnails being written. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Temporary files older than this were left by a writer that died, in milliseconds. */
+    private static final long ABANDONED_TMP_MILLIS = 60 * 60 * 1000;
+
+    /** Directory the thumbnails are kept in. */
+    private final Path directory;
+
+    /** Longest side of a thumbnail, in pixels. */
+    private final int size;
+
+    /** Bytes the stored thumbnails may take. */
+    private final long maxBytes;
+
+    /** Bytes stored since the cache was last pruned. */
+    private final AtomicLong storedSincePrune = new AtomicLong();
+
+    /** Set while prune runs, so only one thread prunes at a time. */
+    private final AtomicBoolean pruning = new AtomicBoolean();
+
+    /**
+     * Class constructor for a cache without a limit.
+     *
+     * @param directory directory to keep the thumbnails in, created when the first one is stored
+     * @param size      longest side of a thumbnail, in pixels
+     */
+    public ThumbnailCache(Path directory, int size) {
+        this(directory, size, Long.MAX_VALUE);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param directory directory to keep the thumbnails in, created when the first one is stored
+     * @param size      longest side of a thumbnail, in pixels
+     * @param maxBytes  bytes the stored thumbnails may take before the oldest are deleted
+     */
+    public ThumbnailCache(Path directory, int size, long maxBytes) {
+        if (size < 1)
+            throw new IllegalArgumentException("Thumbnail size must be at least 1");
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("Thumbnail cache limit must be at least 1 byte");
+        this.directory = directory;
+        this.size = size;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return longest side of a thumbnail, in pixels
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the thumbnail of an image, making it first if it is not stored yet.
+     *
+     * @param image path of the image
+     * @return path of the thumbnail, a PNG file
+     * @throws IOException if the image can not be read or decoded, or the thumbnail can not be stored
+     */
+    public Path getThumbnail(Path image) throws IOException {
+        Path thumbnail = thumbnailPath(image);
+        if (Files.isRegularFile(thumbnail))
+            return thumbnail;
+
+        BufferedImage scaled = scale(decode(image));
+        Files.createDirectories(thumbnail.getParent());
+        Path tmp = Files.createTempFile(thumbnail.getParent(), thumbnail.getFileName().toString(), TMP_SUFFIX);
+        long stored;
+        try {
+            if (!ImageIO.write(scaled, FORMAT, tmp.toFile()))
+                throw new IOException("No writer for " + FORMAT);
+            stored = Files.size(tmp);
+            Files.move(tmp, thumbnail, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        if (storedSincePrune.addAndGet(stored) > maxBytes / 4) { // pruning lists the whole cache, so not too often.
+            try {
+                prune();
+            } catch (IOException e) {
+                // the thumbnail is stored all the same, pruning is tried again once as much more is stored.
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Deletes the oldest thumbnails if the stored ones take more than the limit, until they take three quarters
+     * of it, along with temporary files left by writers that died. Returns right away if another thread is
+     * pruning.
+     *
+     * @throws IOException if the cache directory can not be listed
+     */
+    public void prune() throws IOException {
+        if (!pruning.compareAndSet(false, true))
+            return;
+        try {
+            storedSincePrune.set(0);
+            if (!Files.isDirectory(directory))
+                return;
+            List<Path> files = new ArrayList<>();
+            Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+            long now = System.currentTimeMillis();
+            long total = 0;
+            try (Stream<Path> walk = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) walk::iterator) {
+                    BasicFileAttributes read;
+                    try {
+                        read = Files.readAttributes(file, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        continue; // deleted or replaced while listing
+                    }
+                    if (!read.isRegularFile())
+                        continue;
+                    if (file.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                        if (read.lastModifiedTime().toMillis() < now - ABANDONED_TMP_MILLIS)
+                            Files.deleteIfExists(file);
+                        continue;
+                    }
+                    files.add(file);
+                    attributes.put(file, read);
+                    total += read.size();
+                }
+            }
+            if (total <= maxBytes)
+                return;
+
+            files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+            long target = maxBytes - maxBytes / 4;
+            for (Path file : files) {
+                if (total <= target)
+                    break;
+                Files.deleteIfExists(file);
+                total -= attributes.get(file).size();
+            }
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    /**
+     * @param image path of an image
+     * @return where the image's current thumbnail is stored
+     * @throws IOException if the image's attributes can not be read
+     */
+    Path thumbnailPath(Path image) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        String key = image.toAbsolutePath().normalize() + "\0" + attributes.lastModifiedTime().toMillis() + "\0"
+                + attributes.size() + "\0" + size;
+        String hash = sha1(key);
+        return directory.resolve(hash.substring(0, 2)).resolve(hash + "." + FORMAT);
+    }
+
+    /**
+     * Decodes an image, skipping rows and columns so it is at most about twice the thumbnail size.
+     *
+     * @param image path of the image
+     * @return the decoded image
+     * @throws IOException if the image can not be read or no decoder understands it
+     */
+    private BufferedImage decode(Path image) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            if (in == null)
+                throw new IOException("Unable to read " + image);
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                throw new IOException("Unknown image format: " + image);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / (2 * size));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to decode " + image, e); // decoders throw these on damaged files.
+        }
+    }
+
+    /**
+     * @param image a decoded image
+     * @return image scaled so its longest side is at most the thumbnail size
+     */
+    private BufferedImage scale(BufferedImage image) {
+        double factor = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * @param text a string
+     * @return the SHA-1 digest of text's UTF-8 bytes, in hex
+     */
+    private static String sha1(String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform has SHA-1.
+        }
+        StringBuilder hex = new StringBuilder(40);
+        for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8)))
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+}
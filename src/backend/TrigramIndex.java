@@ -0,0 +1,94 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An inverted index from every three-character substring (trigram) of a text to the ordinals whose text
+ * contains it. A substring query of three or more characters only has to look at ordinals that contain every
+ * trigram of the query, which is usually a small fraction of them; the candidates are then checked against
+ * their text, as sharing every trigram does not guarantee a match.
+ *
+ * Not thread safe for changes; TagIndex only changes it while holding its write lock, and candidates only
+ * reads.
+ */
+class TrigramIndex {
+
+    /** Length of the substrings indexed. */
+    static final int GRAM_LENGTH = 3;
+
+    /** Ordinals containing each trigram, keyed by the trigram's three chars packed into a long. */
+    private final HashMap<Long, OrdinalSet> postings = new HashMap<>();
+
+    /**
+     * Indexes ordinal under every trigram of text.
+     *
+     * @param ordinal  the ordinal
+     * @param text     its text
+     * @param universe one more than the largest ordinal in use
+     */
+    void add(int ordinal, String text, int universe) {
+        for (long gram : grams(text)) {
+            OrdinalSet posting = postings.get(gram);
+            if (posting == null) {
+                posting = new OrdinalSet();
+                postings.put(gram, posting);
+            }
+            posting.add(ordinal, universe);
+        }
+    }
+
+    /**
+     * Removes ordinal from every trigram of text, the text it was indexed under.
+     *
+     * @param ordinal the ordinal
+     * @param text    the text it was indexed under
+     */
+    void remove(int ordinal, String text) {
+        for (long gram : grams(text)) {
+            OrdinalSet posting = postings.get(gram);
+            if (posting == null)
+                continue;
+            posting.remove(ordinal);
+            if (posting.size() == 0)
+                postings.remove(gram);
+        }
+    }
+
+    /**
+     * Returns the ordinals that contain every trigram of query, a superset of those whose text contains query.
+     *
+     * @param query a substring to look for, at least GRAM_LENGTH characters long
+     * @return a new bitmap of the candidate ordinals
+     */
+    BitSet candidates(String query) {
+        List<OrdinalSet> required = new ArrayList<>();
+        for (long gram : grams(query)) {
+            OrdinalSet posting = postings.get(gram);
+            if (posting == null)
+                return new BitSet(); // no text contains this trigram
+            required.add(posting);
+        }
+        required.sort((a, b) -> Integer.compare(a.size(), b.size())); // rarest first shrinks result fastest
+        BitSet result = new BitSet();
+        required.get(0).orInto(result);
+        for (int i = 1; i < required.size() && !result.isEmpty(); i++)
+            required.get(i).andInto(result);
+        return result;
+    }
+
+    /**
+     * @param text a text
+     * @return the distinct trigrams of text, each packed into a long
+     */
+    private static Set<Long> grams(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+            grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        return grams;
+    }
+}
@@ -0,0 +1,105 @@
+package frontend;
+
+import backend.BatchProcessor;
+import backend.HistoryManager;
+import backend.ImageTagger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs the tagger without a window: java frontend.BatchMain [--threads N] [--root DIR] [FILE]
+ *
+ * Operations are read from FILE, or standard input if it is - or left out, in the format described by
+ * BatchProcessor. The result of each operation is printed to standard output as a tab separated record as soon
+ * as it is known, and a summary with the throughput to standard error at the end. This is a class of its own
+ * rather than an option of Main because the java launcher starts JavaFX, which needs a display, before the main
+ * method of an Application runs.
+ */
+public class BatchMain {
+
+    /** Exit status when every operation succeeded. */
+    private static final int EXIT_OK = 0;
+
+    /** Exit status when at least one operation failed. */
+    private static final int EXIT_FAILED = 1;
+
+    /** Exit status when the arguments or input are unusable. */
+    private static final int EXIT_USAGE = 2;
+
+    /** How to run batch mode. */
+    private static final String USAGE = "Usage: java frontend.BatchMain [--threads N] [--root DIR] [FILE]";
+
+    public static void main(String[] args) {
+        // -Dimagetagger.historyStore=true keeps image history in one store per library instead of .log files.
+        HistoryManager.setUseHistoryStore(Boolean.getBoolean("imagetagger.historyStore"));
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs batch mode.
+     *
+     * @param args the command line arguments
+     * @return the exit status
+     */
+    static int run(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path root = null;
+        String file = "-";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads") && i + 1 < args.length)
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--root") && i + 1 < args.length)
+                    root = Paths.get(args[++i]).toAbsolutePath().normalize();
+                else if (!args[i].startsWith("--") && i == args.length - 1)
+                    file = args[i];
+                else
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+            if (threads < 1)
+                throw new IllegalArgumentException("--threads must be at least 1");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+        long start = System.nanoTime();
+        BatchProcessor processor;
+        try (BufferedReader input = file.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            processor = new BatchProcessor(new ImageTagger(), root, threads);
+            processor.run(input, result -> out.println(result)); // println locks out, so records never interleave.
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("Batch stopped: " + e.getMessage());
+            return EXIT_USAGE;
+        } finally {
+            try {
+                HistoryManager.flushAll();
+                HistoryManager.closeHistoryStores();
+            } catch (IOException e) {
+                System.err.println("Unable to write history: " + e.getMessage());
+            }
+        }
+        out.flush();
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        long processed = processor.getProcessedCount();
+        System.err.printf("%d operations, %d failed, in %.2f s (%.0f operations/s, %d threads)%n",
+                processed, processor.getFailedCount(), seconds, processed / seconds, threads);
+        return processor.getFailedCount() == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+}
@@ -4,12 +4,22 @@ import backend.HistoryManager;
 import backend.ImageFile;
 import backend.ImageTagger;
 import backend.InvalidTagException;
+import backend.LibraryScanner;
+import backend.LibraryWatcher;
+import backend.RenameResult;
+import backend.SearchQuery;
+import backend.TagIndex;
+import backend.ThumbnailCache;
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -19,9 +29,11 @@ import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.DirectoryChooser;
+import javafx.util.Duration;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
@@ -29,7 +41,8 @@ import java.net.URL;
 import java.nio.file.*;
 import java.util.*;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /** The class used to control view and model */
 public class Controller implements Initializable {
@@ -100,6 +113,10 @@ public class Controller implements Initializable {
     @FXML
     private Button exitSearch;
 
+    /** Shows how many images the search in searchInput matches. */
+    @FXML
+    private Label searchCount;
+
     /** Currently selected imageFile */
     private ImageFile selectedImage = null;
 
@@ -112,9 +129,69 @@ public class Controller implements Initializable {
     /** Directory user has opened. */
     private Path currentDir;
 
+    /** Shows what the directory scan has found so far. */
+    @FXML
+    private Label scanStatus;
+
+    /** Spins while a directory is being scanned. */
+    @FXML
+    private ProgressIndicator scanProgress;
+
+    /** The scan of the directory the user opened last, null before one is opened. */
+    private LibraryScanner scanner;
+
+    /** Watches the directory the user opened for changes made by other programs, null until it is scanned. */
+    private LibraryWatcher watcher;
+
+    /** Number of directories scanned at once. */
+    private static final int SCAN_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /** Directory the snapshots of opened directories are kept in between scans. */
+    private static final Path CATALOG_DIR = Paths.get("catalogs");
+
+    /** How often images found by a scan are added to the list, in milliseconds. */
+    private static final long SCAN_PUBLISH_INTERVAL_MILLIS = 100;
+
+    /** Directory thumbnails are kept in between runs. */
+    private static final Path THUMBNAIL_DIR = Paths.get("thumbnails");
+
+    /** Bytes the thumbnails kept between runs may take. */
+    private static final long THUMBNAIL_CACHE_BYTES = 256L * 1024 * 1024;
+
+    /** Longest side of the thumbnails in the image list, in pixels. */
+    private static final int THUMBNAIL_SIZE = 48;
+
+    /** Number of thumbnails decoded at once. */
+    private static final int THUMBNAIL_THREADS = Math.max(1, Math.min(4,
+            Runtime.getRuntime().availableProcessors() / 2));
+
+    /** Loads the thumbnails shown in the image list. */
+    private ThumbnailLoader thumbnailLoader;
+
+    /** Most bytes of decoded previews of selected images kept in memory. */
+    private static final long PREVIEW_CACHE_BYTES = Math.min(256L * 1024 * 1024,
+            Runtime.getRuntime().maxMemory() / 4);
+
+    /** Loads the preview of the selected image and its neighbours. */
+    private final PreviewCache previews = new PreviewCache(PREVIEW_CACHE_BYTES);
+
+    /** How long typing in searchInput must pause before the search runs. */
+    private static final Duration SEARCH_DELAY = Duration.millis(150);
+
+    /** Runs the search once typing in searchInput pauses. */
+    private final PauseTransition searchDelay = new PauseTransition(SEARCH_DELAY);
+
+    /** Number of searches started, so the result of one that was overtaken is dropped. */
+    private int searchGeneration;
+
+    /** Maximum number of previous names offered when reverting tags. */
+    private static final int REVERT_CHOICES = 100;
+
     /**
      * Opens a directory chooser.
-     * Populates all images in and under selected directory to ListView.\
+     * Populates all images in and under selected directory to ListView.
+     * The directory is scanned in the background and images appear in batches as they are found; choosing
+     * another directory cancels a scan that is still running.
      *
      * @param event this is ignored (necessary for SceneBuilder callback)
      */
@@ -123,43 +200,190 @@ public class Controller implements Initializable {
         DirectoryChooser directoryChooser = new DirectoryChooser();
         File selectedDirectory = directoryChooser.showDialog(null);
         if (selectedDirectory != null && selectedDirectory.isDirectory()) {
+            if (scanner != null)
+                scanner.cancel(); // batches of the old scan still queued for the FX thread are dropped.
+            stopWatching();
             currentDir = selectedDirectory.toPath();
             imageList.clear(); // Clear the image list.
+            imageTagger.getTagIndex().clear();
             searchInput.setText("");
             // This triggers the imageList's changeListener which in turn, clears other elements.
 
             Path directoryPath = Paths.get(selectedDirectory.getAbsolutePath());
-            try (Stream<Path> files = Files.walk(directoryPath)) {
-                files.forEach(path -> {
-                    if (matcher.matches(path)) {
-                        imageList.add(new ImageFile(path, currentDir));
-                    }
-                });
-            } catch (IOException e) {
-                PopUpGenerator.generateErrorMessage("Unable to open Directory or subDirectory");
-                return;
-            }
-            updateTags();
+            LibraryScanner libraryScanner = new LibraryScanner(directoryPath, matcher, SCAN_PARALLELISM);
+            libraryScanner.setCatalogDirectory(CATALOG_DIR); // unchanged directories are not listed.
+            scanner = libraryScanner;
+            startScan(libraryScanner);
         }
     }
 
     /**
-     * Look through each image in imageList and add any pre-existing tags.
+     * Runs scanner on a background thread. Each batch of images it finds is added to imageList with one change,
+     * after its tags are registered and it is indexed, and the scan's progress is shown next to the image list.
+     *
+     * @param libraryScanner the scanner to run
      */
-    private void updateTags() {
-        boolean invalidTagFound = false;
-        for (ImageFile image : imageList) {
-            ArrayList<String> imageTags = ImageTagger.parseTags(image);
-            try {
-                if(!imageTagger.createTagsIfNotExist(imageTags))
-                    invalidTagFound = true;
-            } catch (IOException e) {
-                PopUpGenerator.generateErrorMessage(e.getMessage());
-                return;
+    private void startScan(LibraryScanner libraryScanner) {
+        boolean[] reportedInvalidTags = {false};
+        Task<Boolean> task = new Task<Boolean>() {
+            @Override
+            protected Boolean call() throws Exception {
+                return libraryScanner.scan(batch -> {
+                    Set<String> foundTags = ImageTagger.discoverTags(batch); // parsed here, not on the FX thread.
+                    updateMessage("Scanned " + libraryScanner.getScannedFileCount() + " files, found "
+                            + libraryScanner.getFoundImageCount() + " images...");
+                    Platform.runLater(() -> {
+                        if (libraryScanner != scanner || libraryScanner.isCancelled())
+                            return; // another directory was opened since.
+                        if (!addImages(batch, foundTags) && !reportedInvalidTags[0]) {
+                            reportedInvalidTags[0] = true;
+                            PopUpGenerator.generateErrorMessage("Ignoring invalid tag(s) that were detected");
+                        }
+                        imageList.addAll(batch);
+                    });
+                }, SCAN_PUBLISH_INTERVAL_MILLIS);
             }
+        };
+
+        scanStatus.textProperty().bind(task.messageProperty());
+        scanProgress.setVisible(true);
+        task.setOnSucceeded(e -> {
+            if (libraryScanner != scanner)
+                return;
+            finishScan();
+            if (!task.getValue())
+                return; // cancelled
+            scanStatus.setText(libraryScanner.getFoundImageCount() + " images");
+            startWatching(libraryScanner.getRoot());
+            if (libraryScanner.getFailureCount() > 0)
+                PopUpGenerator.generateErrorMessage("Unable to open " + libraryScanner.getFailureCount()
+                        + " subdirectories. First failure: " + libraryScanner.getFirstFailure().getMessage());
+            migrateImageLogs(libraryScanner.getRoot());
+        });
+        task.setOnFailed(e -> {
+            if (libraryScanner != scanner)
+                return;
+            finishScan();
+            PopUpGenerator.generateErrorMessage("Unable to open Directory or subDirectory");
+        });
+
+        Thread worker = new Thread(task, "library-scan");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Starts applying changes other programs make under root to the image list.
+     *
+     * @param root the directory the user opened
+     */
+    private void startWatching(Path root) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:**.{jpg,jpeg,png,gif,bmp}");
+        LibraryWatcher[] self = new LibraryWatcher[1];
+        LibraryWatcher libraryWatcher = new LibraryWatcher(root, matcher, imageTagger.getTagIndex(),
+                changes -> Platform.runLater(() -> applyChanges(self[0], changes)));
+        self[0] = libraryWatcher;
+        try {
+            libraryWatcher.start();
+        } catch (IOException e) {
+            return; // the list is not kept up to date, reopening the directory still picks up changes.
+        }
+        watcher = libraryWatcher;
+    }
+
+    /**
+     * Stops watching the directory opened before.
+     */
+    private void stopWatching() {
+        if (watcher == null)
+            return;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // nothing more will be reported either way.
         }
-        if(invalidTagFound)
+        watcher = null;
+    }
+
+    /**
+     * Adds the images another program created to the image list and removes those it deleted, in one change each.
+     * A rename shows up as one of each. An image is only removed if its file is still missing, as this app may
+     * have renamed it since the change was worked out.
+     *
+     * @param source  the watcher that reported the changes
+     * @param changes the changes
+     */
+    private void applyChanges(LibraryWatcher source, LibraryWatcher.Changes changes) {
+        if (source != watcher)
+            return; // another directory was opened since.
+        List<ImageFile> added = new ArrayList<>();
+        for (ImageFile image : changes.getAdded()) {
+            if (imageTagger.getTagIndex().imageAt(image.getFilePath()) == null)
+                added.add(image); // not listed yet
+        }
+        if (!addImages(added, ImageTagger.discoverTags(added)))
             PopUpGenerator.generateErrorMessage("Ignoring invalid tag(s) that were detected");
+        imageList.addAll(added);
+
+        Set<ImageFile> removed = new HashSet<>();
+        for (ImageFile image : changes.getRemoved()) {
+            if (!Files.exists(image.getFilePath(), LinkOption.NOFOLLOW_LINKS))
+                removed.add(image);
+        }
+        if (!removed.isEmpty()) {
+            for (ImageFile image : removed)
+                imageTagger.getTagIndex().remove(image);
+            imageList.removeAll(removed);
+        }
+    }
+
+    /**
+     * Hides the scan progress.
+     */
+    private void finishScan() {
+        scanStatus.textProperty().unbind();
+        scanStatus.setText("");
+        scanProgress.setVisible(false);
+    }
+
+    /**
+     * Imports the .log files of an opened library into its history store in the background, if history stores
+     * are in use and the library's logs were not imported before. The .log files are kept unless the
+     * imagetagger.deleteImportedLogs system property is true.
+     *
+     * @param root the library root
+     */
+    private void migrateImageLogs(Path root) {
+        if (!HistoryManager.isUsingHistoryStore())
+            return;
+        Task<Integer> task = new Task<Integer>() {
+            @Override
+            protected Integer call() throws IOException {
+                return HistoryManager.migrateImageLogsOnce(root, Boolean.getBoolean("imagetagger.deleteImportedLogs"));
+            }
+        };
+        task.setOnFailed(e -> PopUpGenerator.generateErrorMessage("Unable to import image history: "
+                + task.getException().getMessage()));
+        Thread worker = new Thread(task, "history-import");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Indexes newly found images after registering the tags found in their names. Each distinct tag is checked
+     * once and the new ones are written to the tags file together.
+     *
+     * @param images    the images found
+     * @param foundTags their distinct tags, see ImageTagger.discoverTags
+     * @return false if an invalid tag was found
+     */
+    private boolean addImages(List<ImageFile> images, Set<String> foundTags) {
+        try {
+            return imageTagger.addImages(images, foundTags);
+        } catch (IOException e) {
+            PopUpGenerator.generateErrorMessage(e.getMessage());
+            return true;
+        }
     }
 
 
@@ -183,10 +407,22 @@ public class Controller implements Initializable {
 
         unusedTagViewList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE); //tag list  multi-selection
         imageTagViewList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        imagesInDirectory.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE); // allows bulk tagging.
+
+        // renames done by background workers must update bound UI labels on the FX thread.
+        ImageFile.setPropertyExecutor(update -> {
+            if (Platform.isFxApplicationThread())
+                update.run();
+            else
+                Platform.runLater(update);
+        });
 
         tagListsHandler = new TagListsHandler(imageTagger);
         tagListsHandler.bindToListViews(unusedTagViewList, imageTagViewList); // Bind tag ListViews to the 2 tag lists.
         imagesInDirectory.setItems(filteredImages); // Bind images ListView to the list of imageFiles filteredImages.
+        thumbnailLoader = new ThumbnailLoader(new ThumbnailCache(THUMBNAIL_DIR, THUMBNAIL_SIZE, THUMBNAIL_CACHE_BYTES),
+                THUMBNAIL_THREADS);
+        setupThumbnailCells();
         setupSearchListener(); //Set filteredImages to listen to changes in search TextField.
 
         path.prefWidthProperty().bind(pathPane.widthProperty());
@@ -199,6 +435,7 @@ public class Controller implements Initializable {
             public void changed(ObservableValue<? extends ImageFile> observable, ImageFile oldValue, ImageFile newValue) {
                 selectedImage = newValue;
                 if (selectedImage == null) {
+                    previews.retain(Collections.<Path>emptySet());
                     imageView.setImage(null);
                     tagListsHandler.clearTagLists();
                     path.textProperty().unbind(); //unbind path label from selectedImage
@@ -206,13 +443,75 @@ public class Controller implements Initializable {
                     return;
                 }
                 path.textProperty().bind(selectedImage.getPathProperty()); //bind path label to new selected item
-                Image image = new Image(selectedImage.getFilePath().toUri().toString());
-                imageView.setImage(image);
+                showPreview();
                 tagListsHandler.setUpTagLists(selectedImage); //set up and unusedTagViewList and imageTagViewList
             }
         });
     }
 
+    /**
+     * Shows the preview of selectedImage, loaded in the background at the size of imageView, and starts loading
+     * the images before and after it in the list so stepping through the list does not wait for them. Loads
+     * for images that are no longer next to the selection are cancelled.
+     */
+    private void showPreview() {
+        double width = imageView.getFitWidth();
+        double height = imageView.getFitHeight();
+        int index = imagesInDirectory.getSelectionModel().getSelectedIndex();
+        List<Path> neighbours = new ArrayList<>(2);
+        if (index >= 0 && index + 1 < filteredImages.size())
+            neighbours.add(filteredImages.get(index + 1).getFilePath());
+        if (index > 0)
+            neighbours.add(filteredImages.get(index - 1).getFilePath());
+
+        Set<Path> wanted = new HashSet<>(neighbours);
+        wanted.add(selectedImage.getFilePath());
+        previews.retain(wanted);
+        imageView.setImage(previews.get(selectedImage.getFilePath(), width, height));
+        for (Path neighbour : neighbours)
+            previews.get(neighbour, width, height);
+    }
+
+    /**
+     * Shows a thumbnail next to each image in imagesInDirectory. A cell shows a blank placeholder until its
+     * thumbnail is loaded in the background, and cancels the request when it is reused for another image.
+     */
+    private void setupThumbnailCells() {
+        Image placeholder = new WritableImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        imagesInDirectory.setCellFactory(list -> new ListCell<ImageFile>() {
+            private final ImageView thumbnail = new ImageView();
+
+            private Future<?> request;
+
+            {
+                thumbnail.setFitWidth(THUMBNAIL_SIZE);
+                thumbnail.setFitHeight(THUMBNAIL_SIZE);
+                thumbnail.setPreserveRatio(true);
+            }
+
+            @Override
+            protected void updateItem(ImageFile item, boolean empty) {
+                super.updateItem(item, empty);
+                if (request != null) {
+                    request.cancel(false);
+                    request = null;
+                }
+                if (empty || item == null) {
+                    setText(null);
+                    setGraphic(null);
+                    return;
+                }
+                setText(item.toString());
+                thumbnail.setImage(placeholder);
+                setGraphic(thumbnail);
+                request = thumbnailLoader.request(item.getFilePath(), image -> {
+                    if (getItem() == item)
+                        thumbnail.setImage(image);
+                });
+            }
+        });
+    }
+
     /**
      * Open dialog box and allow user to input a new tag name.
      *
@@ -233,13 +532,19 @@ public class Controller implements Initializable {
     }
 
     /**
-     * Adds tag(s) to selectedImage.
+     * Adds tag(s) to selectedImage, or to every selected image if more than one is selected.
      *
      * @param event this is ignored (necessary for SceneBuilder callback)
      */
     public void addTagsAction(ActionEvent event) {
         ObservableList<String> selectedTags = unusedTagViewList.getSelectionModel().getSelectedItems();
         if (selectedTags == null || selectedImage == null) return;
+        List<ImageFile> selectedImages = new ArrayList<>(imagesInDirectory.getSelectionModel().getSelectedItems());
+        if (selectedImages.size() > 1) {
+            List<String> tags = new ArrayList<>(selectedTags);
+            runBulkRename("tag", () -> imageTagger.tagImages(selectedImages, tags));
+            return;
+        }
         try {
             imageTagger.tagImage(selectedImage, selectedTags);
         } catch (IOException e) {
@@ -253,13 +558,19 @@ public class Controller implements Initializable {
     }
 
     /**
-     * Remove tag(s) from selectedImage.
+     * Remove tag(s) from selectedImage, or from every selected image if more than one is selected.
      *
      * @param event this is ignored (necessary for SceneBuilder callback)
      */
     public void removeTagsAction(ActionEvent event) {
         ObservableList<String> selectedTags = imageTagViewList.getSelectionModel().getSelectedItems();
         if (selectedTags == null || selectedImage == null) return;
+        List<ImageFile> selectedImages = new ArrayList<>(imagesInDirectory.getSelectionModel().getSelectedItems());
+        if (selectedImages.size() > 1) {
+            List<String> tags = new ArrayList<>(selectedTags);
+            runBulkRename("remove tags from", () -> imageTagger.unTagImages(selectedImages, tags));
+            return;
+        }
         try {
             imageTagger.unTagImage(selectedImage, selectedTags);
         } catch (IOException e) {
@@ -272,6 +583,41 @@ public class Controller implements Initializable {
         imagesInDirectory.refresh();
     }
 
+    /**
+     * Runs a bulk rename off the FX thread, then refreshes the UI and reports the images that failed.
+     *
+     * @param action what the rename does, used in the error message.
+     * @param rename the bulk rename to run.
+     */
+    private void runBulkRename(String action, Callable<List<RenameResult>> rename) {
+        Task<List<RenameResult>> task = new Task<List<RenameResult>>() {
+            @Override
+            protected List<RenameResult> call() throws Exception {
+                return rename.call();
+            }
+        };
+        task.setOnSucceeded(e -> {
+            imagesInDirectory.refresh();
+            tagListsHandler.setUpTagLists(selectedImage);
+
+            List<RenameResult> failed = new ArrayList<>();
+            for (RenameResult result : task.getValue()) {
+                if (!result.isSuccess())
+                    failed.add(result);
+            }
+            if (!failed.isEmpty())
+                PopUpGenerator.generateErrorMessage("Unable to " + action + " " + failed.size() + " image(s). "
+                        + "First failure: " + failed.get(0).getOldPath().getFileName()
+                        + ". Reason: " + failed.get(0).getError().getLocalizedMessage());
+        });
+        task.setOnFailed(e -> PopUpGenerator.generateErrorMessage("Unable to " + action + " images. Reason: "
+                + task.getException().getLocalizedMessage()));
+
+        Thread worker = new Thread(task, "bulk-rename");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
     /**
      * Allow user to select a previous names of selectedImage from a list previous names.
      * Revert name of selectedImage.
@@ -282,7 +628,7 @@ public class Controller implements Initializable {
         if (selectedImage == null) return;
         List<String> choices;
         try {
-            choices = imageTagger.getOldNames(selectedImage);
+            choices = imageTagger.getOldNames(selectedImage, REVERT_CHOICES);
         } catch (IOException e) {
             PopUpGenerator.generateErrorMessage("Unable to tag image. Reason: " + e.getLocalizedMessage());
             return;
@@ -326,9 +672,10 @@ public class Controller implements Initializable {
             PopUpGenerator.generateErrorMessage("Unable to move file to destination.");
             return;
         }
-        if (!selectedDirectory.toPath().startsWith(currentDir.toAbsolutePath()))
+        if (!selectedDirectory.toPath().startsWith(currentDir.toAbsolutePath())) {
+            imageTagger.getTagIndex().remove(selectedImage);
             imageList.remove(selectedImage); // remove image from imageList if it is moved outside of currentDir.
-        else
+        } else
             imagesInDirectory.refresh(); //refresh to show changes in UI.
     }
 
@@ -371,16 +718,58 @@ public class Controller implements Initializable {
     /**
      * Sets filter of filteredImage to listen to searchInput.
      * Thus, as user types into searchInput, filteredImage filters imagesInDirectory.
+     * The search runs once typing pauses, on a background thread, using the TagIndex's trigram index; images
+     * added while a search is shown are filtered by the next one, started at most SEARCH_DELAY later.
      */
     private void setupSearchListener() {
+        searchDelay.setOnFinished(e -> runSearch());
         searchInput.textProperty().addListener(observable -> {
             String filter = searchInput.getText();
             if (filter == null || filter.length() == 0) {
+                searchDelay.stop();
+                searchGeneration++; // drop a search still running.
                 filteredImages.setPredicate(s -> true);
+                searchCount.setText("");
             } else {
-                filteredImages.setPredicate(s -> s.toString().contains(filter));
+                searchDelay.playFromStart();
             }
         });
+        imageList.addListener((ListChangeListener<ImageFile>) change -> {
+            String filter = searchInput.getText();
+            if (filter != null && filter.length() > 0 && searchDelay.getStatus() != Animation.Status.RUNNING)
+                searchDelay.playFromStart();
+        });
+    }
+
+    /**
+     * Runs the search in searchInput off the FX thread, then filters filteredImages down to the matches and shows
+     * their number, unless another search was started since. See SearchQuery for what can be searched for.
+     */
+    private void runSearch() {
+        SearchQuery query = SearchQuery.parse(searchInput.getText());
+        int generation = ++searchGeneration;
+        TagIndex index = imageTagger.getTagIndex();
+        Task<Set<ImageFile>> task = new Task<Set<ImageFile>>() {
+            @Override
+            protected Set<ImageFile> call() {
+                // the matching images themselves, so the predicate needs neither the index nor its lock.
+                Set<ImageFile> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+                matches.addAll(index.getImages(index.search(query)));
+                return matches;
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (generation != searchGeneration)
+                return;
+            Set<ImageFile> matches = task.getValue();
+            int count = matches.size();
+            searchCount.setText(count == 1 ? "1 match" : count + " matches");
+            filteredImages.setPredicate(matches::contains);
+        });
+
+        Thread worker = new Thread(task, "image-search");
+        worker.setDaemon(true);
+        worker.start();
     }
 
     /**
@@ -398,14 +787,17 @@ public class Controller implements Initializable {
      * @param event this is ignored (necessary for SceneBuilder callback)
      */
     public void showLogAction(ActionEvent event) {
-        String content;
-        try {
-            content = HistoryManager.readSupLog();
-        } catch (IOException e) {
-            PopUpGenerator.generateErrorMessage("Unable to show log history file.");
-            return;
-        }
-        PopUpGenerator.generateTextAreaDialog("Log History", "History of all renames...",
-                content,"Format: DD.MM.YY HH:mm OldName -> NewName");
+        Task<PagedLogLines> task = new Task<PagedLogLines>() {
+            @Override
+            protected PagedLogLines call() throws IOException {
+                return new PagedLogLines(); // lines are loaded page by page as they are scrolled into view.
+            }
+        };
+        task.setOnSucceeded(e -> PopUpGenerator.generateListDialog("Log History", "History of all renames...",
+                task.getValue(),"Format: DD.MM.YY HH:mm OldName -> NewName"));
+        task.setOnFailed(e -> PopUpGenerator.generateErrorMessage("Unable to show log history file."));
+        Thread worker = new Thread(task, "log-count");
+        worker.setDaemon(true);
+        worker.start();
     }
 }
@@ -1,5 +1,6 @@
 package frontend;
 
+import backend.HistoryManager;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -20,7 +21,15 @@ public class Main extends Application {
     }
 
 
+    @Override
+    public void stop() throws Exception {
+        HistoryManager.closeHistoryStores();
+    }
+
     public static void main(String[] args) {
+        // -Dimagetagger.historyStore=true keeps image history in one store per library instead of .log files.
+        // -Dimagetagger.deleteImportedLogs=true also deletes a library's .log files once they are imported.
+        HistoryManager.setUseHistoryStore(Boolean.getBoolean("imagetagger.historyStore"));
         launch(args);
     }
 }
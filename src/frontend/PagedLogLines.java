@@ -0,0 +1,127 @@
+package frontend;
+
+import backend.HistoryManager;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A read-only list of the superlog's lines that loads them a page at a time as a ListView asks for them.
+ * Only the most recently used pages are kept in memory, so the log can be scrolled through whatever its size.
+ *
+ * Pages are read on a background thread. Until a page is loaded its lines read as a placeholder, and once it is
+ * loaded the list reports them as replaced, so the ListView redraws them. The list is only used on the FX thread.
+ */
+class PagedLogLines extends ObservableListBase<String> {
+
+    /** Number of lines loaded at once. */
+    private static final int PAGE_SIZE = 500;
+
+    /** Number of pages kept in memory. */
+    private static final int CACHED_PAGES = 16;
+
+    /** Shown for a line whose page is still being read. */
+    private static final String LOADING = "Loading...";
+
+    /** Reads pages, one at a time. */
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(task -> {
+        Thread worker = new Thread(task, "log-pages");
+        worker.setDaemon(true);
+        return worker;
+    });
+
+    /** Number of lines in the superlog when the list was created. */
+    private final int size;
+
+    /** Recently used pages, least recently used first. */
+    private final Map<Long, List<String>> pages = new LinkedHashMap<Long, List<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<String>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    /** Pages being read. */
+    private final Set<Long> loading = new HashSet<>();
+
+    /**
+     * Class constructor. Counts the lines written to the superlog so far, so it should not be called on the FX
+     * thread.
+     *
+     * @throws IOException if the superlog can not be read
+     */
+    PagedLogLines() throws IOException {
+        this.size = (int) Math.min(Integer.MAX_VALUE, HistoryManager.getWrittenSupLogLineCount());
+    }
+
+    /**
+     * @param index line number, 0 being the oldest entry
+     * @return the line, or a placeholder while its page is being read
+     */
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Line " + index + " of " + size);
+        long page = index / PAGE_SIZE;
+        List<String> lines = pages.get(page);
+        if (lines == null) {
+            load(page);
+            return LOADING;
+        }
+        int line = index % PAGE_SIZE;
+        return line < lines.size() ? lines.get(line) : "";
+    }
+
+    /**
+     * Reads a page on the loader thread, unless it is being read already, and shows its lines once it is read.
+     *
+     * @param page the page number
+     */
+    private void load(long page) {
+        if (!loading.add(page))
+            return;
+        loader.execute(() -> {
+            List<String> lines;
+            try {
+                lines = HistoryManager.readWrittenSupLog(page * PAGE_SIZE, PAGE_SIZE);
+            } catch (IOException e) {
+                lines = Collections.singletonList("Unable to read this part of the log: " + e.getLocalizedMessage());
+            }
+            List<String> loaded = lines;
+            Platform.runLater(() -> loaded(page, loaded));
+        });
+    }
+
+    /**
+     * Keeps a page that was read and tells listeners its lines changed.
+     *
+     * @param page  the page number
+     * @param lines its lines
+     */
+    private void loaded(long page, List<String> lines) {
+        loading.remove(page);
+        pages.put(page, lines);
+        int from = (int) (page * PAGE_SIZE);
+        int to = (int) Math.min(size, from + (long) PAGE_SIZE);
+        beginChange();
+        nextReplace(from, to, Collections.nCopies(to - from, LOADING));
+        endChange();
+    }
+
+    /**
+     * @return number of lines in the superlog when the list was created
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+}
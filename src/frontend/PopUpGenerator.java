@@ -1,5 +1,6 @@
 package frontend;
 
+import javafx.collections.ObservableList;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
@@ -92,4 +93,38 @@ public class PopUpGenerator {
 
         alert.showAndWait();
     }
+
+    /**
+     * @param title title
+     * @param header header
+     * @param lines the lines to show, only the visible ones are requested from the list
+     * @param labelText dialog label
+     *
+     * Open a dialog window with a list of lines.
+     */
+    static void generateListDialog(String title, String header, ObservableList<String> lines, String labelText) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(header);
+
+        ListView<String> listView = new ListView<>(lines);
+        listView.setFixedCellSize(24); // cells of equal height let the ListView jump to any line without measuring
+
+        Label label = new Label(labelText);
+
+        listView.setMaxWidth(Double.MAX_VALUE);
+        listView.setMaxHeight(Double.MAX_VALUE);
+        GridPane.setVgrow(listView, Priority.ALWAYS);
+        GridPane.setHgrow(listView, Priority.ALWAYS);
+
+        GridPane expContent = new GridPane();
+        expContent.setMaxWidth(Double.MAX_VALUE);
+        expContent.add(label, 0, 0);
+        expContent.add(listView, 0, 1);
+
+        alert.setResizable(true);
+        alert.getDialogPane().setContent(expContent);
+
+        alert.showAndWait();
+    }
 }
@@ -0,0 +1,139 @@
+package frontend;
+
+import javafx.scene.image.Image;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Loads the previews shown for the selected image in the background, decoded at the size they are shown at
+ * rather than at full resolution, and keeps recently loaded ones until their decoded pixels reach a byte budget.
+ * Loads that are no longer wanted, because the selection moved on, can be cancelled.
+ *
+ * Only used on the FX thread, so it needs no locking.
+ */
+class PreviewCache {
+
+    /** Bytes per decoded pixel. */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** Most bytes of decoded pixels kept. */
+    private final long maxBytes;
+
+    /** Bytes of decoded pixels kept now. */
+    private long bytes;
+
+    /** Loaded previews by image path, least recently used first. */
+    private final Map<Path, Image> previews = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Previews still loading, by image path. */
+    private final Map<Path, Image> loading = new HashMap<>();
+
+    /**
+     * Class constructor
+     *
+     * @param maxBytes most bytes of decoded pixels to keep
+     */
+    PreviewCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the preview of an image, starting to load it if it is not loaded or loading at a large enough
+     * size. An image still loading shows once it is done when put in an ImageView.
+     *
+     * @param image  path of the image
+     * @param width  width the preview is shown at, 0 for the image's own width
+     * @param height height the preview is shown at, 0 for the image's own height
+     * @return the preview, possibly still loading
+     */
+    Image get(Path image, double width, double height) {
+        Image preview = previews.get(image);
+        if (preview != null && fits(preview, width, height))
+            return preview;
+        preview = loading.get(image);
+        if (preview != null && fits(preview, width, height))
+            return preview;
+        if (preview != null)
+            preview.cancel();
+
+        Image started = new Image(image.toUri().toString(), width, height, true, true, true);
+        loading.put(image, started);
+        started.progressProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue.doubleValue() < 1 || loading.get(image) != started)
+                return;
+            loading.remove(image);
+            if (!started.isError())
+                keep(image, started);
+        });
+        return started;
+    }
+
+    /**
+     * Cancels the loads of every image not in wanted.
+     *
+     * @param wanted paths of the images still wanted
+     */
+    void retain(Collection<Path> wanted) {
+        Iterator<Map.Entry<Path, Image>> entries = loading.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Image> entry = entries.next();
+            if (!wanted.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * @param preview a preview
+     * @param width   width wanted, 0 for the image's own width
+     * @param height  height wanted, 0 for the image's own height
+     * @return whether preview was asked for at least as large as wanted
+     */
+    private static boolean fits(Image preview, double width, double height) {
+        return fits(preview.getRequestedWidth(), width) && fits(preview.getRequestedHeight(), height);
+    }
+
+    /**
+     * @param requested size a preview was asked for, 0 for full size
+     * @param wanted    size wanted, 0 for full size
+     * @return whether requested is at least wanted
+     */
+    private static boolean fits(double requested, double wanted) {
+        return requested == 0 || (wanted != 0 && requested >= wanted);
+    }
+
+    /**
+     * Keeps a loaded preview, dropping the least recently used ones while over the byte budget.
+     *
+     * @param image   path of the image
+     * @param preview its loaded preview
+     */
+    private void keep(Path image, Image preview) {
+        Image replaced = previews.put(image, preview);
+        if (replaced != null)
+            bytes -= sizeOf(replaced);
+        bytes += sizeOf(preview);
+        Iterator<Image> eldest = previews.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Image dropped = eldest.next();
+            if (dropped == preview)
+                break; // keep the newest even if it alone is over the budget.
+            bytes -= sizeOf(dropped);
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @param preview a loaded preview
+     * @return bytes of its decoded pixels
+     */
+    private static long sizeOf(Image preview) {
+        return (long) preview.getWidth() * (long) preview.getHeight() * BYTES_PER_PIXEL;
+    }
+}
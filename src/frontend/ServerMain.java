@@ -0,0 +1,148 @@
+package frontend;
+
+import backend.HistoryManager;
+import backend.ImageFile;
+import backend.ImageTagger;
+import backend.LibraryScanner;
+import backend.LibraryWatcher;
+import backend.TagIndex;
+import backend.TaggingServer;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Serves a library to other programs on this machine: java frontend.ServerMain [--port N] [--threads N] DIR
+ *
+ * DIR is scanned and indexed first, then kept up to date with changes other programs make, and its tags and
+ * images are served over HTTP on the loopback address as described by TaggingServer until the process is
+ * stopped. The token that requests changing the library must carry is printed when the server starts. Like
+ * BatchMain, this is a class of its own so that no display is needed.
+ */
+public class ServerMain {
+
+    /** Port listened on if none is given. */
+    private static final int DEFAULT_PORT = 8765;
+
+    /** Exit status when the arguments are unusable or the library can not be served. */
+    private static final int EXIT_USAGE = 2;
+
+    /** Threads used to scan the library. */
+    private static final int SCAN_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Directory the scan catalogs are kept in, the same as the window uses. */
+    private static final Path CATALOG_DIR = Paths.get("catalogs");
+
+    /** How to run the server. */
+    private static final String USAGE = "Usage: java frontend.ServerMain [--port N] [--threads N] DIR";
+
+    public static void main(String[] args) throws InterruptedException {
+        HistoryManager.setUseHistoryStore(Boolean.getBoolean("imagetagger.historyStore"));
+        int port = DEFAULT_PORT;
+        int threads = 4 * Runtime.getRuntime().availableProcessors();
+        Path root = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--port") && i + 1 < args.length)
+                    port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--threads") && i + 1 < args.length)
+                    threads = Integer.parseInt(args[++i]);
+                else if (!args[i].startsWith("--") && i == args.length - 1)
+                    root = Paths.get(args[i]).toAbsolutePath().normalize();
+                else
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+            if (root == null || !Files.isDirectory(root))
+                throw new IllegalArgumentException("DIR must be a directory");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE);
+            return;
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:**.{jpg,jpeg,png,gif,bmp}");
+        TaggingServer server;
+        LibraryWatcher watcher;
+        try {
+            ImageTagger imageTagger = new ImageTagger();
+            scan(imageTagger, root, matcher);
+            TagIndex index = imageTagger.getTagIndex();
+            watcher = new LibraryWatcher(root, matcher, index, changes -> {
+                List<ImageFile> added = new ArrayList<>();
+                for (ImageFile image : changes.getAdded()) {
+                    if (index.imageAt(image.getFilePath()) == null)
+                        added.add(image); // renames made through the server are indexed already.
+                }
+                register(imageTagger, added);
+                for (ImageFile image : changes.getRemoved()) {
+                    if (!Files.exists(image.getFilePath(), LinkOption.NOFOLLOW_LINKS)) // not renamed since.
+                        index.remove(image);
+                }
+            });
+            watcher.start();
+            server = new TaggingServer(imageTagger, root, port, threads);
+        } catch (IOException e) {
+            System.err.println("Unable to serve " + root + ": " + e.getMessage());
+            System.exit(EXIT_USAGE);
+            return;
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try { // the log appender writes what is still queued from a shutdown hook of its own.
+                watcher.close();
+                HistoryManager.closeHistoryStores();
+            } catch (IOException e) {
+                System.err.println("Unable to write history: " + e.getMessage());
+            }
+            stopped.countDown();
+        }));
+        server.start();
+        System.err.println("Serving " + root + " on http://127.0.0.1:" + server.getPort() + "/");
+        System.err.println("Changes must carry the header " + TaggingServer.TOKEN_HEADER + ": " + server.getToken());
+        stopped.await();
+    }
+
+    /**
+     * Scans root into imageTagger's index, registering the tags found in the images' names.
+     *
+     * @param imageTagger the tagger
+     * @param root        the library root
+     * @param matcher     selects the images
+     * @throws IOException if root can not be read
+     */
+    private static void scan(ImageTagger imageTagger, Path root, PathMatcher matcher) throws IOException {
+        LibraryScanner scanner = new LibraryScanner(root, matcher, SCAN_PARALLELISM);
+        scanner.setCatalogDirectory(CATALOG_DIR);
+        scanner.scan(batch -> register(imageTagger, batch), Long.MAX_VALUE);
+        System.err.println("Indexed " + imageTagger.getTagIndex().size() + " images");
+        if (scanner.getFailureCount() > 0)
+            System.err.println("Unable to open " + scanner.getFailureCount() + " subdirectories. First failure: "
+                    + scanner.getFirstFailure().getMessage());
+    }
+
+    /**
+     * Registers the tags of images, then indexes them so their tags all get ids.
+     *
+     * @param imageTagger the tagger
+     * @param images      images not indexed yet
+     */
+    private static void register(ImageTagger imageTagger, List<ImageFile> images) {
+        try {
+            if (!imageTagger.addImages(images, ImageTagger.discoverTags(images)))
+                System.err.println("Ignoring invalid tag(s) that were detected");
+        } catch (IOException e) {
+            System.err.println("Unable to save tags: " + e.getMessage());
+        }
+    }
+}
@@ -7,17 +7,37 @@ import javafx.collections.ObservableList;
 import javafx.scene.control.ListView;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-
-/** Manages the observable lists of unusedTagViewList and imageTagViewList */
+import java.util.Set;
+
+/**
+ * Manages the observable lists of unusedTagViewList and imageTagViewList.
+ *
+ * availableTags holds every tag the user has created except those of the image shown, sorted, so a tag is found
+ * by binary search. When another image is shown only the difference between the two images' tags is applied to
+ * it, so a selection change costs a few list changes however many tags there are.
+ */
 class TagListsHandler {
 
-    /** Tags currently not in use by an image... they are available to the user. */
+    /** Order of availableTags: alphabetical ignoring case, then by case. */
+    private static final Comparator<String> TAG_ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    /** Tags currently not in use by an image... they are available to the user. Sorted by TAG_ORDER. */
     private ObservableList<String> availableTags = FXCollections.observableArrayList();
 
     /** Tags currently in use by an image. */
     private ObservableList<String> usedTags = FXCollections.observableArrayList();
 
+    /** Tags left out of availableTags because the image shown has them. */
+    private Set<String> shownTags = new HashSet<>();
+
+    /** Number of the user's tags, by id, that availableTags has been brought up to date with; 0 if it is empty. */
+    private int knownTagCount;
+
     /** Instance of backend imageTagger class */
     private ImageTagger imageTagger;
 
@@ -32,11 +52,22 @@ class TagListsHandler {
      * @param selectedImage an imageFile selected by user.
      */
     void setUpTagLists(ImageFile selectedImage) {
-        availableTags.clear();
-        usedTags.clear();
-        if (selectedImage == null) return;
-        setUpAvailableTags(selectedImage);
-        setUpUsedTags(selectedImage);
+        if (selectedImage == null) {
+            clearTagLists();
+            return;
+        }
+        Set<String> imageTags = selectedImage.getTagSet();
+        for (String tag : shownTags) {
+            if (!imageTags.contains(tag))
+                insertAvailable(tag);
+        }
+        for (String tag : imageTags) {
+            if (!shownTags.contains(tag))
+                removeAvailable(tag);
+        }
+        shownTags = new HashSet<>(imageTags);
+        addNewTags();
+        usedTags.setAll(selectedImage.getTags());
     }
 
     /**
@@ -45,7 +76,7 @@ class TagListsHandler {
      * @param tag a tag provided by user.
      */
     void addTagToAvailableTags(String tag) {
-        availableTags.add(tag);
+        insertAvailable(tag);
     }
 
     /**
@@ -54,8 +85,12 @@ class TagListsHandler {
      * @param selectedTags tag(s) from availableTags selected by user.
      */
     void addTagsToImage(List<String> selectedTags) {
-        usedTags.addAll(selectedTags);
-        availableTags.removeAll(selectedTags);
+        List<String> tags = new ArrayList<>(selectedTags); // the selection changes as they are removed.
+        usedTags.addAll(tags);
+        for (String tag : tags) {
+            removeAvailable(tag);
+            shownTags.add(tag);
+        }
     }
 
     /**
@@ -64,8 +99,12 @@ class TagListsHandler {
      * @param selectedTags tag(s) from usedTags selected by user.
      */
     void removeTagsFromImage(List<String> selectedTags) {
-            availableTags.addAll(selectedTags);
-            usedTags.removeAll(selectedTags);
+        List<String> tags = new ArrayList<>(selectedTags); // the selection changes as they are removed.
+        for (String tag : tags) {
+            insertAvailable(tag);
+            shownTags.remove(tag);
+        }
+        usedTags.removeAll(tags);
     }
 
     /**
@@ -82,30 +121,57 @@ class TagListsHandler {
     void clearTagLists() {
         availableTags.clear();
         usedTags.clear();
+        shownTags.clear();
+        knownTagCount = 0; // filled again from scratch when the next image is shown.
     }
 
     /**
-     * Populates availableTags according to tags of a selected image.
-     *
-     * @param selectedImage an imageFile selected by user.
+     * Adds the tags the user created since availableTags was last brought up to date, except those of the image
+     * shown. Fills availableTags in one change the first time.
      */
-    private void setUpAvailableTags(ImageFile selectedImage) {
-        ArrayList<String> allTags = imageTagger.getTags();
-        ArrayList<String> imageTags = ImageTagger.parseTags(selectedImage);
-        for (String tag : allTags) {
-            if (!imageTags.contains(tag)) {
-                availableTags.add(tag);
+    private void addNewTags() {
+        int tagCount = imageTagger.getTagCount();
+        if (knownTagCount == 0 && tagCount > 0) {
+            List<String> tags = new ArrayList<>(tagCount);
+            for (int id = 0; id < tagCount; id++) {
+                String tag = imageTagger.getTag(id);
+                if (!shownTags.contains(tag))
+                    tags.add(tag);
+            }
+            tags.sort(TAG_ORDER);
+            availableTags.setAll(tags);
+        } else {
+            for (int id = knownTagCount; id < tagCount; id++) {
+                String tag = imageTagger.getTag(id);
+                if (!shownTags.contains(tag))
+                    insertAvailable(tag);
             }
         }
+        knownTagCount = tagCount;
+    }
 
+    /**
+     * Inserts tag into availableTags at its sorted position, unless it is there already or the user never
+     * created it.
+     *
+     * @param tag the tag
+     */
+    private void insertAvailable(String tag) {
+        if (!imageTagger.hasTag(tag))
+            return; // only shown in usedTags, while an image has it.
+        int index = Collections.binarySearch(availableTags, tag, TAG_ORDER);
+        if (index < 0)
+            availableTags.add(-index - 1, tag);
     }
 
     /**
-     * Populates usedTags according to tags of a selected image.
+     * Removes tag from availableTags if it is there.
      *
-     * @param selectedImage an imageFile selected by user.
+     * @param tag the tag
      */
-    private void setUpUsedTags(ImageFile selectedImage) {
-        usedTags.setAll(ImageTagger.parseTags(selectedImage));
+    private void removeAvailable(String tag) {
+        int index = Collections.binarySearch(availableTags, tag, TAG_ORDER);
+        if (index >= 0)
+            availableTags.remove(index);
     }
 }
@@ -0,0 +1,103 @@
+package frontend;
+
+import backend.ThumbnailCache;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Loads thumbnails for the image list on a small pool of worker threads and keeps the most recently shown ones
+ * in memory. Thumbnails come from a ThumbnailCache, so an image is decoded at most once while it is unchanged.
+ * The cache is pruned on the pool when the loader is made, in case an earlier run left it over its limit.
+ * A request can be cancelled, which a list cell does when it is reused for another image before its thumbnail
+ * arrives; a cancelled request that has not started is never decoded.
+ *
+ * request and the callbacks run on the FX thread, so the in-memory cache needs no locking.
+ */
+class ThumbnailLoader {
+
+    /** Number of thumbnails kept in memory. */
+    private static final int CACHED_THUMBNAILS = 512;
+
+    /** Where thumbnails are made and stored. */
+    private final ThumbnailCache cache;
+
+    /** Decodes the thumbnails. */
+    private final ThreadPoolExecutor pool;
+
+    /** Recently shown thumbnails by image path, least recently used first. */
+    private final Map<Path, Image> thumbnails = new LinkedHashMap<Path, Image>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Image> eldest) {
+            return size() > CACHED_THUMBNAILS;
+        }
+    };
+
+    /**
+     * Class constructor
+     *
+     * @param cache   where thumbnails are made and stored
+     * @param threads number of thumbnails decoded at once
+     */
+    ThumbnailLoader(ThumbnailCache cache, int threads) {
+        this.cache = cache;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "thumbnail-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY); // scrolling matters more than previews.
+                    return thread;
+                });
+        pool.execute(() -> {
+            try {
+                cache.prune();
+            } catch (IOException e) {
+                // pruned again once enough thumbnails are stored.
+            }
+        });
+    }
+
+    /**
+     * Asks for the thumbnail of an image. Must be called on the FX thread.
+     *
+     * @param image    path of the image
+     * @param callback receives the thumbnail on the FX thread, right away if it is in memory; not called if the
+     *                 thumbnail can not be made or the request is cancelled
+     * @return the pending request, to cancel it; null if callback was already called
+     */
+    Future<?> request(Path image, Consumer<Image> callback) {
+        Image thumbnail = thumbnails.get(image);
+        if (thumbnail != null) {
+            callback.accept(thumbnail);
+            return null;
+        }
+        Future<?>[] self = new Future<?>[1];
+        self[0] = pool.submit(() -> {
+            Image loaded;
+            try {
+                loaded = new Image(cache.getThumbnail(image).toUri().toString(), false);
+            } catch (Exception e) {
+                return; // not an image we can decode, the cell keeps its placeholder.
+            }
+            if (loaded.isError())
+                return;
+            Platform.runLater(() -> {
+                thumbnails.put(image, loaded);
+                if (!self[0].isCancelled())
+                    callback.accept(loaded);
+            });
+        });
+        return self[0];
+    }
+}
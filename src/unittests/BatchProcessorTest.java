@@ -0,0 +1,115 @@
+package unittests;
+
+import backend.BatchProcessor;
+import backend.HistoryManager;
+import backend.ImageTagger;
+import backend.TagManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+public class BatchProcessorTest {
+
+    private Path dir;
+
+    private ImageTagger imageTagger;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("batchprocessor");
+        HistoryManager.setSupPath(dir.resolve("superlog.log"));
+        imageTagger = new ImageTagger(new TagManager(new BufferedReader(new StringReader("beach\nsunset\n"))));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HistoryManager.flush();
+        HistoryManager.setSupPath(Paths.get("superlog.log"));
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private Map<Long, BatchProcessor.Result> run(String input, int parallelism) throws IOException {
+        Map<Long, BatchProcessor.Result> results = new TreeMap<>();
+        BatchProcessor processor = new BatchProcessor(imageTagger, dir, parallelism);
+        processor.run(new BufferedReader(new StringReader(input)), result -> {
+            synchronized (results) {
+                results.put(result.getLine(), result);
+            }
+        });
+        assertEquals(results.size(), processor.getProcessedCount());
+        return results;
+    }
+
+    @Test
+    void testOperations() throws IOException {
+        Path a = Files.createFile(dir.resolve("a.jpg"));
+        Files.createDirectory(dir.resolve("done"));
+        String input = "# a comment\n"
+                + "tag\t" + a + "\tbeach\tsunset\n"
+                + "\n"
+                + "untag\t" + dir.resolve("a @beach @sunset.jpg") + "\tbeach\n"
+                + "revert\t" + dir.resolve("a @sunset.jpg") + "\n"
+                + "move\t" + dir.resolve("a @beach @sunset.jpg") + "\t" + dir.resolve("done") + "\n";
+        Map<Long, BatchProcessor.Result> results = run(input, 4);
+
+        assertEquals(4, results.size());
+        for (BatchProcessor.Result result : results.values())
+            assertTrue(result.isSuccess(), result.toString());
+        assertEquals(dir.resolve("a @beach @sunset.jpg"), results.get(2L).getNewPath());
+        assertEquals(dir.resolve("done").resolve("a @beach @sunset.jpg"), results.get(6L).getNewPath());
+        assertTrue(Files.exists(dir.resolve("done").resolve("a @beach @sunset.jpg")));
+        assertTrue(results.get(2L).toString().startsWith("ok\t2\ttag\t"));
+    }
+
+    @Test
+    void testFailuresAreReported() throws IOException {
+        Files.createFile(dir.resolve("b.jpg"));
+        String input = "tag\t" + dir.resolve("b.jpg") + "\tbad!\n"
+                + "tag\t" + dir.resolve("missing.jpg") + "\tbeach\n"
+                + "frobnicate\t" + dir.resolve("b.jpg") + "\n"
+                + "rename\t" + dir.resolve("b.jpg") + "\n"
+                + "revert\t" + dir.resolve("b.jpg") + "\n";
+        Map<Long, BatchProcessor.Result> results = run(input, 2);
+
+        assertEquals(5, results.size());
+        for (BatchProcessor.Result result : results.values())
+            assertFalse(result.isSuccess(), result.toString());
+        assertEquals("Invalid tag: bad!", results.get(1L).getError());
+        assertEquals("Unknown operation: frobnicate", results.get(3L).getError());
+        assertTrue(results.get(3L).toString().startsWith("error\t3\tfrobnicate\t"));
+        assertTrue(Files.exists(dir.resolve("b.jpg")));
+    }
+
+    @Test
+    void testManyImagesInParallel() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            Path image = Files.createFile(dir.resolve("img" + i + ".jpg"));
+            input.append("tag\t").append(image).append("\tbeach\n");
+            input.append("tag\t").append(dir.resolve("img" + i + " @beach.jpg")).append("\tsunset\n");
+        }
+        Map<Long, BatchProcessor.Result> results = run(input.toString(), 8);
+
+        assertEquals(1000, results.size());
+        for (BatchProcessor.Result result : results.values())
+            assertTrue(result.isSuccess(), result.toString());
+        for (int i = 0; i < 500; i++)
+            assertTrue(Files.exists(dir.resolve("img" + i + " @beach @sunset.jpg")));
+    }
+}
@@ -1,14 +1,43 @@
 package unittests;
 
 import backend.HistoryManager;
+import backend.LogTimestamp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.*;
 import java.text.SimpleDateFormat;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 public class HistoryManagerTest {
 
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("superlog");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
     @Test
     void testImgLogChange() throws IOException{
 
@@ -162,6 +191,91 @@ public class HistoryManagerTest {
 
     }
 
+    @Test
+    void testTimestampsMatchSimpleDateFormat() throws InterruptedException {
+        Random random = new Random(207);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            long millis = now + (random.nextLong() % (400L * 24 * 60 * 60 * 1000));
+            java.util.Date date = new java.util.Date(millis);
+            assertEquals(new SimpleDateFormat("dd.MM.yyyy HH:mm").format(date), LogTimestamp.supStamp(millis));
+            assertEquals(new SimpleDateFormat("mm.HH.dd.MM.yyyy").format(date), LogTimestamp.imgStamp(millis));
+        }
+
+        AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            long offset = t * 45000L;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    long millis = now + offset + i * 1000L;
+                    String expected = new SimpleDateFormat("dd.MM.yyyy HH:mm").format(new java.util.Date(millis));
+                    if (!expected.equals(LogTimestamp.supStamp(millis)))
+                        mismatches.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(0, mismatches.get());
+    }
 
+    @Test
+    void testImgLogChangeWithEpochMillis() throws IOException {
+        HistoryManager.setRecordEpochMillis(true);
+        StringWriter imgLogger = new StringWriter();
+        long before = System.currentTimeMillis();
+        try {
+            HistoryManager.imgLogChange(imgLogger, "img.jpg", "img @Jane.jpg");
+        } finally {
+            HistoryManager.setRecordEpochMillis(false);
+        }
+
+        String[] fields = imgLogger.toString().split("\u0000");
+        assertEquals(4, fields.length);
+        assertEquals("img.jpg", fields[1]);
+        assertEquals("img @Jane.jpg", fields[2]);
+        long millis = Long.parseLong(fields[3].trim());
+        assertTrue(millis >= before && millis <= System.currentTimeMillis());
+
+        BufferedReader reader = new BufferedReader(new StringReader(imgLogger.toString()));
+        assertEquals(Arrays.asList("img.jpg"), HistoryManager.getOldNames(reader));
+    }
 
+    @Test
+    void testReadSupLogPages() throws IOException {
+        Path supLog = dir.resolve("superlog.log");
+        HistoryManager.setSupPath(supLog);
+        try {
+            StringBuilder source = new StringBuilder();
+            for (int i = 0; i < 1000; i++)
+                source.append("01.01.2018 12:00 /img").append(i).append(".jpg -> /img").append(i).append(" @a.jpg\n");
+            Files.write(supLog, source.toString().getBytes(Charset.defaultCharset()));
+
+            assertEquals(1000, HistoryManager.getSupLogLineCount());
+            List<String> page = HistoryManager.readSupLog(10, 3);
+            assertEquals(Arrays.asList("01.01.2018 12:00 /img10.jpg -> /img10 @a.jpg",
+                    "01.01.2018 12:00 /img11.jpg -> /img11 @a.jpg",
+                    "01.01.2018 12:00 /img12.jpg -> /img12 @a.jpg"), page);
+            assertEquals(2, HistoryManager.readSupLog(998, 10).size());
+            assertTrue(HistoryManager.readSupLog(1000, 10).isEmpty());
+
+            // appended lines are indexed incrementally; an unterminated line waits for its terminator
+            Files.write(supLog, "01.01.2018 12:01 /b.jpg -> /c.jpg\n01.01.2018 12:01 /c".getBytes(Charset.defaultCharset()),
+                    StandardOpenOption.APPEND);
+            assertEquals(1001, HistoryManager.getSupLogLineCount());
+            assertEquals(Arrays.asList("01.01.2018 12:01 /b.jpg -> /c.jpg"), HistoryManager.readSupLog(1000, 10));
+            assertEquals(1001, HistoryManager.getWrittenSupLogLineCount());
+            assertEquals(HistoryManager.readSupLog(990, 20), HistoryManager.readWrittenSupLog(990, 20));
+            assertTrue(Files.size(dir.resolve("superlog.log.lines")) > 1000 * 8);
+
+            // a replaced log is indexed from scratch
+            Files.write(supLog, "01.01.2018 12:02 /x.jpg -> /y.jpg\n".getBytes(Charset.defaultCharset()));
+            assertEquals(1, HistoryManager.getSupLogLineCount());
+            assertEquals(Arrays.asList("01.01.2018 12:02 /x.jpg -> /y.jpg"), HistoryManager.readSupLog(0, 10));
+        } finally {
+            HistoryManager.setSupPath(Paths.get("superlog.log"));
+        }
+    }
 }
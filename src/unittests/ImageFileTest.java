@@ -0,0 +1,46 @@
+package unittests;
+
+import backend.ImageFile;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ImageFileTest {
+
+    @Test
+    void testGetTags() {
+        Path dir = Paths.get("photos");
+        ImageFile f = new ImageFile(dir.resolve("img @Jane @Aunt Samantha.jpg"), dir);
+
+        assertEquals(Arrays.asList("Jane", "Aunt Samantha"), f.getTags());
+        assertTrue(f.hasTag("Jane"));
+        assertFalse(f.hasTag("Bob"));
+    }
+
+    @Test
+    void testTagsAreCachedUntilRename() {
+        Path dir = Paths.get("photos");
+        ImageFile f = new ImageFile(dir.resolve("img @Jane.jpg"), dir);
+
+        List<String> tags = f.getTags();
+        assertSame(tags, f.getTags());
+        assertThrows(UnsupportedOperationException.class, () -> tags.add("Bob"));
+
+        f.setFilePath(dir.resolve("img.jpg"));
+        assertEquals(new ArrayList<String>(), f.getTags());
+        assertFalse(f.hasTag("Jane"));
+
+        f.setFilePath(dir.resolve("img @Bob.jpg"));
+        assertEquals(Arrays.asList("Bob"), f.getTags());
+        assertTrue(f.getTagSet().contains("Bob"));
+    }
+}
@@ -0,0 +1,278 @@
+package unittests;
+
+import backend.HistoryManager;
+import backend.ImageFile;
+import backend.ImageTagger;
+import backend.RenameResult;
+import backend.TagManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ImageTaggerTest {
+
+    private Path dir;
+
+    private ImageTagger imageTagger;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("imagetagger");
+        HistoryManager.setSupPath(dir.resolve("superlog.log"));
+        TagManager tagManager = new TagManager(new BufferedReader(new StringReader("beach\nsunset\nx\ny\n")));
+        imageTagger = new ImageTagger(tagManager);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HistoryManager.flush(); // write pending log entries before their directory goes away.
+        HistoryManager.configureRotation(64L * 1024 * 1024, 0);
+        HistoryManager.setUseHistoryStore(false);
+        HistoryManager.closeHistoryStores();
+        HistoryManager.setSupPath(Paths.get("superlog.log"));
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private ImageFile newImage(String name) throws IOException {
+        return new ImageFile(Files.createFile(dir.resolve(name)), dir);
+    }
+
+    @Test
+    void testTagImage() throws IOException {
+        ImageFile f = newImage("img.jpg");
+
+        imageTagger.tagImage(f, Arrays.asList("beach", "unknown", "sunset"));
+
+        assertEquals("img @beach @sunset.jpg", f.getFileName());
+        assertTrue(Files.exists(dir.resolve("img @beach @sunset.jpg")));
+        assertEquals(Arrays.asList("img.jpg"), imageTagger.getOldNames(f));
+    }
+
+    @Test
+    void testTagImagesInBulk() throws IOException {
+        List<ImageFile> files = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            files.add(newImage("img" + i + ".jpg"));
+
+        List<RenameResult> results = imageTagger.tagImages(files, Arrays.asList("beach"));
+
+        assertEquals(300, results.size());
+        for (int i = 0; i < 300; i++) {
+            assertTrue(results.get(i).isSuccess());
+            assertEquals(files.get(i), results.get(i).getImageFile());
+            assertEquals("img" + i + " @beach.jpg", files.get(i).getFileName());
+            assertEquals(Arrays.asList("img" + i + ".jpg"), imageTagger.getOldNames(files.get(i)));
+        }
+        HistoryManager.flush();
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve("superlog.log"))) {
+            assertEquals(300, reader.lines().count());
+        }
+
+        results = imageTagger.unTagImages(files, Arrays.asList("beach"));
+        for (RenameResult result : results)
+            assertTrue(result.isSuccess());
+        assertEquals("img7.jpg", files.get(7).getFileName());
+    }
+
+    @Test
+    void testRenameStaysInDirectory() throws IOException {
+        ImageFile f = newImage("img.jpg");
+        Path outside = Files.createTempDirectory("outside");
+        try {
+            String absolute = outside.resolve("pwned.jpg").toString();
+            assertThrows(IllegalArgumentException.class, () -> imageTagger.renameImage(f, absolute));
+            assertThrows(IllegalArgumentException.class, () -> imageTagger.renameImage(f, "../pwned.jpg"));
+            assertThrows(IllegalArgumentException.class, () -> imageTagger.renameImage(f, ".."));
+            assertTrue(Files.exists(dir.resolve("img.jpg")));
+            assertFalse(Files.exists(outside.resolve("pwned.jpg")));
+            assertFalse(Files.exists(dir.resolveSibling("pwned.jpg")));
+        } finally {
+            Files.delete(outside);
+        }
+    }
+
+    @Test
+    void testBulkRenamesDoNotCollide() throws IOException {
+        ImageFile a = newImage("a @x.jpg");
+        ImageFile b = newImage("a @y.jpg");
+
+        List<RenameResult> results = imageTagger.unTagImages(Arrays.asList(a, b), Arrays.asList("x", "y"));
+
+        assertTrue(results.get(0).isSuccess() != results.get(1).isSuccess()); // only one can become a.jpg
+        RenameResult failed = results.get(0).isSuccess() ? results.get(1) : results.get(0);
+        assertTrue(failed.getError() instanceof FileAlreadyExistsException);
+        assertTrue(Files.exists(failed.getOldPath()));
+        assertTrue(Files.exists(dir.resolve("a.jpg")));
+        assertFalse(a.getFileName().equals(b.getFileName()));
+    }
+
+    @Test
+    void testGetOldNamesMostRecentFirst() throws IOException {
+        ImageFile f = newImage("img.jpg");
+        imageTagger.tagImage(f, Arrays.asList("beach"));
+        imageTagger.tagImage(f, Arrays.asList("sunset"));
+        imageTagger.unTagImage(f, Arrays.asList("beach"));
+        imageTagger.renameImage(f, "img.jpg");
+
+        assertEquals(Arrays.asList("img @sunset.jpg", "img @beach @sunset.jpg", "img @beach.jpg", "img.jpg"),
+                imageTagger.getOldNames(f));
+        assertEquals(Arrays.asList("img @sunset.jpg", "img @beach @sunset.jpg"), imageTagger.getOldNames(f, 2));
+    }
+
+    @Test
+    void testGetOldNamesFromLargeLog() throws IOException {
+        ImageFile f = newImage("img.jpg");
+        try (Writer log = Files.newBufferedWriter(dir.resolve("img.log"), Charset.defaultCharset())) {
+            for (int i = 0; i < 400000; i++) // about 16MB, so the log is mapped in several windows
+                log.write("00.12.01.01.2018\u0000img @tag" + (i % 1000) + ".jpg\u0000img @x.jpg\r\n");
+            log.write("00.12.01.01.2018\u0000img @last.jpg\u0000img.jpg\u00001514808000000\n");
+        }
+
+        ArrayList<String> recent = imageTagger.getOldNames(f, 3);
+        assertEquals(Arrays.asList("img @last.jpg", "img @tag999.jpg", "img @tag998.jpg"), recent);
+
+        ArrayList<String> all = imageTagger.getOldNames(f);
+        assertEquals(1001, all.size());
+        assertEquals("img @tag0.jpg", all.get(1000));
+    }
+
+    @Test
+    void testSuperlogRotation() throws IOException {
+        HistoryManager.configureRotation(2048, 0);
+        Files.createDirectory(dir.resolve("a"));
+        Files.createDirectory(dir.resolve("b"));
+        for (String sub : Arrays.asList("a", "b")) {
+            for (int i = 0; i < 100; i++)
+                imageTagger.tagImage(newImage(sub + File.separator + "img" + i + ".jpg"), Arrays.asList("beach"));
+        }
+
+        assertTrue(Files.exists(dir.resolve("superlog.1.log")));
+        assertTrue(Files.exists(dir.resolve("superlog.1.log.summary")));
+        assertTrue(Files.exists(dir.resolve("superlog.5.log")));
+        assertTrue(Files.size(dir.resolve("superlog.1.log")) <= 2048);
+
+        assertEquals(200, HistoryManager.getSupLogLineCount());
+        assertEquals(200, HistoryManager.readSupLog().split("\n").length);
+        List<String> page = HistoryManager.readSupLog(95, 10);
+        assertEquals(10, page.size());
+        assertTrue(page.get(0).contains("img95.jpg"));
+        assertTrue(page.get(9).contains("b" + File.separator + "img4.jpg"));
+
+        List<String> inA = HistoryManager.findSupLogEntries(dir.resolve("a"), 0, Long.MAX_VALUE);
+        assertEquals(100, inA.size());
+        for (String entry : inA)
+            assertTrue(entry.contains("a" + File.separator + "img"));
+        assertEquals(100, HistoryManager.findSupLogEntries(dir.resolve("b"), 0, Long.MAX_VALUE).size());
+        assertEquals(200, HistoryManager.findSupLogEntries(dir, 0, Long.MAX_VALUE).size());
+        assertTrue(HistoryManager.findSupLogEntries(dir.resolve("c"), 0, Long.MAX_VALUE).isEmpty());
+        long later = System.currentTimeMillis() + 120000;
+        assertTrue(HistoryManager.findSupLogEntries(null, later, Long.MAX_VALUE).isEmpty());
+        assertEquals(200, HistoryManager.findSupLogEntries(null, 0, later).size());
+    }
+
+    @Test
+    void testHistoryStore() throws IOException {
+        HistoryManager.setUseHistoryStore(true);
+        ImageFile f = newImage("img.jpg");
+        imageTagger.tagImage(f, Arrays.asList("beach"));
+        imageTagger.tagImages(Arrays.asList(f), Arrays.asList("sunset"));
+        imageTagger.unTagImage(f, Arrays.asList("beach"));
+
+        assertFalse(Files.exists(dir.resolve("img.log")));
+        List<String> expected = Arrays.asList("img @beach @sunset.jpg", "img @beach.jpg", "img.jpg");
+        assertEquals(expected, imageTagger.getOldNames(f));
+        assertEquals(expected.subList(0, 2), imageTagger.getOldNames(f, 2));
+
+        Path sub = Files.createDirectory(dir.resolve("sub"));
+        imageTagger.moveFile(f, sub);
+        assertEquals(expected, imageTagger.getOldNames(f));
+        assertTrue(imageTagger.getOldNames(newImage("img.jpg")).isEmpty()); // the old key went with the image
+
+        HistoryManager.closeHistoryStores(); // reopened from the saved index
+        assertEquals(expected, imageTagger.getOldNames(f));
+    }
+
+    @Test
+    void testHistoryStoreMoveKeepsExistingHistory() throws IOException {
+        HistoryManager.setUseHistoryStore(true);
+        Path sub = Files.createDirectory(dir.resolve("sub"));
+        ImageFile moved = newImage("img.jpg");
+        ImageFile there = new ImageFile(Files.createFile(sub.resolve("img @x.jpg")), dir);
+        imageTagger.tagImage(moved, Arrays.asList("beach"));
+        imageTagger.tagImage(there, Arrays.asList("sunset"));
+
+        assertThrows(FileAlreadyExistsException.class, () -> imageTagger.moveFile(moved, sub));
+        assertEquals(Arrays.asList("img @x.jpg"), imageTagger.getOldNames(there));
+        assertEquals(Arrays.asList("img.jpg"), imageTagger.getOldNames(newImage("img.jpg"))); // left at the old key
+    }
+
+    @Test
+    void testMigrateImageLogs() throws IOException {
+        ImageFile f = newImage("img @x.jpg");
+        try (Writer log = Files.newBufferedWriter(dir.resolve("img.log"), Charset.defaultCharset())) {
+            log.write("00.12.01.01.2018\u0000img.jpg\u0000img @y.jpg\n");
+            log.write("01.12.01.01.2018\u0000img @y.jpg\u0000img @x.jpg\n");
+        }
+        Files.write(dir.resolve("notes.log"), "not a history\n".getBytes(Charset.defaultCharset()));
+
+        HistoryManager.setUseHistoryStore(true);
+        assertEquals(Arrays.asList("img @y.jpg", "img.jpg"), imageTagger.getOldNames(f)); // read from the .log
+        imageTagger.tagImage(f, Arrays.asList("beach"));
+        assertEquals(Arrays.asList("img @x.jpg", "img @y.jpg", "img.jpg"), imageTagger.getOldNames(f));
+
+        assertEquals(1, HistoryManager.migrateImageLogs(dir, true));
+        assertFalse(Files.exists(dir.resolve("img.log")));
+        assertTrue(Files.exists(dir.resolve("notes.log")));
+        assertEquals(Arrays.asList("img @x.jpg", "img @y.jpg", "img.jpg"), imageTagger.getOldNames(f));
+    }
+
+    @Test
+    void testMigrateImageLogsOnce() throws IOException {
+        Files.write(dir.resolve("img.log"), "00.12.01.01.2018\u0000img.jpg\u0000img @y.jpg\n"
+                .getBytes(Charset.defaultCharset()));
+        HistoryManager.setUseHistoryStore(true);
+        assertEquals(1, HistoryManager.migrateImageLogsOnce(dir, true));
+        assertFalse(Files.exists(dir.resolve("img.log")));
+
+        Files.write(dir.resolve("other.log"), "00.12.01.01.2018\u0000other.jpg\u0000other @y.jpg\n"
+                .getBytes(Charset.defaultCharset()));
+        HistoryManager.closeHistoryStores();
+        assertEquals(0, HistoryManager.migrateImageLogsOnce(dir, true)); // imported when the library was opened
+        assertTrue(Files.exists(dir.resolve("other.log")));
+    }
+
+    @Test
+    void testDiscoverTags() {
+        List<ImageFile> images = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            images.add(new ImageFile(dir.resolve(i + " @t" + (i % 50) + (i % 7 == 0 ? " @beach" : "") + ".jpg"), dir));
+        images.add(new ImageFile(dir.resolve("no extension @ignored"), dir));
+        images.add(new ImageFile(dir.resolve("bad @tag!.jpg"), dir));
+
+        List<String> expected = new ArrayList<>();
+        expected.add("t0");
+        expected.add("beach");
+        for (int i = 1; i < 50; i++)
+            expected.add("t" + i);
+        expected.add("tag!");
+        assertEquals(expected, new ArrayList<>(ImageTagger.discoverTags(images))); // in the order first found
+    }
+}
@@ -0,0 +1,204 @@
+package unittests;
+
+import backend.ImageFile;
+import backend.LibraryScanner;
+import backend.ParsedName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LibraryScannerTest {
+
+    private Path dir;
+
+    private final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:**.{jpg,jpeg,png,gif,bmp}");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("libraryscanner");
+        for (int i = 0; i < 20; i++) {
+            Path sub = Files.createDirectories(dir.resolve("d" + i).resolve("nested" + (i % 3)));
+            for (int j = 0; j < 25; j++) {
+                Files.createFile(sub.resolve("img" + j + " @tag" + (j % 4) + ".jpg"));
+                Files.createFile(sub.resolve("img" + j + ".log"));
+            }
+            Files.createFile(dir.resolve("d" + i).resolve("top" + i + ".png"));
+        }
+        Files.createFile(dir.resolve("root.gif"));
+        Files.createFile(dir.resolve("notes.txt"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    void testScanFindsSameImagesAsWalk() throws IOException {
+        Set<Path> expected;
+        try (Stream<Path> files = Files.walk(dir)) {
+            expected = files.filter(matcher::matches).collect(Collectors.toSet());
+        }
+
+        LibraryScanner scanner = new LibraryScanner(dir, matcher, 4);
+        List<List<ImageFile>> batches = new ArrayList<>();
+        assertTrue(scanner.scan(batches::add, 1));
+
+        Set<Path> found = new HashSet<>();
+        for (List<ImageFile> batch : batches) {
+            assertFalse(batch.isEmpty());
+            for (ImageFile image : batch) {
+                assertTrue(found.add(image.getFilePath()));
+                assertEquals(dir, image.getBaseDir());
+            }
+        }
+        assertEquals(expected, found);
+        assertEquals(expected.size(), scanner.getFoundImageCount());
+        assertEquals(expected.size() + 500 + 1, scanner.getScannedFileCount());
+        assertEquals(0, scanner.getFailureCount());
+    }
+
+    @Test
+    void testLargeBurstIsSplitIntoBatches() throws IOException {
+        Path big = Files.createDirectory(dir.resolve("big"));
+        for (int i = 0; i < 6000; i++)
+            Files.createFile(big.resolve("img" + i + ".jpg"));
+
+        LibraryScanner scanner = new LibraryScanner(big, matcher, 1);
+        List<Integer> sizes = new ArrayList<>();
+        assertTrue(scanner.scan(batch -> sizes.add(batch.size()), Long.MAX_VALUE)); // one publish, at the end
+        assertEquals(Arrays.asList(5000, 1000), sizes);
+    }
+
+    @Test
+    void testCancel() throws IOException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicInteger matches = new AtomicInteger();
+        PathMatcher blocking = path -> { // lets one image through, then holds the scan until it is cancelled.
+            if (!matcher.matches(path))
+                return false;
+            if (matches.incrementAndGet() > 1) {
+                try {
+                    cancelled.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return true;
+        };
+        LibraryScanner scanner = new LibraryScanner(dir, blocking, 1);
+        List<ImageFile> found = new ArrayList<>();
+        boolean finished = scanner.scan(batch -> {
+            found.addAll(batch);
+            scanner.cancel();
+            cancelled.countDown();
+        }, 1);
+
+        assertFalse(finished);
+        assertTrue(scanner.isCancelled());
+        assertEquals(1, found.size());
+    }
+
+    @Test
+    void testScanOfMissingDirectoryFails() {
+        LibraryScanner scanner = new LibraryScanner(dir.resolve("missing"), matcher, 2);
+        assertThrows(IOException.class, () -> scanner.scan(batch -> { }, 10));
+    }
+
+    @Test
+    void testCatalogSkipsUnchangedDirectories() throws IOException {
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        List<Path> directories;
+        try (Stream<Path> files = Files.walk(dir)) {
+            directories = files.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        for (Path directory : directories)
+            Files.setLastModifiedTime(directory, past);
+        Path catalog = Files.createTempFile("catalog", ".bin");
+
+        try {
+            Set<Path> first = scanWithCatalog(catalog, 0);
+            assertEquals(521, first.size());
+
+            Set<Path> second = scanWithCatalog(catalog, directories.size());
+            assertEquals(first, second);
+
+            Path changed = dir.resolve("d3").resolve("nested0");
+            Files.move(changed.resolve("img0 @tag0.jpg"), changed.resolve("img0 @tag0 @new.jpg"));
+            Files.createFile(changed.resolve("added.png"));
+            Set<Path> third = scanWithCatalog(catalog, directories.size() - 1);
+            assertEquals(522, third.size());
+            assertTrue(third.contains(changed.resolve("img0 @tag0 @new.jpg")));
+            assertFalse(third.contains(changed.resolve("img0 @tag0.jpg")));
+        } finally {
+            Files.delete(catalog);
+        }
+    }
+
+    @Test
+    void testCatalogDirectoryKeepsRootUnchanged() throws IOException {
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        List<Path> directories;
+        try (Stream<Path> files = Files.walk(dir)) {
+            directories = files.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        for (Path directory : directories)
+            Files.setLastModifiedTime(directory, past);
+        Path catalogs = Files.createTempDirectory("catalogs");
+
+        try {
+            for (int scan = 0; scan < 2; scan++) {
+                LibraryScanner scanner = new LibraryScanner(dir, matcher, 4);
+                scanner.setCatalogDirectory(catalogs.resolve("nested"));
+                assertTrue(scanner.scan(batch -> { }, 5));
+                assertEquals(scan == 0 ? 0 : directories.size(), scanner.getReusedDirectoryCount());
+                assertEquals(past, Files.getLastModifiedTime(dir));
+            }
+            try (Stream<Path> files = Files.list(catalogs.resolve("nested"))) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(catalogs)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private Set<Path> scanWithCatalog(Path catalog, int expectedReused) throws IOException {
+        LibraryScanner scanner = new LibraryScanner(dir, matcher, 4);
+        scanner.setCatalogFile(catalog);
+        Set<Path> found = new HashSet<>();
+        assertTrue(scanner.scan(batch -> {
+            for (ImageFile image : batch) {
+                found.add(image.getFilePath());
+                assertEquals(image.getTags(), ParsedName.parse(image.getFileName()).getTags());
+            }
+        }, 5));
+        assertEquals(expectedReused, scanner.getReusedDirectoryCount());
+        return found;
+    }
+}
@@ -0,0 +1,132 @@
+package unittests;
+
+import backend.ImageFile;
+import backend.LibraryWatcher;
+import backend.TagIndex;
+import backend.TagManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class LibraryWatcherTest {
+
+    private Path dir;
+
+    private TagIndex index;
+
+    private LibraryWatcher watcher;
+
+    private final BlockingQueue<LibraryWatcher.Changes> reported = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("librarywatcher");
+        Files.createDirectory(dir.resolve("sub"));
+        index = new TagIndex(new TagManager(new BufferedReader(new StringReader("beach\n"))));
+        index.add(new ImageFile(Files.createFile(dir.resolve("sub").resolve("old.jpg")), dir));
+        watcher = new LibraryWatcher(dir, FileSystems.getDefault().getPathMatcher("glob:**.{jpg,png}"), index,
+                reported::add);
+        watcher.setCoalescing(100, 1000);
+        watcher.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        watcher.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Applies reported changes to the index until it holds expected, as a UI would. */
+    private void awaitIndex(Set<Path> expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!indexedPaths().equals(expected)) {
+            LibraryWatcher.Changes changes = reported.poll(deadline - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+            assertNotNull(changes, "expected " + expected + " but index has " + indexedPaths());
+            for (ImageFile image : changes.getRemoved())
+                index.remove(image);
+            index.addAll(changes.getAdded());
+        }
+    }
+
+    private Set<Path> indexedPaths() {
+        Set<Path> paths = new HashSet<>();
+        for (ImageFile image : index.getImages(index.all()))
+            paths.add(image.getFilePath());
+        return paths;
+    }
+
+    @Test
+    void testCreateRenameDelete() throws IOException, InterruptedException {
+        Thread.sleep(300); // let the watcher register the directories
+        Path sub = dir.resolve("sub");
+        Files.createFile(dir.resolve("a.jpg"));
+        Files.createFile(dir.resolve("notes.txt"));
+        Files.move(sub.resolve("old.jpg"), sub.resolve("old @beach.jpg"));
+        Set<Path> expected = new HashSet<>();
+        expected.add(dir.resolve("a.jpg"));
+        expected.add(sub.resolve("old @beach.jpg"));
+        awaitIndex(expected);
+        assertEquals(1, index.count("beach"));
+
+        Files.delete(dir.resolve("a.jpg"));
+        expected.remove(dir.resolve("a.jpg"));
+        awaitIndex(expected);
+    }
+
+    @Test
+    void testImageRenamedByAppIsNotRemoved() throws IOException, InterruptedException {
+        Thread.sleep(300);
+        Path sub = dir.resolve("sub");
+        ImageFile image = index.imageAt(sub.resolve("old.jpg"));
+        Files.move(sub.resolve("old.jpg"), sub.resolve("old @beach.jpg"));
+        image.setFilePath(sub.resolve("old @beach.jpg")); // renamed, not re-indexed yet, as in ImageTagger
+
+        LibraryWatcher.Changes changes = reported.poll(20, TimeUnit.SECONDS);
+        assertNotNull(changes);
+        assertTrue(changes.getRemoved().isEmpty(), "removed " + changes.getRemoved());
+    }
+
+    @Test
+    void testNewAndDeletedDirectories() throws IOException, InterruptedException {
+        Thread.sleep(300);
+        Path added = Files.createDirectories(dir.resolve("new").resolve("deeper"));
+        for (int i = 0; i < 50; i++)
+            Files.createFile(added.resolve("img" + i + ".png"));
+        Set<Path> expected = new HashSet<>();
+        expected.add(dir.resolve("sub").resolve("old.jpg"));
+        for (int i = 0; i < 50; i++)
+            expected.add(added.resolve("img" + i + ".png"));
+        awaitIndex(expected);
+
+        Files.createFile(added.resolve("late.png")); // the new directories are watched too
+        expected.add(added.resolve("late.png"));
+        awaitIndex(expected);
+
+        try (Stream<Path> files = Files.walk(dir.resolve("new"))) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+        Files.delete(dir.resolve("sub").resolve("old.jpg"));
+        Files.delete(dir.resolve("sub"));
+        awaitIndex(new HashSet<>());
+    }
+}
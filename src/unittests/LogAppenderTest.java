@@ -0,0 +1,100 @@
+package unittests;
+
+import backend.LogAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class LogAppenderTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("appender");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), Charset.defaultCharset());
+    }
+
+    @Test
+    void testAppendsInOrderWithFewOpenFiles() throws IOException {
+        LogAppender appender = new LogAppender(2, 5, false);
+
+        StringBuilder[] expected = new StringBuilder[5];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = new StringBuilder();
+        for (int n = 0; n < 1000; n++) {
+            int file = (n * 7) % expected.length; // jump between files to force evictions
+            String line = "entry " + n + "\n";
+            appender.append(dir.resolve(file + ".log"), line);
+            expected[file].append(line);
+        }
+        appender.flush();
+
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i].toString(), read(dir.resolve(i + ".log")));
+        appender.shutdown();
+    }
+
+    @Test
+    void testCloseReleasesFile() throws IOException {
+        LogAppender appender = new LogAppender(4, 1000, false);
+        Path log = dir.resolve("img.log");
+        Path moved = dir.resolve("moved.log");
+
+        appender.append(log, "first\n");
+        appender.close(log); // written even though the commit interval has not passed
+        Files.move(log, moved, StandardCopyOption.ATOMIC_MOVE);
+        appender.append(log, "second\n");
+        appender.flush();
+
+        assertEquals("first\n", read(moved));
+        assertEquals("second\n", read(log));
+        appender.shutdown();
+    }
+
+    @Test
+    void testWriteFailureIsReportedToItsFile() throws IOException {
+        LogAppender appender = new LogAppender(4, 0, true);
+        Path missing = dir.resolve("missing").resolve("img.log");
+        Path other = dir.resolve("other.log");
+
+        appender.append(missing, "entry\n");
+        appender.flush(); // failures are not reported to callers that wait for everything
+        appender.append(other, "entry\n");
+        appender.flush(other);
+        assertThrows(IOException.class, () -> appender.flush(missing));
+        appender.flush(missing); // the failure is only reported once
+
+        appender.append(missing, "again\n");
+        appender.flush();
+        assertThrows(IOException.class, () -> appender.append(missing, "third\n")); // the next writer sees it
+        appender.flush();
+        assertThrows(IOException.class, appender::flushAll);
+        appender.flushAll();
+
+        appender.shutdown();
+        assertThrows(IOException.class, () -> appender.append(dir.resolve("img.log"), "late\n"));
+        assertTrue(Files.notExists(dir.resolve("img.log")));
+    }
+}
@@ -0,0 +1,104 @@
+package unittests;
+
+import backend.ParsedName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ParsedNameTest {
+
+    /** Characters the generated names are made of, weighted towards the ones the parser cares about. */
+    private static final String[] PIECES = {
+            "a", "b", "Z", "7", "img", "Aunt Samantha", " ", " ", " @", " @", "@", ".", ".", ".jpg", ".png",
+            "\t", "\t@", "\n", "\r", "\u000B", "\f", "\u0085", "\u2028", "\u2029", "\u00e9", "\uD83D\uDE00", "_", "-"
+    };
+
+    /** The original regex based parser, kept here as the reference implementation. */
+    private static ArrayList<String> regexParseName(String name) {
+        String[] fnameAndTags = name.split("(\\s@)|(\\..+)");
+        String ext = name.substring(name.lastIndexOf("."), name.length());
+        ArrayList<String> parsed = new ArrayList<>(Arrays.asList(fnameAndTags));
+        parsed.add(ext);
+
+        return parsed;
+    }
+
+    @Test
+    void testSimpleName() {
+        ParsedName parsed = ParsedName.parse("img @Jane @Aunt Samantha.jpg");
+
+        assertEquals("img", parsed.getBaseName());
+        assertEquals(".jpg", parsed.getExtension());
+        assertEquals(2, parsed.getTagCount());
+        assertEquals("Jane", parsed.getTag(0));
+        assertEquals("Aunt Samantha", parsed.getTag(1));
+        assertEquals(5, parsed.getTagStart(0));
+        assertEquals(9, parsed.getTagEnd(0));
+        assertEquals(Arrays.asList("img", "Jane", "Aunt Samantha", ".jpg"), parsed.toList());
+    }
+
+    @Test
+    void testUntaggedName() {
+        ParsedName parsed = ParsedName.parse("img.jpg");
+
+        assertEquals("img", parsed.getBaseName());
+        assertEquals(0, parsed.getTagCount());
+        assertEquals(new ArrayList<String>(), parsed.getTags());
+        assertThrows(IndexOutOfBoundsException.class, () -> parsed.getTag(0));
+    }
+
+    @Test
+    void testNameWithoutExtension() {
+        assertThrows(IllegalArgumentException.class, () -> ParsedName.parse("img @Jane"));
+    }
+
+    @Test
+    void testDifferentialAgainstRegex() {
+        Random random = new Random(207);
+        ParsedName reused = new ParsedName();
+        for (int n = 0; n < 200000; n++) {
+            StringBuilder name = new StringBuilder();
+            int pieces = random.nextInt(12);
+            for (int i = 0; i < pieces; i++)
+                name.append(PIECES[random.nextInt(PIECES.length)]);
+            String generated = name.toString();
+
+            ArrayList<String> expected;
+            try {
+                expected = regexParseName(generated);
+            } catch (StringIndexOutOfBoundsException e) { // no extension
+                assertThrows(IllegalArgumentException.class, () -> reused.reset(generated));
+                continue;
+            }
+
+            try {
+                assertEquals(expected, reused.reset(generated).toList(), "Parsing: " + escape(generated));
+                assertEquals(expected, ParsedName.parse(generated).toList(), "Parsing: " + escape(generated));
+            } catch (IllegalArgumentException e) {
+                fail("Unexpected failure parsing: " + escape(generated));
+            }
+
+            if (expected.size() >= 2) { // the original parseTags failed on names with fewer tokens
+                assertEquals(expected.subList(1, expected.size() - 1), reused.getTags());
+                assertEquals(expected.get(0), reused.getBaseName());
+            }
+        }
+    }
+
+    /** Makes control characters visible in assertion messages. */
+    private static String escape(String s) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c < 0x20 || c > 0x7e)
+                escaped.append(String.format("\\u%04x", (int) c));
+            else
+                escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
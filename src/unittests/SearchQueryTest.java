@@ -0,0 +1,38 @@
+package unittests;
+
+import backend.SearchQuery;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class SearchQueryTest {
+
+    @Test
+    void testParse() {
+        SearchQuery query = SearchQuery.parse("tag:beach -tag:blurry path:2023 untagged  -path:\"old trip\" cat");
+        assertEquals(Collections.singletonList("beach"), query.getTags());
+        assertEquals(Collections.singletonList("blurry"), query.getExcludedTags());
+        assertEquals(Arrays.asList("2023", "cat"), query.getPaths());
+        assertEquals(Collections.singletonList("old trip"), query.getExcludedPaths());
+        assertTrue(query.isUntagged());
+        assertFalse(query.isEmpty());
+    }
+
+    @Test
+    void testPlainTextIsOneSubstring() {
+        SearchQuery query = SearchQuery.parse("a @beach");
+        assertEquals(Collections.singletonList("a @beach"), query.getPaths());
+        assertTrue(query.getTags().isEmpty());
+        assertFalse(query.isUntagged());
+    }
+
+    @Test
+    void testEmpty() {
+        assertTrue(SearchQuery.parse("").isEmpty());
+        assertTrue(SearchQuery.parse("tag: -path:").isEmpty());
+    }
+}
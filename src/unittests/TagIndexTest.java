@@ -0,0 +1,178 @@
+package unittests;
+
+import backend.ImageFile;
+import backend.SearchQuery;
+import backend.TagIndex;
+import backend.TagManager;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+public class TagIndexTest {
+
+    private static final Path DIR = Paths.get("photos");
+
+    private static TagIndex newIndex() throws IOException {
+        BufferedReader r = new BufferedReader(new StringReader("beach\nsunset\nblurry\nJane\n"));
+        return new TagIndex(new TagManager(r));
+    }
+
+    private static ImageFile image(String name) {
+        return new ImageFile(DIR.resolve(name), DIR);
+    }
+
+    private static List<String> tags(String... tags) {
+        return Arrays.asList(tags);
+    }
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Test
+    void testQueries() throws IOException {
+        TagIndex index = newIndex();
+        ImageFile a = image("a @beach @sunset.jpg");
+        ImageFile b = image("b @beach @blurry.jpg");
+        ImageFile c = image("c @sunset.jpg");
+        ImageFile d = image("d.jpg");
+        index.addAll(Arrays.asList(a, b, c, d));
+
+        assertEquals(4, index.size());
+        assertEquals(2, index.count("beach"));
+        assertEquals(Arrays.asList(a, b), index.getImages(index.withTag("beach")));
+        assertEquals(Arrays.asList(a), index.getImages(index.query(tags("beach", "sunset"), NONE, NONE)));
+        assertEquals(Arrays.asList(a, b, c), index.getImages(index.query(NONE, tags("beach", "sunset"), NONE)));
+        assertEquals(Arrays.asList(a), index.getImages(index.query(tags("beach"), NONE, tags("blurry"))));
+        assertEquals(Arrays.asList(c, d), index.getImages(index.query(NONE, NONE, tags("beach"))));
+        assertEquals(Arrays.asList(d), index.getImages(index.untagged()));
+        assertTrue(index.query(tags("Jane"), NONE, NONE).isEmpty());
+        assertTrue(index.query(tags("unknown"), NONE, NONE).isEmpty());
+    }
+
+    @Test
+    void testUpdateAndRemove() throws IOException {
+        TagIndex index = newIndex();
+        ImageFile a = image("a @beach.jpg");
+        ImageFile b = image("b.jpg");
+        index.addAll(Arrays.asList(a, b));
+
+        a.setFilePath(DIR.resolve("a @Jane.jpg"));
+        index.update(a);
+        assertTrue(index.withTag("beach").isEmpty());
+        assertEquals(Arrays.asList(a), index.getImages(index.withTag("Jane")));
+
+        int ordinal = index.ordinalOf(b);
+        index.remove(b);
+        assertEquals(-1, index.ordinalOf(b));
+        assertEquals(Arrays.asList(a), index.getImages(index.all()));
+
+        ImageFile c = image("c.jpg");
+        assertEquals(ordinal, index.add(c)); // freed ordinals are reused
+        assertEquals(Arrays.asList(c), index.getImages(index.untagged()));
+    }
+
+    @Test
+    void testGetImagesUnder() throws IOException {
+        TagIndex index = newIndex();
+        ImageFile a = image("a.jpg");
+        ImageFile b = new ImageFile(DIR.resolve("trip").resolve("b.jpg"), DIR);
+        ImageFile c = new ImageFile(DIR.resolve("trip").resolve("day 2").resolve("c.jpg"), DIR);
+        ImageFile d = new ImageFile(DIR.resolve("trip 2").resolve("d.jpg"), DIR);
+        index.addAll(Arrays.asList(a, b, c, d));
+
+        assertEquals(Arrays.asList(a, b, c, d), index.getImagesUnder(DIR));
+        assertEquals(Arrays.asList(b, c), index.getImagesUnder(DIR.resolve("trip")));
+
+        c.setFilePath(DIR.resolve("c.jpg"));
+        index.update(c);
+        index.remove(b);
+        assertTrue(index.getImagesUnder(DIR.resolve("trip")).isEmpty());
+        assertEquals(Arrays.asList(a, c, d), index.getImagesUnder(DIR));
+    }
+
+    @Test
+    void testManyImages() throws IOException {
+        TagIndex index = newIndex();
+        List<ImageFile> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            ImageFile f = image(i + (i % 3 == 0 ? " @beach" : "") + (i % 5 == 0 ? " @sunset" : "") + ".jpg");
+            index.add(f);
+            if (i % 3 == 0 && i % 5 != 0)
+                expected.add(f);
+        }
+
+        BitSet result = index.query(tags("beach"), NONE, tags("sunset"));
+        assertEquals(expected, index.getImages(result));
+        assertEquals(1667, index.count("beach"));
+    }
+
+    @Test
+    void testSearch() throws IOException {
+        TagIndex index = newIndex();
+        ImageFile a = image("trip/a @beach.jpg");
+        ImageFile b = image("b @sunset.jpg");
+        ImageFile c = image("beach.png");
+        index.addAll(Arrays.asList(a, b, c));
+
+        assertEquals(Arrays.asList(a, c), index.getImages(index.search("beach")));
+        assertEquals(Arrays.asList(a), index.getImages(index.search("trip" + DIR.getFileSystem().getSeparator())));
+        assertEquals(Arrays.asList(a, b), index.getImages(index.search("@")));
+        assertEquals(Arrays.asList(a, b, c), index.getImages(index.search("")));
+        assertTrue(index.search("hcaeb").isEmpty());
+        assertTrue(index.search("Beach").isEmpty()); // case sensitive, like the old filter
+
+        b.setFilePath(DIR.resolve("b @beach.jpg"));
+        index.update(b);
+        assertEquals(Arrays.asList(a, b, c), index.getImages(index.search("beach")));
+        assertTrue(index.search("sunset").isEmpty());
+        index.remove(c);
+        assertEquals(Arrays.asList(a, b), index.getImages(index.search("beach")));
+    }
+
+    @Test
+    void testSearchMatchesToString() throws IOException {
+        TagIndex index = newIndex();
+        List<ImageFile> images = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ImageFile f = image("d" + (i % 7) + "/" + i + (i % 3 == 0 ? " @beach" : "") + ".jpg");
+            images.add(f);
+            index.add(f);
+        }
+        for (String text : Arrays.asList("12", "123", "d3", "1 @b", "99 @beach.jpg", "ach.j", "7.jpg", "x")) {
+            List<ImageFile> expected = new ArrayList<>();
+            for (ImageFile f : images) {
+                if (f.toString().contains(text))
+                    expected.add(f);
+            }
+            assertEquals(expected, index.getImages(index.search(text)), text);
+        }
+    }
+
+    @Test
+    void testSearchQuery() throws IOException {
+        TagIndex index = newIndex();
+        ImageFile a = image("2023/a @beach @sunset.jpg");
+        ImageFile b = image("2023/b @beach @blurry.jpg");
+        ImageFile c = image("2022/c @beach.jpg");
+        ImageFile d = image("2023/d.jpg");
+        index.addAll(Arrays.asList(a, b, c, d));
+
+        SearchQuery query = SearchQuery.parse("tag:beach -tag:blurry path:2023");
+        assertEquals(Arrays.asList(a), index.getImages(index.search(query)));
+        assertEquals(Arrays.asList(d), index.getImages(index.search(SearchQuery.parse("untagged path:2023"))));
+        assertEquals(Arrays.asList(a, b), index.getImages(index.search(SearchQuery.parse("tag:beach -path:2022"))));
+        assertEquals(Arrays.asList(b), index.getImages(index.search(SearchQuery.parse("path:2023 blur"))));
+        assertTrue(index.search(SearchQuery.parse("2023 blur")).isEmpty()); // no keywords, one substring
+        assertEquals(Arrays.asList(a, b, c, d), index.getImages(index.search(SearchQuery.parse(""))));
+        assertTrue(index.search(SearchQuery.parse("tag:unknown")).isEmpty());
+        assertTrue(index.search(SearchQuery.parse("tag:beach untagged")).isEmpty());
+    }
+}
@@ -11,6 +11,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Map;
 
 
 public class TagManagerTest {
@@ -158,4 +159,82 @@ public class TagManagerTest {
         assertEquals(expected,t.getTags());
 
     }
+
+    @Test
+    public void testTagIds() throws IOException{
+
+        StringWriter w = new StringWriter();
+        BufferedReader r = new BufferedReader(new StringReader("tag1\ntag2\n"));
+        TagManager t = new TagManager(r);
+
+        assertTrue(t.addTag("t3", w));
+        assertFalse(t.addTag("tag1", w));
+
+        assertEquals(3, t.getTagCount());
+        assertEquals(0, t.getTagId("tag1"));
+        assertEquals(1, t.getTagId("tag2"));
+        assertEquals(2, t.getTagId("t3"));
+        assertEquals(-1, t.getTagId("t4"));
+        assertEquals(-1, t.getTagId(null));
+        assertEquals("t3", t.getTag(2));
+        assertTrue(t.containsId(2));
+        assertFalse(t.containsId(3));
+
+    }
+
+    @Test
+    public void testDuplicateLinesInTagsFile() throws IOException{
+
+        BufferedReader r = new BufferedReader(new StringReader("tag1\ntag2\ntag1\n"));
+        TagManager t = new TagManager(r);
+
+        ArrayList<String> expected = new ArrayList<String>();
+        expected.add("tag1");
+        expected.add("tag2");
+
+        assertEquals(expected, t.getTags());
+        assertEquals(2, t.getTagCount());
+
+    }
+
+    @Test
+    public void testAddTagsBatch() throws IOException{
+
+        StringWriter w = new StringWriter();
+        BufferedReader r = new BufferedReader(new StringReader("t1\n"));
+        TagManager t = new TagManager(r);
+
+        ArrayList<String> batch = new ArrayList<String>();
+        batch.add("t1");
+        batch.add("t2");
+        batch.add("$$$");
+        batch.add("t3");
+        batch.add("t2");
+        batch.add("");
+
+        Map<String, TagManager.AddResult> results = t.addTags(batch, w);
+
+        assertEquals(5, results.size());
+        assertEquals(TagManager.AddResult.EXISTS, results.get("t1"));
+        assertEquals(TagManager.AddResult.ADDED, results.get("t2"));
+        assertEquals(TagManager.AddResult.INVALID, results.get("$$$"));
+        assertEquals(TagManager.AddResult.ADDED, results.get("t3"));
+        assertEquals(TagManager.AddResult.INVALID, results.get(""));
+
+        assertEquals("t2\nt3\n", w.toString());
+        assertTrue(t.contains("t2"));
+        assertFalse(t.contains("$$$"));
+        assertEquals(2, t.getTagId("t3"));
+
+    }
+
+    @Test
+    public void testIsValidTag() {
+
+        assertTrue(TagManager.isValidTag("Aunt Samantha"));
+        assertFalse(TagManager.isValidTag("a.b"));
+        assertFalse(TagManager.isValidTag(""));
+        assertFalse(TagManager.isValidTag(null));
+
+    }
 }
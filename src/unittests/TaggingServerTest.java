@@ -0,0 +1,189 @@
+package unittests;
+
+import backend.HistoryManager;
+import backend.ImageFile;
+import backend.ImageTagger;
+import backend.TagManager;
+import backend.TaggingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class TaggingServerTest {
+
+    private Path dir;
+
+    private ImageTagger imageTagger;
+
+    private TaggingServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("taggingserver").toRealPath();
+        HistoryManager.setSupPath(dir.resolve("superlog.log"));
+        imageTagger = new ImageTagger(new TagManager(new BufferedReader(new StringReader("beach\nsunset\n"))));
+        Files.createDirectories(dir.resolve("trip"));
+        Files.createDirectories(dir.resolve("old"));
+        for (String name : new String[]{"a @beach.jpg", "trip/b @beach @sunset.jpg", "trip/c.jpg"}) {
+            Path file = Files.createFile(dir.resolve(name));
+            imageTagger.getTagIndex().add(new ImageFile(file, dir));
+        }
+        server = new TaggingServer(imageTagger, dir, 0, 4);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        HistoryManager.flush();
+        HistoryManager.setSupPath(Paths.get("superlog.log"));
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String encode(String s) throws IOException {
+        return URLEncoder.encode(s, "UTF-8");
+    }
+
+    /** Sends a request, with the token unless it is a GET, and returns the status followed by the body. */
+    private String request(String method, String pathAndQuery) throws IOException {
+        return request(method, pathAndQuery, method.equals("GET") ? null : server.getToken());
+    }
+
+    /** Sends a request with the given token, none if null, and returns the status followed by the body. */
+    private String request(String method, String pathAndQuery, String token) throws IOException {
+        URL url = new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort()
+                + pathAndQuery);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (token != null)
+            connection.setRequestProperty(TaggingServer.TOKEN_HEADER, token);
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                body.write(buffer, 0, n);
+        }
+        return status + " " + new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testLookups() throws IOException {
+        assertEquals("200 {\"tags\":[{\"tag\":\"beach\",\"images\":2},{\"tag\":\"sunset\",\"images\":1}]}",
+                request("GET", "/tags"));
+        assertEquals("200 {\"total\":2,\"images\":[{\"path\":\"a @beach.jpg\",\"tags\":[\"beach\"]},"
+                        + "{\"path\":\"trip/b @beach @sunset.jpg\",\"tags\":[\"beach\",\"sunset\"]}]}",
+                request("GET", "/images?q=" + encode("tag:beach")));
+        assertEquals("200 {\"total\":2,\"images\":[{\"path\":\"trip/c.jpg\",\"tags\":[]}]}",
+                request("GET", "/images?q=trip&offset=1"));
+        assertEquals("200 {\"total\":3,\"images\":[]}", request("GET", "/images?limit=0"));
+        assertEquals("405 {\"error\":\"Method not allowed\"}", request("DELETE", "/tags"));
+        assertEquals("404 {\"error\":\"No such endpoint\"}", request("GET", "/tags/beach"));
+        assertEquals("400 {\"error\":\"Not a number: limit\"}", request("GET", "/images?limit=x"));
+    }
+
+    @Test
+    void testChanges() throws IOException {
+        assertEquals("200 {\"path\":\"trip/c @sunset @night.jpg\",\"tags\":[\"sunset\",\"night\"]}",
+                request("POST", "/tag?path=" + encode("trip/c.jpg") + "&tag=sunset&tag=night"));
+        assertTrue(imageTagger.hasTag("night"));
+        assertTrue(Files.exists(dir.resolve("trip/c @sunset @night.jpg")));
+        assertEquals("200 {\"path\":\"trip/c @night.jpg\",\"tags\":[\"night\"]}",
+                request("POST", "/untag?path=" + encode("trip/c @sunset @night.jpg") + "&tag=sunset"));
+        assertEquals("200 {\"path\":\"old/c @night.jpg\",\"tags\":[\"night\"]}",
+                request("POST", "/move?path=" + encode("trip/c @night.jpg") + "&dir=old"));
+        assertEquals("200 {\"path\":\"old/c @night.jpg\",\"names\":[\"c @sunset @night.jpg\",\"c.jpg\"]}",
+                request("GET", "/history?path=" + encode("old/c @night.jpg")));
+        assertEquals(1, imageTagger.getTagIndex().count("night"));
+
+        assertEquals("404 {\"error\":\"No such image: trip/c.jpg\"}",
+                request("POST", "/tag?path=" + encode("trip/c.jpg") + "&tag=beach"));
+        assertEquals("400 {\"error\":\"Outside the library: ../a.jpg\"}",
+                request("GET", "/history?path=" + encode("../a.jpg")));
+        assertEquals("400 {\"error\":\"Missing parameter: tag\"}",
+                request("POST", "/tag?path=" + encode("a @beach.jpg")));
+        assertEquals("400 {\"error\":\"Not a file name: ../x.jpg\"}",
+                request("POST", "/rename?path=" + encode("a @beach.jpg") + "&name=" + encode("../x.jpg")));
+        String absolute = dir.resolveSibling("x.jpg").toString();
+        assertEquals("400 {\"error\":\"Not a file name: " + absolute + "\"}",
+                request("POST", "/rename?path=" + encode("a @beach.jpg") + "&name=" + encode(absolute)));
+        assertTrue(Files.exists(dir.resolve("a @beach.jpg")));
+    }
+
+    @Test
+    void testChangesNeedToken() throws IOException {
+        String tag = "/tag?path=" + encode("trip/c.jpg") + "&tag=sunset";
+        assertEquals("403 {\"error\":\"Missing or wrong X-ImageTagger-Token header\"}", request("POST", tag, null));
+        assertEquals("403 {\"error\":\"Missing or wrong X-ImageTagger-Token header\"}",
+                request("POST", tag, server.getToken().substring(1) + "0"));
+        assertTrue(Files.exists(dir.resolve("trip/c.jpg")));
+        assertTrue(request("POST", tag).startsWith("200 "));
+    }
+
+    @Test
+    void testOtherHostsAreRefused() throws IOException {
+        assertTrue(rawGet("127.0.0.1:" + server.getPort()).startsWith("HTTP/1.1 200 "));
+        assertTrue(rawGet("localhost").startsWith("HTTP/1.1 200 "));
+        assertTrue(rawGet("attacker.example:" + server.getPort()).startsWith("HTTP/1.1 403 "));
+        assertTrue(rawGet("127.0.0.1.attacker.example").startsWith("HTTP/1.1 403 "));
+    }
+
+    /** Sends GET /tags with the given Host header, which HttpURLConnection does not allow, and returns the answer. */
+    private String rawGet(String host) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /tags HTTP/1.1\r\nHost: " + host + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            ByteArrayOutputStream answer = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                answer.write(buffer, 0, n);
+            return new String(answer.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testConcurrentLookups() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++)
+                answers.add(clients.submit(() -> request("GET", "/images?q=" + encode("tag:sunset"))));
+            for (Future<String> answer : answers)
+                assertTrue(answer.get().startsWith("200 {\"total\":1,"), answer.get());
+        } finally {
+            clients.shutdown();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package unittests;
+
+import backend.ThumbnailCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class ThumbnailCacheTest {
+
+    private Path dir;
+
+    private ThumbnailCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("thumbnailcache");
+        cache = new ThumbnailCache(dir.resolve("thumbnails"), 32);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private Path writeImage(String name, int width, int height) throws IOException {
+        Path path = dir.resolve(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", path.toFile());
+        return path;
+    }
+
+    @Test
+    void testThumbnailIsScaledAndStored() throws IOException {
+        Path image = writeImage("wide @beach.png", 1000, 250);
+        Path thumbnail = cache.getThumbnail(image);
+        BufferedImage read = ImageIO.read(thumbnail.toFile());
+        assertEquals(32, read.getWidth());
+        assertEquals(8, read.getHeight());
+
+        FileTime made = FileTime.fromMillis(1000);
+        Files.setLastModifiedTime(thumbnail, made);
+        assertEquals(thumbnail, cache.getThumbnail(image));
+        assertEquals(made, Files.getLastModifiedTime(thumbnail)); // not made again
+    }
+
+    @Test
+    void testSmallImagesAreNotEnlarged() throws IOException {
+        BufferedImage read = ImageIO.read(cache.getThumbnail(writeImage("small.png", 10, 20)).toFile());
+        assertEquals(10, read.getWidth());
+        assertEquals(20, read.getHeight());
+    }
+
+    @Test
+    void testChangedImageGetsNewThumbnail() throws IOException {
+        Path image = writeImage("a.png", 100, 100);
+        Path before = cache.getThumbnail(image);
+        writeImage("a.png", 200, 50);
+        Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 5000));
+        Path after = cache.getThumbnail(image);
+        assertNotEquals(before, after);
+        assertEquals(8, ImageIO.read(after.toFile()).getHeight());
+    }
+
+    @Test
+    void testPruneDeletesOldestThumbnails() throws IOException {
+        Path first = cache.getThumbnail(writeImage("first.png", 64, 64));
+        long bytes = Files.size(first);
+        ThumbnailCache bounded = new ThumbnailCache(dir.resolve("thumbnails"), 32, 3 * bytes);
+        Files.setLastModifiedTime(first, FileTime.fromMillis(1000));
+        Path second = bounded.getThumbnail(writeImage("second.png", 64, 64));
+        Files.setLastModifiedTime(second, FileTime.fromMillis(2000));
+        Path third = bounded.getThumbnail(writeImage("third.png", 64, 64));
+        assertTrue(Files.exists(first)); // within the limit
+
+        Path fourth = bounded.getThumbnail(writeImage("fourth.png", 64, 64));
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertTrue(Files.exists(third));
+        assertTrue(Files.exists(fourth));
+    }
+
+    @Test
+    void testUndecodableImageFails() throws IOException {
+        Path notAnImage = Files.write(dir.resolve("broken.jpg"), "not an image".getBytes("UTF-8"));
+        assertThrows(IOException.class, () -> cache.getThumbnail(notAnImage));
+        assertFalse(Files.exists(dir.resolve("thumbnails"))); // nothing was stored
+    }
+}